@@ -0,0 +1,117 @@
+package io.smartcat.config;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver.IndexDefinitionHolder;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.stereotype.Component;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.domain.MeasurementBucket;
+import io.smartcat.domain.MeasurementDownsample;
+import io.smartcat.domain.MeasurementRollup;
+import io.smartcat.repository.MeasurementRepository;
+
+/**
+ * Creates the indexes declared on the documents when the application starts, instead of waiting for the
+ * mapping context to discover the entity on first use, drops indexes that declared ones replaced, and
+ * checks that every derived query method of the repositories is served by an index whose leading keys are
+ * the method's equality criteria.
+ */
+@Component
+public class IndexProvisioner {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(IndexProvisioner.class);
+
+	// measurement indexes replaced by ones with a trailing _id key; they would only slow down writes
+	private static final List<String> RETIRED_MEASUREMENT_INDEXES = Arrays.asList("owner_sensor_created", "owner_created");
+
+	@Autowired
+	private MongoOperations mongoOps;
+
+	@Autowired
+	private MeasurementPartitions partitions;
+
+	@PostConstruct
+	public void provisionIndexes() {
+		for (MongoOperations partition : partitions.all()) {
+			ensureIndexes(partition, Measurement.class);
+			dropRetiredIndexes(partition, Measurement.class, RETIRED_MEASUREMENT_INDEXES);
+		}
+		// the repository is bound to the primary, every partition has the same indexes anyway
+		verifyQueryMethods(MeasurementRepository.class, Measurement.class, resolveIndexes(Measurement.class));
+		ensureIndexes(mongoOps, MeasurementRollup.class);
+		ensureIndexes(mongoOps, MeasurementBucket.class);
+		ensureIndexes(mongoOps, MeasurementDownsample.class);
+	}
+
+	private void ensureIndexes(MongoOperations ops, Class<?> documentType) {
+		for (IndexDefinitionHolder index : resolveIndexes(documentType)) {
+			ops.indexOps(index.getCollection()).ensureIndex(index);
+			LOGGER.info("Ensured index {} on {}", index.getIndexKeys(), index.getCollection());
+		}
+	}
+
+	private static void dropRetiredIndexes(MongoOperations ops, Class<?> documentType, List<String> names) {
+		IndexOperations indexOps = ops.indexOps(documentType);
+		for (IndexInfo index : indexOps.getIndexInfo()) {
+			if (names.contains(index.getName())) {
+				indexOps.dropIndex(index.getName());
+				LOGGER.info("Dropped retired index {} on {}", index.getName(), ops.getCollectionName(documentType));
+			}
+		}
+	}
+
+	private List<IndexDefinitionHolder> resolveIndexes(Class<?> documentType) {
+		MongoMappingContext mappingContext = (MongoMappingContext) mongoOps.getConverter().getMappingContext();
+		return new MongoPersistentEntityIndexResolver(mappingContext).resolveIndexForEntity(mappingContext.getPersistentEntity(documentType));
+	}
+
+	private void verifyQueryMethods(Class<?> repositoryType, Class<?> documentType, List<IndexDefinitionHolder> indexes) {
+		for (Method method : repositoryType.getDeclaredMethods()) {
+			List<String> criteria = equalityCriteria(method, documentType);
+			if (!isCovered(criteria, indexes)) {
+				LOGGER.warn("No index starts with {} for query method {}.{}", criteria, repositoryType.getSimpleName(), method.getName());
+			}
+		}
+	}
+
+	private static List<String> equalityCriteria(Method method, Class<?> documentType) {
+		List<String> criteria = new ArrayList<>();
+		for (Part part : new PartTree(method.getName(), documentType).getParts()) {
+			criteria.add(part.getProperty().toDotPath());
+		}
+		return criteria;
+	}
+
+	/**
+	 * A query is covered when the first keys of some index are exactly its equality fields (in any order),
+	 * which lets the server walk the index and return the rows already sorted by the remaining keys.
+	 */
+	private static boolean isCovered(List<String> criteria, List<IndexDefinitionHolder> indexes) {
+		for (IndexDefinitionHolder index : indexes) {
+			List<String> keys = new ArrayList<>(index.getIndexKeys().keySet());
+			if (keys.size() >= criteria.size()
+					&& new HashSet<>(keys.subList(0, criteria.size())).equals(new HashSet<>(criteria))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
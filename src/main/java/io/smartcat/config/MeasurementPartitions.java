@@ -0,0 +1,78 @@
+package io.smartcat.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import com.mongodb.async.client.MongoDatabase;
+
+/**
+ * The Mongo instances the {@code measurements} collection is spread over. Each owner's measurements live
+ * on exactly one partition, chosen by hash of owner, so owner scoped queries go to one instance and only
+ * reports fan out to all of them. Partition 0 is the primary instance, which also holds everything that is
+ * not partitioned (users, rollups, downsamples, buckets), so a single partition is the unpartitioned
+ * layout. Changing the number of partitions moves owners to other partitions; existing measurements are
+ * not migrated.
+ */
+public class MeasurementPartitions implements DisposableBean {
+
+	private final List<MongoOperations> templates = new ArrayList<>();
+	private final List<MongoDatabase> asyncDatabases = new ArrayList<>();
+	private final List<AutoCloseable> ownedClients = new ArrayList<>();
+
+	/**
+	 * Adds the next partition; {@code clients} are closed with this object, pass none for clients owned by
+	 * the context.
+	 */
+	public void add(MongoOperations template, MongoDatabase asyncDatabase, AutoCloseable... clients) {
+		templates.add(template);
+		asyncDatabases.add(asyncDatabase);
+		Collections.addAll(ownedClients, clients);
+	}
+
+	public int size() {
+		return templates.size();
+	}
+
+	public boolean isPartitioned() {
+		return templates.size() > 1;
+	}
+
+	/**
+	 * Partition of {@code owner}; String.hashCode is specified, so this is stable across JVMs.
+	 */
+	public int partitionOf(String owner) {
+		return Math.floorMod(owner.hashCode(), templates.size());
+	}
+
+	public MongoOperations forOwner(String owner) {
+		return templates.get(partitionOf(owner));
+	}
+
+	public MongoDatabase asyncForOwner(String owner) {
+		return asyncDatabases.get(partitionOf(owner));
+	}
+
+	public MongoOperations get(int partition) {
+		return templates.get(partition);
+	}
+
+	public MongoDatabase getAsync(int partition) {
+		return asyncDatabases.get(partition);
+	}
+
+	public List<MongoOperations> all() {
+		return Collections.unmodifiableList(templates);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		for (AutoCloseable client : ownedClients) {
+			client.close();
+		}
+	}
+
+}
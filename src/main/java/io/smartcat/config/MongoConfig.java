@@ -1,17 +1,44 @@
 package io.smartcat.config;
 
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.codecs.configuration.CodecRegistries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoActionOperation;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObjectCodecProvider;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.SocketSettings;
+
+import io.smartcat.metrics.LatencyMetrics;
+import io.smartcat.metrics.MongoCommandMetrics;
+import io.smartcat.metrics.SlowQueryLog;
 
 @Configuration
 public class MongoConfig {
 	
+	private static final Logger LOGGER = LoggerFactory.getLogger(MongoConfig.class);
+	
 	@Value("${spring.data.mongodb.host}")
 	private String mongohost;
 	
@@ -21,11 +48,173 @@ public class MongoConfig {
 	@Value("${spring.data.mongodb.database}")
 	private String db;
 	
+	@Value("${mongo.pool.min-size:0}")
+	private int poolMinSize;
+	
+	@Value("${mongo.pool.max-size:100}")
+	private int poolMaxSize;
+	
+	// the wait queue holds up to max-size * multiplier threads waiting for a connection
+	@Value("${mongo.pool.wait-queue-multiplier:5}")
+	private int waitQueueMultiplier;
+	
+	@Value("${mongo.pool.max-wait-ms:120000}")
+	private int maxWaitMillis;
+	
+	@Value("${mongo.pool.max-idle-ms:0}")
+	private int maxIdleMillis;
+	
+	@Value("${mongo.connect-timeout-ms:10000}")
+	private int connectTimeoutMillis;
+	
+	@Value("${mongo.socket-timeout-ms:0}")
+	private int socketTimeoutMillis;
+	
+	@Value("${mongo.server-selection-timeout-ms:30000}")
+	private int serverSelectionTimeoutMillis;
+	
+	@Value("${mongo.read-preference:primary}")
+	private String readPreference;
+	
+	@Value("${mongo.write-concern:ACKNOWLEDGED}")
+	private String writeConcern;
+	
+	// used for insert-many and bulk writes, i.e. ingest and seeding
+	@Value("${mongo.bulk-write-concern:ACKNOWLEDGED}")
+	private String bulkWriteConcern;
+	
+	@Autowired
+	private LatencyMetrics latencyMetrics;
+	
+	@Autowired
+	private SlowQueryLog slowQueryLog;
+	
+	// additional instances ("host:port,host:port") the measurements are partitioned over, next to the primary
+	@Value("${mongo.partitions.hosts:}")
+	private String partitionHosts;
+	
+	@Bean(destroyMethod = "close")
+	public MongoClient mongoClient() {
+		LOGGER.info("Connecting to mongo at {}:{}, pool {}..{}", mongohost, mongoport, poolMinSize, poolMaxSize);
+		return new MongoClient(new ServerAddress(mongohost, mongoport), clientOptions());
+	}
+	
+	/**
+	 * The slow query log explains on clients of its own; they get the same timeouts and read/write settings,
+	 * one connection as there is one explain thread, and no command listeners.
+	 */
+	@PostConstruct
+	public void configureExplainClients() {
+		slowQueryLog.setExplainClientOptions(clientOptionsBuilder()
+				.minConnectionsPerHost(0)
+				.connectionsPerHost(1)
+				.build());
+	}
+	
+	private MongoClientOptions clientOptions() {
+		return clientOptionsBuilder()
+				.addCommandListener(new MongoCommandMetrics(latencyMetrics))
+				.addCommandListener(slowQueryLog)
+				.build();
+	}
+	
+	private MongoClientOptions.Builder clientOptionsBuilder() {
+		return MongoClientOptions.builder()
+				.minConnectionsPerHost(poolMinSize)
+				.connectionsPerHost(poolMaxSize)
+				.threadsAllowedToBlockForConnectionMultiplier(waitQueueMultiplier)
+				.maxWaitTime(maxWaitMillis)
+				.maxConnectionIdleTime(maxIdleMillis)
+				.connectTimeout(connectTimeoutMillis)
+				.socketTimeout(socketTimeoutMillis)
+				.serverSelectionTimeout(serverSelectionTimeoutMillis)
+				.readPreference(ReadPreference.valueOf(readPreference))
+				.writeConcern(WriteConcern.valueOf(writeConcern));
+	}
+	
+	/**
+	 * Non-blocking client for the async query paths, with the same pool, timeouts and read/write settings
+	 * as {@link #mongoClient()} but its own connections. Its collections decode documents as
+	 * {@link BasicDBObject} so results go through the same {@code MongoConverter} as the template's.
+	 * The 3.2 async driver has no command listener, so these commands are not in the mongo.* metrics nor in
+	 * the slow query log.
+	 */
+	@Bean(destroyMethod = "close")
+	public com.mongodb.async.client.MongoClient asyncMongoClient() {
+		return asyncClient(new ServerAddress(mongohost, mongoport));
+	}
+	
+	private com.mongodb.async.client.MongoClient asyncClient(ServerAddress address) {
+		com.mongodb.async.client.MongoClientSettings settings = com.mongodb.async.client.MongoClientSettings.builder()
+				.clusterSettings(ClusterSettings.builder()
+						.hosts(Collections.singletonList(address))
+						.serverSelectionTimeout(serverSelectionTimeoutMillis, TimeUnit.MILLISECONDS)
+						.build())
+				.connectionPoolSettings(ConnectionPoolSettings.builder()
+						.minSize(poolMinSize)
+						.maxSize(poolMaxSize)
+						.maxWaitQueueSize(poolMaxSize * waitQueueMultiplier)
+						.maxWaitTime(maxWaitMillis, TimeUnit.MILLISECONDS)
+						.maxConnectionIdleTime(maxIdleMillis, TimeUnit.MILLISECONDS)
+						.build())
+				.socketSettings(SocketSettings.builder()
+						.connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+						.readTimeout(socketTimeoutMillis, TimeUnit.MILLISECONDS)
+						.build())
+				.readPreference(ReadPreference.valueOf(readPreference))
+				.writeConcern(WriteConcern.valueOf(writeConcern))
+				.codecRegistry(CodecRegistries.fromRegistries(MongoClients.getDefaultCodecRegistry(),
+						CodecRegistries.fromProviders(new DBObjectCodecProvider())))
+				.build();
+		return MongoClients.create(settings);
+	}
+	
 	@Bean
-	public MongoOperations mongoOps() {
-		System.out.println("mongoport: " + mongoport);
-		MongoOperations mongoOps = new MongoTemplate(new SimpleMongoDbFactory(new MongoClient(mongohost, mongoport), db));
+	public MongoDatabase asyncMongoDatabase() {
+		return asyncMongoClient().getDatabase(db);
+	}
+	
+	@Bean
+	public MongoDbFactory mongoDbFactory() {
+		return new SimpleMongoDbFactory(mongoClient(), db);
+	}
+	
+	// also registered as "mongoTemplate", the template the repositories use; it takes the primary
+	// MongoDbFactory bean, so tests can point the application at a database of their own
+	@Bean(name = { "mongoOps", "mongoTemplate" })
+	public MongoTemplate mongoOps(MongoDbFactory mongoDbFactory) {
+		return template(mongoDbFactory);
+	}
+	
+	private MongoTemplate template(MongoDbFactory factory) {
+		MongoTemplate mongoOps = new MongoTemplate(factory);
+		WriteConcern bulk = WriteConcern.valueOf(bulkWriteConcern);
+		mongoOps.setWriteConcernResolver(action -> action.getMongoActionOperation() == MongoActionOperation.BULK
+				|| action.getMongoActionOperation() == MongoActionOperation.INSERT_LIST ? bulk : action.getDefaultWriteConcern());
 		return mongoOps;
 	}
+	
+	/**
+	 * The primary instance followed by the {@code mongo.partitions.hosts}, each with a client, template and
+	 * async client configured like the primary's and the same database name. The primary's template and
+	 * async database are the primary beans of their type, so tests can replace both.
+	 */
+	@Bean
+	public MeasurementPartitions measurementPartitions(MongoTemplate mongoOps, MongoDatabase asyncMongoDatabase) {
+		MeasurementPartitions partitions = new MeasurementPartitions();
+		partitions.add(mongoOps, asyncMongoDatabase);
+		for (String host : partitionHosts.split(",")) {
+			if (host.trim().isEmpty()) {
+				continue;
+			}
+			String[] hostAndPort = host.trim().split(":");
+			ServerAddress address = hostAndPort.length == 1 ? new ServerAddress(hostAndPort[0]) : new ServerAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+			LOGGER.info("Connecting to measurement partition {} at {}", partitions.size(), address);
+			MongoClient client = new MongoClient(address, clientOptions());
+			com.mongodb.async.client.MongoClient asyncClient = asyncClient(address);
+			partitions.add(template(new SimpleMongoDbFactory(client, db)), asyncClient.getDatabase(db), client::close, asyncClient::close);
+		}
+		return partitions;
+	}
 
 }
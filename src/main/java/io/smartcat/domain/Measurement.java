@@ -3,9 +3,19 @@ package io.smartcat.domain;
 import java.util.Date;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "measurements")
+@CompoundIndexes({
+	// findByOwnerAndSensor(owner, sensor[, Pageable sorted by created DESC]) and keyset pages on (created, _id)
+	@CompoundIndex(name = "owner_sensor_created_id", def = "{'owner' : 1, 'sensor' : 1, 'created' : -1, '_id' : -1}"),
+	// findByOwner(owner, Pageable sorted by created DESC) and keyset pages on (created, _id)
+	@CompoundIndex(name = "owner_created_id", def = "{'owner' : 1, 'created' : -1, '_id' : -1}"),
+	// ReportService: $match on sensor and a created range
+	@CompoundIndex(name = "sensor_created", def = "{'sensor' : 1, 'created' : 1}")
+})
 public class Measurement {
 	
 	@Id
@@ -66,4 +76,20 @@ public class Measurement {
 	public void setActive(boolean active) {
 		this.active = active;
 	}
+	
+	/**
+	 * Copy for in-memory structures that must not share instances with their callers.
+	 */
+	public Measurement copy() {
+		Measurement copy = new Measurement();
+		copy.id = id;
+		copy.created = created;
+		copy.sensor = sensor;
+		copy.owner = owner;
+		copy.measuredValue = measuredValue;
+		copy.version = version;
+		copy.lastChanged = lastChanged == null ? null : new Date(lastChanged.getTime());
+		copy.active = active;
+		return copy;
+	}
 }
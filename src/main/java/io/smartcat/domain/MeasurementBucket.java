@@ -0,0 +1,87 @@
+package io.smartcat.domain;
+
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Up to {@code measurement.buckets.max-count} measurements of one owner and sensor from the time window
+ * starting at {@code start}. Measurement {@code i} was created at {@code start + offsets[i]} and measured
+ * {@code values[i]}; offsets are 32-bit and appended in arrival order, not sorted. A window can be split
+ * over several buckets once one fills up. {@code first} counts the entries retention removed from the
+ * front of the arrays, so entry {@code i} is the bucket's entry number {@code first + i}.
+ */
+@Document(collection = "measurement_buckets")
+@CompoundIndexes({
+	// newest measurements of an owner's sensor, keyset pages
+	@CompoundIndex(name = "owner_sensor_start", def = "{'owner' : 1, 'sensor' : 1, 'start' : -1}"),
+	// newest measurements of an owner
+	@CompoundIndex(name = "owner_start", def = "{'owner' : 1, 'start' : -1}"),
+	// ReportService: sensor and a window range
+	@CompoundIndex(name = "sensor_start", def = "{'sensor' : 1, 'start' : 1}")
+})
+public class MeasurementBucket {
+
+	@Id
+	private String id;
+	private String owner;
+	private String sensor;
+	private long start;
+	private int count;
+	private long first;
+	private List<Integer> offsets;
+	private List<Long> values;
+
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+	public String getOwner() {
+		return owner;
+	}
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	public String getSensor() {
+		return sensor;
+	}
+	public void setSensor(String sensor) {
+		this.sensor = sensor;
+	}
+	public long getStart() {
+		return start;
+	}
+	public void setStart(long start) {
+		this.start = start;
+	}
+	public int getCount() {
+		return count;
+	}
+	public void setCount(int count) {
+		this.count = count;
+	}
+	public long getFirst() {
+		return first;
+	}
+	public void setFirst(long first) {
+		this.first = first;
+	}
+	public List<Integer> getOffsets() {
+		return offsets;
+	}
+	public void setOffsets(List<Integer> offsets) {
+		this.offsets = offsets;
+	}
+	public List<Long> getValues() {
+		return values;
+	}
+	public void setValues(List<Long> values) {
+		this.values = values;
+	}
+
+}
@@ -0,0 +1,75 @@
+package io.smartcat.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Aggregate of the measured values of an owner's sensor over one downsampling interval ({@code interval} is
+ * the inclusive start of the interval in {@code created} units), kept after the raw measurements of the
+ * interval were removed by retention. The average is {@code sum / count}.
+ */
+@Document(collection = "measurement_downsamples")
+@CompoundIndex(name = "sensor_interval_owner", def = "{'sensor' : 1, 'interval' : 1, 'owner' : 1}", unique = true)
+public class MeasurementDownsample {
+
+	@Id
+	private String id;
+	private String owner;
+	private String sensor;
+	private long interval;
+	private long min;
+	private long max;
+	private long sum;
+	private long count;
+
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+	public String getOwner() {
+		return owner;
+	}
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	public String getSensor() {
+		return sensor;
+	}
+	public void setSensor(String sensor) {
+		this.sensor = sensor;
+	}
+	public long getInterval() {
+		return interval;
+	}
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+	public long getMin() {
+		return min;
+	}
+	public void setMin(long min) {
+		this.min = min;
+	}
+	public long getMax() {
+		return max;
+	}
+	public void setMax(long max) {
+		this.max = max;
+	}
+	public long getSum() {
+		return sum;
+	}
+	public void setSum(long sum) {
+		this.sum = sum;
+	}
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+}
@@ -0,0 +1,60 @@
+package io.smartcat.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Sum and count of measured values per owner, sensor and time bucket ({@code bucket} is the inclusive start
+ * of the bucket in {@code created} units).
+ */
+@Document(collection = "measurement_rollups")
+@CompoundIndex(name = "sensor_bucket_owner", def = "{'sensor' : 1, 'bucket' : 1, 'owner' : 1}", unique = true)
+public class MeasurementRollup {
+
+	@Id
+	private String id;
+	private String owner;
+	private String sensor;
+	private long bucket;
+	private long sum;
+	private long count;
+
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+	public String getOwner() {
+		return owner;
+	}
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	public String getSensor() {
+		return sensor;
+	}
+	public void setSensor(String sensor) {
+		this.sensor = sensor;
+	}
+	public long getBucket() {
+		return bucket;
+	}
+	public void setBucket(long bucket) {
+		this.bucket = bucket;
+	}
+	public long getSum() {
+		return sum;
+	}
+	public void setSum(long sum) {
+		this.sum = sum;
+	}
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+}
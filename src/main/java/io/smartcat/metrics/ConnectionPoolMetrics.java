@@ -0,0 +1,43 @@
+package io.smartcat.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads the connection pool statistics the driver publishes as {@code org.mongodb.driver:type=ConnectionPool}
+ * MBeans. Driver 3.2 offers no way to register a pool listener through MongoClientOptions, so checkout
+ * wait is visible as the current wait queue size rather than a wait time histogram.
+ */
+@Component
+public class ConnectionPoolMetrics {
+
+	private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+	public List<ConnectionPoolStats> stats() {
+		List<ConnectionPoolStats> stats = new ArrayList<>();
+		try {
+			for (ObjectName pool : mBeanServer.queryNames(new ObjectName("org.mongodb.driver:type=ConnectionPool,*"), null)) {
+				ConnectionPoolStats poolStats = new ConnectionPoolStats();
+				poolStats.setHost((String) mBeanServer.getAttribute(pool, "Host"));
+				poolStats.setPort((Integer) mBeanServer.getAttribute(pool, "Port"));
+				poolStats.setMinSize((Integer) mBeanServer.getAttribute(pool, "MinSize"));
+				poolStats.setMaxSize((Integer) mBeanServer.getAttribute(pool, "MaxSize"));
+				poolStats.setSize((Integer) mBeanServer.getAttribute(pool, "Size"));
+				poolStats.setCheckedOutCount((Integer) mBeanServer.getAttribute(pool, "CheckedOutCount"));
+				poolStats.setWaitQueueSize((Integer) mBeanServer.getAttribute(pool, "WaitQueueSize"));
+				stats.add(poolStats);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not read connection pool statistics", e);
+		}
+		return stats;
+	}
+
+}
@@ -0,0 +1,59 @@
+package io.smartcat.metrics;
+
+public class ConnectionPoolStats {
+
+	private String host;
+	private int port;
+	private int minSize;
+	private int maxSize;
+	private int size;
+	private int checkedOutCount;
+	private int waitQueueSize;
+
+	public String getHost() {
+		return host;
+	}
+	public void setHost(String host) {
+		this.host = host;
+	}
+	public int getPort() {
+		return port;
+	}
+	public void setPort(int port) {
+		this.port = port;
+	}
+	public int getMinSize() {
+		return minSize;
+	}
+	public void setMinSize(int minSize) {
+		this.minSize = minSize;
+	}
+	public int getMaxSize() {
+		return maxSize;
+	}
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+	public int getSize() {
+		return size;
+	}
+	public void setSize(int size) {
+		this.size = size;
+	}
+	public int getCheckedOutCount() {
+		return checkedOutCount;
+	}
+	public void setCheckedOutCount(int checkedOutCount) {
+		this.checkedOutCount = checkedOutCount;
+	}
+	public int getWaitQueueSize() {
+		return waitQueueSize;
+	}
+	public void setWaitQueueSize(int waitQueueSize) {
+		this.waitQueueSize = waitQueueSize;
+	}
+	public double getUtilization() {
+		return maxSize == 0 ? 0 : (double) checkedOutCount / maxSize;
+	}
+
+}
@@ -0,0 +1,33 @@
+package io.smartcat.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency histogram that is cheap to record into from many threads: values go into an HdrHistogram
+ * {@link Recorder} and are folded into the accumulated histogram only when a snapshot is taken.
+ */
+public class LatencyHistogram {
+
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+	private final Histogram accumulated = new Histogram(SIGNIFICANT_DIGITS);
+	private Histogram interval;
+
+	public void recordNanos(long nanos) {
+		recorder.recordValue(Math.max(nanos, 0));
+	}
+
+	public synchronized LatencySnapshot snapshot() {
+		interval = recorder.getIntervalHistogram(interval);
+		accumulated.add(interval);
+		return new LatencySnapshot(accumulated);
+	}
+
+	public synchronized void reset() {
+		recorder.reset();
+		accumulated.reset();
+	}
+
+}
@@ -0,0 +1,42 @@
+package io.smartcat.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Named latency histograms, created on first use.
+ */
+@Component
+public class LatencyMetrics {
+
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+	public void recordNanos(String name, long nanos) {
+		histogram(name).recordNanos(nanos);
+	}
+
+	public LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		return histogram != null ? histogram : histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+	}
+
+	public SortedMap<String, LatencySnapshot> snapshot(String prefix) {
+		SortedMap<String, LatencySnapshot> snapshot = new TreeMap<>();
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			if (entry.getKey().startsWith(prefix)) {
+				snapshot.put(entry.getKey(), entry.getValue().snapshot());
+			}
+		}
+		return snapshot;
+	}
+
+	public void reset() {
+		histograms.values().forEach(LatencyHistogram::reset);
+	}
+
+}
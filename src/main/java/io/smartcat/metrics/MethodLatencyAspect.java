@@ -0,0 +1,97 @@
+package io.smartcat.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import io.smartcat.RangerDemoApplication;
+
+/**
+ * Records the latency of repository query methods, {@code MeasurementService} and {@code ReportService}
+ * calls and REST handlers as {@code method.<package>.<Type>.<method>}, e.g.
+ * {@code method.service.ReportService.calcAvgByOwner}; overloads share a histogram. Methods returning a
+ * {@link CompletionStage} are timed until the stage completes. Calls a bean makes on itself bypass the
+ * proxy and are not recorded. With {@code metrics.methods.enabled=false} no proxies are created at all.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "metrics.methods.enabled", havingValue = "true", matchIfMissing = true)
+public class MethodLatencyAspect {
+
+	public static final String PREFIX = "method.";
+
+	private static final String BASE_PACKAGE = RangerDemoApplication.class.getPackage().getName() + ".";
+
+	@Autowired
+	private LatencyMetrics latencyMetrics;
+
+	// proxy class -> method -> histogram, so the name is built once per method and not on every call
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+	@Pointcut("execution(public * org.springframework.data.repository.Repository+.*(..))")
+	public void repositoryMethods() {
+	}
+
+	@Pointcut("execution(public * io.smartcat.service.MeasurementService.*(..)) || execution(public * io.smartcat.service.ReportService.*(..))")
+	public void serviceMethods() {
+	}
+
+	@Pointcut("@within(org.springframework.web.bind.annotation.RestController) && execution(public * io.smartcat.rest..*.*(..))")
+	public void restHandlers() {
+	}
+
+	@Around("repositoryMethods() || serviceMethods() || restHandlers()")
+	public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+		LatencyHistogram histogram = histogram(joinPoint);
+		long start = System.nanoTime();
+		Object result;
+		try {
+			result = joinPoint.proceed();
+		} catch (Throwable e) {
+			histogram.recordNanos(System.nanoTime() - start);
+			throw e;
+		}
+		if (result instanceof CompletionStage) {
+			((CompletionStage<?>) result).whenComplete((value, failure) -> histogram.recordNanos(System.nanoTime() - start));
+		} else {
+			histogram.recordNanos(System.nanoTime() - start);
+		}
+		return result;
+	}
+
+	private LatencyHistogram histogram(ProceedingJoinPoint joinPoint) {
+		Class<?> proxyType = joinPoint.getThis().getClass();
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		ConcurrentMap<Method, LatencyHistogram> byMethod = histograms.get(proxyType);
+		if (byMethod == null) {
+			byMethod = histograms.computeIfAbsent(proxyType, type -> new ConcurrentHashMap<>());
+		}
+		LatencyHistogram histogram = byMethod.get(method);
+		return histogram != null ? histogram
+				: byMethod.computeIfAbsent(method, m -> latencyMetrics.histogram(PREFIX + typeName(proxyType) + "." + m.getName()));
+	}
+
+	private static String typeName(Class<?> proxyType) {
+		Class<?> type = ClassUtils.getUserClass(proxyType);
+		// repositories are JDK proxies, name them after the repository interface they implement
+		for (Class<?> candidate : ClassUtils.getAllInterfacesForClassAsSet(proxyType)) {
+			if (Repository.class.isAssignableFrom(candidate) && candidate.getName().startsWith(BASE_PACKAGE)) {
+				type = candidate;
+			}
+		}
+		return type.getName().startsWith(BASE_PACKAGE) ? type.getName().substring(BASE_PACKAGE.length()) : type.getSimpleName();
+	}
+
+}
@@ -0,0 +1,38 @@
+package io.smartcat.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Records the driver-measured round trip of every command as {@code mongo.<command>} (and
+ * {@code mongo.<command>.failed} for failures).
+ */
+public class MongoCommandMetrics implements CommandListener {
+
+	public static final String PREFIX = "mongo.";
+
+	private final LatencyMetrics latencyMetrics;
+
+	public MongoCommandMetrics(LatencyMetrics latencyMetrics) {
+		this.latencyMetrics = latencyMetrics;
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		latencyMetrics.recordNanos(PREFIX + event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		latencyMetrics.recordNanos(PREFIX + event.getCommandName() + ".failed", event.getElapsedTime(TimeUnit.NANOSECONDS));
+	}
+
+}
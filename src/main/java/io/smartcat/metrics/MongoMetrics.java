@@ -0,0 +1,23 @@
+package io.smartcat.metrics;
+
+import java.util.List;
+import java.util.SortedMap;
+
+public class MongoMetrics {
+
+	private final SortedMap<String, LatencySnapshot> commands;
+	private final List<ConnectionPoolStats> connectionPools;
+
+	public MongoMetrics(SortedMap<String, LatencySnapshot> commands, List<ConnectionPoolStats> connectionPools) {
+		this.commands = commands;
+		this.connectionPools = connectionPools;
+	}
+
+	public SortedMap<String, LatencySnapshot> getCommands() {
+		return commands;
+	}
+	public List<ConnectionPoolStats> getConnectionPools() {
+		return connectionPools;
+	}
+
+}
@@ -0,0 +1,61 @@
+package io.smartcat.metrics;
+
+import com.mongodb.BasicDBObject;
+
+public class SlowQuery {
+
+	private final long timestamp;
+	private final String server;
+	private final String database;
+	private final String command;
+	private final double elapsedMillis;
+	private final boolean failed;
+	private final BasicDBObject shape;
+	private volatile BasicDBObject plan;
+
+	public SlowQuery(long timestamp, String server, String database, String command, double elapsedMillis, boolean failed, BasicDBObject shape) {
+		this.timestamp = timestamp;
+		this.server = server;
+		this.database = database;
+		this.command = command;
+		this.elapsedMillis = elapsedMillis;
+		this.failed = failed;
+		this.shape = shape;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+	public String getServer() {
+		return server;
+	}
+	public String getDatabase() {
+		return database;
+	}
+	public String getCommand() {
+		return command;
+	}
+	public double getElapsedMillis() {
+		return elapsedMillis;
+	}
+	public boolean isFailed() {
+		return failed;
+	}
+	/**
+	 * The command with every value replaced by {@code "?"} and arrays cut to their first element; null for
+	 * the first slow command of a namespace, which was not captured.
+	 */
+	public BasicDBObject getShape() {
+		return shape;
+	}
+	/**
+	 * Query planner output of {@code explain}, null until the explain has run.
+	 */
+	public BasicDBObject getPlan() {
+		return plan;
+	}
+	public void setPlan(BasicDBObject plan) {
+		this.plan = plan;
+	}
+
+}
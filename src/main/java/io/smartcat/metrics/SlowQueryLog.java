@@ -0,0 +1,235 @@
+package io.smartcat.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.event.CommandEvent;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Keeps the last {@code metrics.slow-query.max-entries} queries that took at least
+ * {@code metrics.slow-query.threshold-ms}, with their shape and explain plan, and logs them. Only commands
+ * that can be explained are tracked. The command document would have to be copied when it starts, because
+ * the driver reuses its buffer once the command is sent, so that is only done on namespaces that already
+ * had a slow command: the first slow command of a namespace is kept without shape and plan, later ones
+ * with. Explains run on a single background thread through a separate client per server, configured like
+ * the application's (see {@link #setExplainClientOptions}), so they neither slow down the caller nor show
+ * up in the command metrics; when that thread falls behind, entries keep no plan.
+ */
+@Component
+public class SlowQueryLog implements CommandListener, DisposableBean {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SlowQueryLog.class);
+
+	private static final Set<String> EXPLAINABLE = new HashSet<>(Arrays.asList("find", "aggregate", "count", "distinct",
+			"update", "delete", "findandmodify", "findAndModify"));
+
+	private static final BsonString PLACEHOLDER = new BsonString("?");
+
+	@Value("${metrics.slow-query.enabled:true}")
+	private boolean enabled;
+
+	@Value("${metrics.slow-query.threshold-ms:100}")
+	private long thresholdMillis;
+
+	@Value("${metrics.slow-query.max-entries:100}")
+	private int maxEntries;
+
+	private final ConcurrentMap<Integer, StartedCommand> started = new ConcurrentHashMap<>();
+	// database.collection of the commands that were slow, whose documents are captured from then on
+	private final Set<String> capturing = ConcurrentHashMap.newKeySet();
+	private final Deque<SlowQuery> entries = new ArrayDeque<>();
+	private final ConcurrentMap<ServerAddress, MongoClient> explainClients = new ConcurrentHashMap<>();
+	private ExecutorService explainer;
+	private volatile MongoClientOptions explainClientOptions = MongoClientOptions.builder().build();
+
+	@PostConstruct
+	public void start() {
+		if (maxEntries < 1) {
+			throw new IllegalStateException("metrics.slow-query.max-entries must be positive: " + maxEntries);
+		}
+		explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxEntries), runnable -> {
+			Thread thread = new Thread(runnable, "slow-query-explain");
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	/**
+	 * Options of the clients the explains run on; without command listeners, so explains stay out of the
+	 * metrics and out of this log.
+	 */
+	public void setExplainClientOptions(MongoClientOptions explainClientOptions) {
+		this.explainClientOptions = explainClientOptions;
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+		if (enabled && EXPLAINABLE.contains(event.getCommandName())) {
+			String namespace = namespace(event.getDatabaseName(), event.getCommand().get(event.getCommandName()));
+			BsonDocument command = capturing.contains(namespace) ? event.getCommand().clone() : null;
+			started.put(event.getRequestId(), new StartedCommand(event.getDatabaseName(), namespace, command));
+		}
+	}
+
+	// the collection is the value of the command name, the first field of the command document
+	private static String namespace(String database, BsonValue collection) {
+		return collection != null && collection.isString() ? database + "." + collection.asString().getValue() : database;
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		completed(event, event.getElapsedTime(TimeUnit.NANOSECONDS), false);
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		completed(event, event.getElapsedTime(TimeUnit.NANOSECONDS), true);
+	}
+
+	/**
+	 * Slow queries, newest first.
+	 */
+	public List<SlowQuery> entries() {
+		synchronized (entries) {
+			return new ArrayList<>(entries);
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	private void completed(CommandEvent event, long elapsedNanos, boolean failed) {
+		StartedCommand command = started.isEmpty() ? null : started.remove(event.getRequestId());
+		if (command == null || elapsedNanos < TimeUnit.MILLISECONDS.toNanos(thresholdMillis)) {
+			return;
+		}
+		ServerAddress server = event.getConnectionDescription().getServerAddress();
+		if (command.command == null) {
+			// bounded like the entries, namespaces beyond that are logged without shape
+			if (capturing.size() < maxEntries) {
+				capturing.add(command.namespace);
+			}
+			SlowQuery query = new SlowQuery(System.currentTimeMillis(), server.toString(), command.database, event.getCommandName(),
+					elapsedNanos / 1_000_000d, failed, null);
+			LOGGER.warn("Slow {} on {}/{} took {} ms, capturing shape and plan from now on", query.getCommand(), query.getServer(),
+					command.namespace, query.getElapsedMillis());
+			add(query);
+			return;
+		}
+		BsonDocument shape = (BsonDocument) shape(command.command, true);
+		SlowQuery query = new SlowQuery(System.currentTimeMillis(), server.toString(), command.database, event.getCommandName(),
+				elapsedNanos / 1_000_000d, failed, BasicDBObject.parse(shape.toJson()));
+		LOGGER.warn("Slow {} on {}/{} took {} ms: {}", query.getCommand(), query.getServer(), query.getDatabase(),
+				query.getElapsedMillis(), shape.toJson());
+		add(query);
+		explainer.execute(() -> query.setPlan(explain(server, command)));
+	}
+
+	private void add(SlowQuery query) {
+		synchronized (entries) {
+			entries.addFirst(query);
+			if (entries.size() > maxEntries) {
+				entries.removeLast();
+			}
+		}
+	}
+
+	private BasicDBObject explain(ServerAddress server, StartedCommand command) {
+		BsonDocument explain;
+		if ("aggregate".equals(command.command.keySet().iterator().next())) {
+			// 3.2 has no explain command for aggregate, only the explain option of aggregate itself
+			explain = command.command.clone();
+			explain.remove("cursor");
+			explain.put("explain", BsonBoolean.TRUE);
+		} else {
+			explain = new BsonDocument("explain", command.command).append("verbosity", new BsonString("queryPlanner"));
+		}
+		try {
+			MongoClient client = explainClients.computeIfAbsent(server, address -> new MongoClient(address, explainClientOptions));
+			return client.getDatabase(command.database).runCommand(explain, BasicDBObject.class);
+		} catch (MongoException e) {
+			LOGGER.debug("Could not explain {}", explain.toJson(), e);
+			return new BasicDBObject("error", e.getMessage());
+		}
+	}
+
+	/**
+	 * Replaces every value of {@code value} by {@code "?"} and every array by its first element, keeping the
+	 * first value of the top level document, which names the collection.
+	 */
+	static BsonValue shape(BsonValue value, boolean topLevel) {
+		if (value.isDocument()) {
+			BsonDocument shape = new BsonDocument();
+			for (Map.Entry<String, BsonValue> entry : value.asDocument().entrySet()) {
+				shape.put(entry.getKey(), topLevel && shape.isEmpty() ? entry.getValue() : shape(entry.getValue(), false));
+			}
+			return shape;
+		}
+		if (value.isArray()) {
+			BsonArray array = value.asArray();
+			return array.isEmpty() ? new BsonArray() : new BsonArray(Arrays.asList(shape(array.get(0), false)));
+		}
+		return PLACEHOLDER;
+	}
+
+	@Override
+	public void destroy() {
+		if (explainer != null) {
+			explainer.shutdownNow();
+		}
+		explainClients.values().forEach(MongoClient::close);
+	}
+
+	private static final class StartedCommand {
+
+		private final String database;
+		private final String namespace;
+		// null unless the namespace is being captured
+		private final BsonDocument command;
+
+		private StartedCommand(String database, String namespace, BsonDocument command) {
+			this.database = database;
+			this.namespace = namespace;
+			this.command = command;
+		}
+
+	}
+
+}
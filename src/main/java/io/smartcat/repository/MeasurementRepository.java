@@ -8,6 +8,12 @@ import org.springframework.data.repository.CrudRepository;
 
 import io.smartcat.domain.Measurement;
 
+/**
+ * Spring Data access to the {@code measurements} collection of the primary instance only. With
+ * {@code mongo.partitions.hosts} set most owners live on other partitions, so the application reads and
+ * writes measurements through {@code MeasurementService}; this repository is kept for direct queries on
+ * an unpartitioned database.
+ */
 public interface MeasurementRepository  extends CrudRepository<Measurement, Serializable>{
 	
 	List<Measurement> findByOwner(String owner, Pageable pageable);
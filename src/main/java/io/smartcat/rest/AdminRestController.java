@@ -0,0 +1,26 @@
+package io.smartcat.rest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.smartcat.seed.DemoDataSeeder;
+
+@RestController
+@RequestMapping("api/admin")
+@ConditionalOnProperty(name = "seed.admin-endpoint.enabled", havingValue = "true")
+public class AdminRestController {
+	
+	@Autowired
+	private DemoDataSeeder demoDataSeeder;
+	
+	@RequestMapping(value = "/seed", method = RequestMethod.POST)
+	public ResponseEntity<Void> seed() {
+		demoDataSeeder.seed();
+		return ResponseEntity.ok().build();
+	}
+
+}
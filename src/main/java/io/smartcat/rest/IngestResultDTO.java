@@ -0,0 +1,26 @@
+package io.smartcat.rest;
+
+public class IngestResultDTO {
+	
+	private long accepted;
+	private String error;
+	
+	public IngestResultDTO(long accepted, String error) {
+		this.accepted = accepted;
+		this.error = error;
+	}
+	
+	public long getAccepted() {
+		return accepted;
+	}
+	public void setAccepted(long accepted) {
+		this.accepted = accepted;
+	}
+	public String getError() {
+		return error;
+	}
+	public void setError(String error) {
+		this.error = error;
+	}
+
+}
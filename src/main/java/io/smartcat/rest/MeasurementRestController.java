@@ -0,0 +1,285 @@
+package io.smartcat.rest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.CacheStats;
+import io.smartcat.service.InvalidCursorException;
+import io.smartcat.service.MeasurementPage;
+import io.smartcat.service.MeasurementPoints;
+import io.smartcat.service.MeasurementService;
+import io.smartcat.service.MeasurementWriteBuffer;
+import io.smartcat.service.NewestMeasurementsCache;
+
+@RestController
+@RequestMapping("api/measurements")
+public class MeasurementRestController {
+	
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+	
+	private static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+	
+	@Autowired
+	private NewestMeasurementsCache newestMeasurementsCache;
+	
+	@Autowired
+	private MeasurementWriteBuffer measurementWriteBuffer;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Value("${measurement.ingest.request-chunk:1000}")
+	private int requestChunk;
+	
+	// how long a request waits for room in a full write buffer before it gets 503
+	@Value("${measurement.ingest.max-block-ms:1000}")
+	private long maxBlockMillis;
+	
+	@Value("${measurement.history.max-page-size:1000}")
+	private int maxPageSize;
+	
+	@Value("${measurement.export.batch-size:1000}")
+	private int exportFlushRows;
+	
+	// a chunk is handed to the write buffer whole, so a larger one than it can hold would never be accepted
+	@PostConstruct
+	public void validate() {
+		if (requestChunk < 1 || requestChunk > measurementWriteBuffer.getCapacity()) {
+			throw new IllegalStateException(String.format("measurement.ingest.request-chunk must be between 1 and measurement.ingest.capacity (%d), was %d",
+					measurementWriteBuffer.getCapacity(), requestChunk));
+		}
+	}
+	
+	/**
+	 * Accepts a JSON array or a stream of newline delimited JSON objects. Measurements are bound one at
+	 * a time from a streaming parser and handed to the write buffer in chunks, so request size does not
+	 * affect heap usage. A full buffer blocks the request for up to {@code measurement.ingest.max-block-ms},
+	 * which slows producers down to the write rate. Returns 202 with the number of accepted measurements.
+	 * Chunks are buffered as they are read, so a request that fails part way is not rolled back: 503 when
+	 * the buffer stayed full and 400 for a malformed or incomplete measurement both report how many
+	 * measurements, counted from the start of the request, were accepted and will be written. A client
+	 * retrying such a request should resend only what follows them.
+	 */
+	@RequestMapping(method = RequestMethod.POST, consumes = { MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE })
+	public ResponseEntity<IngestResultDTO> ingest(InputStream body) throws IOException, InterruptedException {
+		long accepted = 0;
+		List<Measurement> chunk = new ArrayList<>(requestChunk);
+		try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+			JsonToken token = parser.nextToken();
+			boolean array = token == JsonToken.START_ARRAY;
+			if (array) {
+				token = parser.nextToken();
+			}
+			while (token != null && token != JsonToken.END_ARRAY) {
+				Measurement measurement = objectMapper.readValue(parser, Measurement.class);
+				if (measurement.getOwner() == null || measurement.getSensor() == null) {
+					return ResponseEntity.badRequest().body(new IngestResultDTO(accepted, "Measurement " + (accepted + chunk.size()) + " has no owner or sensor"));
+				}
+				chunk.add(measurement);
+				if (chunk.size() == requestChunk) {
+					if (!measurementWriteBuffer.offer(chunk, maxBlockMillis)) {
+						return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new IngestResultDTO(accepted, "Write buffer is full"));
+					}
+					accepted += chunk.size();
+					chunk = new ArrayList<>(requestChunk);
+				}
+				token = parser.nextToken();
+			}
+		} catch (JsonProcessingException e) {
+			return ResponseEntity.badRequest().body(new IngestResultDTO(accepted, "Measurement " + (accepted + chunk.size()) + " is malformed: " + e.getOriginalMessage()));
+		}
+		if (!measurementWriteBuffer.offer(chunk, maxBlockMillis)) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new IngestResultDTO(accepted, "Write buffer is full"));
+		}
+		accepted += chunk.size();
+		return ResponseEntity.accepted().body(new IngestResultDTO(accepted, null));
+	}
+	
+	/**
+	 * Saves one measurement of the owner's sensor through the write buffer, so small device messages are
+	 * group committed with everything else ingested at the same time. Returns 202 once it is buffered, or
+	 * with {@code wait=true} 201 once it is written; 503 when the buffer stayed full and 500 when the
+	 * batch it was written in failed.
+	 */
+	@RequestMapping(value = "/{owner}/{sensor}", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Void>> save(@PathVariable String owner, @PathVariable String sensor,
+			@RequestBody Measurement measurement, @RequestParam(defaultValue = "false") boolean wait) throws InterruptedException {
+		measurement.setOwner(owner);
+		measurement.setSensor(sensor);
+		CompletableFuture<Void> written = measurementWriteBuffer.submit(Collections.singletonList(measurement), maxBlockMillis);
+		if (written == null) {
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+		}
+		if (!wait) {
+			return CompletableFuture.completedFuture(ResponseEntity.accepted().build());
+		}
+		return written.handle((ignored, failure) -> failure == null
+				? ResponseEntity.status(HttpStatus.CREATED).<Void>build()
+				: ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).<Void>build());
+	}
+	
+	/**
+	 * Newest measurements of an owner, or of one of the owner's sensors. Handled asynchronously: the
+	 * servlet thread returns to the pool while the query runs and the response is written when the
+	 * future completes, bounded by {@code spring.mvc.async.request-timeout}.
+	 */
+	@RequestMapping(value = "/{owner}/newest", method = RequestMethod.GET)
+	public CompletableFuture<List<Measurement>> newest(@PathVariable String owner, @RequestParam(required = false) String sensor,
+			@RequestParam(defaultValue = "50") int limit) {
+		int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+		return sensor == null
+				? measurementService.getNewestMeasurementsForUserAsync(owner, pageSize)
+				: measurementService.getNewestMeasurementsForUserAndSensorAsync(owner, sensor, pageSize);
+	}
+	
+	/**
+	 * One page of the measurements of an owner's sensor, newest first, like {@link #history} but
+	 * asynchronously like {@link #newest}. The full history is available as a stream from {@link #export}.
+	 */
+	@RequestMapping(value = "/{owner}", method = RequestMethod.GET)
+	public CompletableFuture<MeasurementPage> bySensor(@PathVariable String owner, @RequestParam String sensor,
+			@RequestParam(required = false) String cursor, @RequestParam(defaultValue = "50") int limit) {
+		return measurementService.getMeasurementHistoryAsync(owner, sensor, cursor, Math.max(1, Math.min(limit, maxPageSize)));
+	}
+	
+	/**
+	 * Newest {@code limit} measurements of an owner's sensor as parallel created/measuredValues arrays.
+	 */
+	@RequestMapping(value = "/{owner}/{sensor}/points", method = RequestMethod.GET)
+	public MeasurementPoints points(@PathVariable String owner, @PathVariable String sensor, @RequestParam(defaultValue = "50") int limit) {
+		return measurementService.getNewestPointsForUserAndSensor(owner, sensor, Math.max(1, Math.min(limit, maxPageSize)));
+	}
+	
+	/**
+	 * One page of an owner's measurements, newest first. Pass the returned {@code nextCursor} as
+	 * {@code cursor} to fetch the next page; it is {@code null} on the last page.
+	 */
+	@RequestMapping(value = "/{owner}/history", method = RequestMethod.GET)
+	public MeasurementPage history(@PathVariable String owner, @RequestParam(required = false) String sensor,
+			@RequestParam(required = false) String cursor, @RequestParam(defaultValue = "50") int limit) {
+		return measurementService.getMeasurementHistory(owner, sensor, cursor, Math.max(1, Math.min(limit, maxPageSize)));
+	}
+	
+	/**
+	 * Full history of an owner's sensor as chunked NDJSON (default) or CSV. Rows are written while the
+	 * cursor is iterated and flushed after every batch, so the response starts right away and memory
+	 * use does not depend on the history size.
+	 */
+	@RequestMapping(value = "/{owner}/{sensor}/export", method = RequestMethod.GET)
+	public ResponseEntity<StreamingResponseBody> export(@PathVariable String owner, @PathVariable String sensor,
+			@RequestParam(defaultValue = "ndjson") String format) {
+		if ("csv".equals(format)) {
+			return ResponseEntity.ok().contentType(TEXT_CSV).body(out -> exportCsv(owner, sensor, out));
+		}
+		if ("ndjson".equals(format)) {
+			return ResponseEntity.ok().contentType(MediaType.valueOf(APPLICATION_NDJSON_VALUE)).body(out -> exportNdjson(owner, sensor, out));
+		}
+		return ResponseEntity.badRequest().build();
+	}
+	
+	private void exportNdjson(String owner, String sensor, OutputStream out) throws IOException {
+		try (SequenceWriter writer = objectMapper.writerFor(Measurement.class).withRootValueSeparator("\n").writeValues(out)) {
+			AtomicInteger rows = new AtomicInteger();
+			measurementService.streamMeasurementsByUserAndSensor(owner, sensor, measurement -> {
+				try {
+					writer.write(measurement);
+					if (rows.incrementAndGet() % exportFlushRows == 0) {
+						writer.flush();
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+	}
+	
+	private void exportCsv(String owner, String sensor, OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		writer.write("id,owner,sensor,created,measuredValue\n");
+		writer.flush();
+		AtomicInteger rows = new AtomicInteger();
+		measurementService.streamMeasurementsByUserAndSensor(owner, sensor, measurement -> {
+			try {
+				writer.write(csv(measurement.getId()));
+				writer.write(',');
+				writer.write(csv(measurement.getOwner()));
+				writer.write(',');
+				writer.write(csv(measurement.getSensor()));
+				writer.write(',');
+				writer.write(Long.toString(measurement.getCreated()));
+				writer.write(',');
+				writer.write(Long.toString(measurement.getMeasuredValue()));
+				writer.write('\n');
+				if (rows.incrementAndGet() % exportFlushRows == 0) {
+					writer.flush();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		writer.flush();
+	}
+	
+	private static String csv(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+	
+	@ExceptionHandler(InvalidCursorException.class)
+	public ResponseEntity<Void> invalidCursor() {
+		return ResponseEntity.badRequest().build();
+	}
+	
+	@ExceptionHandler(JsonProcessingException.class)
+	public ResponseEntity<String> malformedPayload(JsonProcessingException e) {
+		return ResponseEntity.badRequest().body(e.getOriginalMessage());
+	}
+	
+	@RequestMapping(value = "/cache/stats", method = RequestMethod.GET)
+	public CacheStats cacheStats() {
+		return newestMeasurementsCache.stats();
+	}
+
+}
@@ -0,0 +1,60 @@
+package io.smartcat.rest;
+
+import java.util.List;
+import java.util.SortedMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.smartcat.metrics.ConnectionPoolMetrics;
+import io.smartcat.metrics.LatencyMetrics;
+import io.smartcat.metrics.LatencySnapshot;
+import io.smartcat.metrics.MethodLatencyAspect;
+import io.smartcat.metrics.MongoCommandMetrics;
+import io.smartcat.metrics.MongoMetrics;
+import io.smartcat.metrics.SlowQuery;
+import io.smartcat.metrics.SlowQueryLog;
+
+@RestController
+@RequestMapping("api/metrics")
+public class MetricsRestController {
+	
+	@Autowired
+	private LatencyMetrics latencyMetrics;
+	
+	@Autowired
+	private ConnectionPoolMetrics connectionPoolMetrics;
+	
+	@Autowired
+	private SlowQueryLog slowQueryLog;
+	
+	@RequestMapping(value = "/mongo", method = RequestMethod.GET)
+	public MongoMetrics mongo() {
+		return new MongoMetrics(latencyMetrics.snapshot(MongoCommandMetrics.PREFIX), connectionPoolMetrics.stats());
+	}
+	
+	/**
+	 * Latency of repository, service and REST methods; empty when metrics.methods.enabled is off.
+	 */
+	@RequestMapping(value = "/methods", method = RequestMethod.GET)
+	public SortedMap<String, LatencySnapshot> methods() {
+		return latencyMetrics.snapshot(MethodLatencyAspect.PREFIX);
+	}
+	
+	@RequestMapping(value = "/slow-queries", method = RequestMethod.GET)
+	public List<SlowQuery> slowQueries() {
+		return slowQueryLog.entries();
+	}
+	
+	/**
+	 * Starts all histograms and the slow query log over, e.g. between benchmark runs.
+	 */
+	@RequestMapping(method = RequestMethod.DELETE)
+	public void reset() {
+		latencyMetrics.reset();
+		slowQueryLog.clear();
+	}
+
+}
@@ -0,0 +1,66 @@
+package io.smartcat.rest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.smartcat.service.ApproximateSensorStatsDTO;
+import io.smartcat.service.AvgHeartBeatRateDTO;
+import io.smartcat.service.ReportService;
+import io.smartcat.service.SensorStatsDTO;
+
+@RestController
+@RequestMapping("api/reports")
+public class ReportRestController {
+	
+	@Autowired
+	private ReportService reportService;
+	
+	/**
+	 * Average heart beat rate per owner for [from, to), computed without holding a servlet thread.
+	 */
+	@RequestMapping(value = "/heart-beat-rate", method = RequestMethod.GET)
+	public CompletableFuture<List<AvgHeartBeatRateDTO>> avgHeartBeatRate(@RequestParam long from, @RequestParam long to) {
+		return reportService.calcAvgHeartBeatRateAsync(from, to);
+	}
+	
+	/**
+	 * Count, avg, min, max, stdDev and p50/p95/p99 per sensor for [from, to), optionally per owner and per
+	 * time bucket of {@code bucket} (same unit as created).
+	 */
+	@RequestMapping(value = "/stats", method = RequestMethod.GET)
+	public List<SensorStatsDTO> stats(@RequestParam("sensor") List<String> sensors, @RequestParam long from, @RequestParam long to,
+			@RequestParam(defaultValue = "0") long bucket, @RequestParam(defaultValue = "false") boolean byOwner) {
+		return reportService.calcSensorStats(sensors, from, to, bucket, byOwner);
+	}
+	
+	/**
+	 * Approximate per sensor statistics with distinct and heaviest owners, from the ingest-time sketches;
+	 * every sensor when none is given.
+	 */
+	@RequestMapping(value = "/approximate", method = RequestMethod.GET)
+	public List<ApproximateSensorStatsDTO> approximate(@RequestParam(name = "sensor", required = false) List<String> sensors,
+			@RequestParam long from, @RequestParam long to, @RequestParam(defaultValue = "10") int top) {
+		return reportService.calcApproximateSensorStats(sensors, from, to, top);
+	}
+	
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ResponseEntity<String> invalidReport(IllegalArgumentException e) {
+		return ResponseEntity.badRequest().body(e.getMessage());
+	}
+	
+	@ExceptionHandler(QueryTimeoutException.class)
+	public ResponseEntity<String> reportTimedOut(QueryTimeoutException e) {
+		return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(e.getMessage());
+	}
+
+}
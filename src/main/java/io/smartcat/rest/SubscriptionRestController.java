@@ -0,0 +1,72 @@
+package io.smartcat.rest;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import io.smartcat.service.MeasurementBatchDTO;
+import io.smartcat.service.MeasurementSink;
+import io.smartcat.service.MeasurementSubscriptionHub;
+import io.smartcat.service.MeasurementSubscriptionHub.Subscription;
+
+@RestController
+@RequestMapping("api/subscriptions")
+public class SubscriptionRestController {
+	
+	public static final String TEXT_EVENT_STREAM_VALUE = "text/event-stream";
+	
+	@Autowired
+	private MeasurementSubscriptionHub subscriptionHub;
+	
+	// streams end after this long; EventSource clients reconnect on their own
+	@Value("${measurement.subscriptions.timeout-ms:300000}")
+	private long timeoutMillis;
+	
+	/**
+	 * Server-sent events stream of the measurements of the owner's sensor ingested while it is open, one
+	 * "measurements" event per micro-batch, instead of polling the newest measurements. While nothing is
+	 * ingested a comment line is sent every {@code measurement.subscriptions.heartbeat-ms}.
+	 */
+	@RequestMapping(value = "/{owner}/{sensor}", method = RequestMethod.GET, produces = TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter subscribe(@PathVariable String owner, @PathVariable String sensor) {
+		SseEmitter emitter = new SseEmitter(timeoutMillis);
+		Subscription subscription = subscriptionHub.subscribe(owner, sensor, new MeasurementSink() {
+			
+			@Override
+			public void send(MeasurementBatchDTO batch) throws IOException {
+				emitter.send(SseEmitter.event().name("measurements").data(batch, MediaType.APPLICATION_JSON));
+			}
+			
+			@Override
+			public void heartbeat() throws IOException {
+				emitter.send(SseEmitter.event().comment("heartbeat"));
+			}
+			
+			@Override
+			public void close() {
+				emitter.complete();
+			}
+			
+		});
+		emitter.onCompletion(subscription::cancel);
+		emitter.onTimeout(subscription::cancel);
+		return emitter;
+	}
+	
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity<String> tooManySubscriptions(RejectedExecutionException e) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+	}
+
+}
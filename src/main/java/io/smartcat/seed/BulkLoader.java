@@ -0,0 +1,81 @@
+package io.smartcat.seed;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Service;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.MeasurementService;
+
+/**
+ * Loads generated data in fixed-size chunks instead of materializing the whole data set with
+ * {@code generateAll()} and handing it to {@code insertAll}. Each chunk is generated, written with an
+ * unordered bulk insert and released before the next one is built, so heap usage depends on the chunk
+ * size only.
+ */
+@Service
+public class BulkLoader {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+
+	@Autowired
+	private MongoOperations mongoOps;
+
+	@Autowired
+	private MeasurementService measurementService;
+
+	@Value("${seed.chunk-size:10000}")
+	private int defaultChunkSize;
+
+	public <T> LoadReport load(Class<T> type, GeneratorFactory<T> factory, long total) {
+		return load(type, factory, total, defaultChunkSize);
+	}
+
+	public <T> LoadReport load(Class<T> type, GeneratorFactory<T> factory, long total, int chunkSize) {
+		return load(factory, total, chunkSize, writerFor(type));
+	}
+
+	// measurements go through the service, which routes them to their owner's partition and keeps derived state in sync
+	@SuppressWarnings("unchecked")
+	private <T> ChunkWriter<T> writerFor(Class<T> type) {
+		if (type == Measurement.class) {
+			return chunk -> measurementService.bulkInsert((List<Measurement>) chunk);
+		}
+		return chunk -> mongoOps.bulkOps(BulkMode.UNORDERED, type).insert(chunk).execute();
+	}
+
+	public <T> LoadReport load(GeneratorFactory<T> factory, long total, int chunkSize, ChunkWriter<T> writer) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		LoadReport report = new LoadReport();
+		long start = System.nanoTime();
+		long remaining = total;
+		while (remaining > 0) {
+			int size = (int) Math.min(chunkSize, remaining);
+
+			long generationStart = System.nanoTime();
+			List<T> chunk = factory.create(size).generateAll();
+			long writeStart = System.nanoTime();
+			writer.write(chunk);
+			long writeEnd = System.nanoTime();
+
+			report.recordChunk(chunk.size(), writeStart - generationStart, writeEnd - writeStart);
+			remaining -= size;
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Chunk {} written: {} rows, generated in {} ms, written in {} ms", report.getChunks(),
+						chunk.size(), (writeStart - generationStart) / 1_000_000, (writeEnd - writeStart) / 1_000_000);
+			}
+		}
+		report.setElapsedNanos(System.nanoTime() - start);
+		LOGGER.info("Bulk load finished: {}", report);
+		return report;
+	}
+
+}
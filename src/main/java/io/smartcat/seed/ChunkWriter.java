@@ -0,0 +1,13 @@
+package io.smartcat.seed;
+
+import java.util.List;
+
+/**
+ * Persists one generated chunk.
+ */
+@FunctionalInterface
+public interface ChunkWriter<T> {
+
+	void write(List<T> chunk);
+
+}
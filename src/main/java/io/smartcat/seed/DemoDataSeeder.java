@@ -0,0 +1,72 @@
+package io.smartcat.seed;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.domain.User;
+import io.smartcat.ranger.AggregatedObjectGenerator;
+import io.smartcat.ranger.ObjectGenerator;
+import io.smartcat.service.MeasurementService;
+
+/**
+ * Demo data that used to be generated on every {@code POST api/users/{username}}. Seeding runs only
+ * when explicitly triggered, either with the {@code seed} profile ({@link SeedRunner}) or through
+ * {@code POST api/admin/seed}. Ranger generators are exhausted by {@code generateAll}, so every run
+ * builds its own and seeds the full data set again.
+ */
+@Component
+public class DemoDataSeeder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DemoDataSeeder.class);
+
+	@Autowired
+	private MongoOperations mongoOps;
+
+	@Autowired
+	private MeasurementService measurementService;
+
+	private static final LocalDateTime YEAR_1970 = LocalDateTime.of(1970, 1, 1, 0, 0);
+	private static final LocalDateTime YEAR_1980 = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+	private static ObjectGenerator<User> userGenerator() {
+		return new ObjectGenerator.Builder<User>(User.class)
+				.withValues("username", "batman", "superman", "robin", "jedi", "yoda")
+				.withRanges("birthdate", YEAR_1970, YEAR_1980)
+				.toBeGenerated(10).build();
+	}
+
+	private static AggregatedObjectGenerator<Measurement> measurementGenerator() {
+		ObjectGenerator<Measurement> measurements = new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("sensor", "Heart Beat Monitor", "Blood Preassure Monitor")
+				.withValues("owner", "superman", "robin", "jedi", "yoda")
+				.withRanges("created", 1000L, 15000L)
+				.toBeGenerated(5000).build();
+
+		ObjectGenerator<Measurement> last50Measurements = new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("sensor", "Heart Beat Monitor", "Blood Preassure Monitor")
+				.withValues("owner", "batman")
+				.withRanges("created", 14000L, 15000L)
+				.toBeGenerated(50).build();
+
+		return new AggregatedObjectGenerator.Builder<Measurement>()
+				.withObjectGenerator(measurements)
+				.withObjectGenerator(last50Measurements)
+				.build();
+	}
+
+	public synchronized void seed() {
+		List<User> users = userGenerator().generateAll();
+		mongoOps.insert(users, User.class);
+		List<Measurement> measurements = measurementGenerator().generateAll();
+		measurementService.saveAll(measurements);
+		LOGGER.info("Seeded {} users and {} measurements", users.size(), measurements.size());
+	}
+
+}
@@ -0,0 +1,14 @@
+package io.smartcat.seed;
+
+import io.smartcat.ranger.ObjectGenerator;
+
+/**
+ * Builds a Ranger {@link ObjectGenerator} that produces exactly {@code count} objects.
+ * The loader asks for one generator per chunk, so only a single chunk is ever held in memory.
+ */
+@FunctionalInterface
+public interface GeneratorFactory<T> {
+
+	ObjectGenerator<T> create(int count);
+
+}
@@ -0,0 +1,71 @@
+package io.smartcat.seed;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link BulkLoader} or {@link SeedingPipeline} run: total throughput plus per-chunk write latency.
+ */
+public class LoadReport {
+
+	private long rows;
+	private int chunks;
+	private long elapsedNanos;
+	private long generationNanos;
+	private long minChunkWriteNanos = Long.MAX_VALUE;
+	private long maxChunkWriteNanos;
+	private long totalChunkWriteNanos;
+
+	void recordChunk(int size, long generationNanos, long writeNanos) {
+		recordGeneration(generationNanos);
+		recordWrite(size, writeNanos);
+	}
+
+	synchronized void recordGeneration(long generationNanos) {
+		this.generationNanos += generationNanos;
+	}
+
+	synchronized void recordWrite(int size, long writeNanos) {
+		rows += size;
+		chunks++;
+		totalChunkWriteNanos += writeNanos;
+		minChunkWriteNanos = Math.min(minChunkWriteNanos, writeNanos);
+		maxChunkWriteNanos = Math.max(maxChunkWriteNanos, writeNanos);
+	}
+
+	synchronized void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+	public int getChunks() {
+		return chunks;
+	}
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+	}
+	public long getGenerationMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(generationNanos);
+	}
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0 : rows * 1_000_000_000d / elapsedNanos;
+	}
+	public double getMinChunkWriteMillis() {
+		return chunks == 0 ? 0 : minChunkWriteNanos / 1_000_000d;
+	}
+	public double getAvgChunkWriteMillis() {
+		return chunks == 0 ? 0 : totalChunkWriteNanos / 1_000_000d / chunks;
+	}
+	public double getMaxChunkWriteMillis() {
+		return maxChunkWriteNanos / 1_000_000d;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d rows in %d chunks, %d ms (%.0f rows/s, generation %d ms), chunk write min/avg/max %.1f/%.1f/%.1f ms",
+				rows, chunks, getElapsedMillis(), getRowsPerSecond(), getGenerationMillis(),
+				getMinChunkWriteMillis(), getAvgChunkWriteMillis(), getMaxChunkWriteMillis());
+	}
+
+}
@@ -0,0 +1,14 @@
+package io.smartcat.seed;
+
+import io.smartcat.ranger.ObjectGenerator;
+
+/**
+ * Builds the generator for one chunk of one partition, e.g. to give each partition its own owners.
+ * Ranger generators cannot be seeded, so runs are not reproducible row for row.
+ */
+@FunctionalInterface
+public interface PartitionedGeneratorFactory<T> {
+
+	ObjectGenerator<T> create(int partition, int count);
+
+}
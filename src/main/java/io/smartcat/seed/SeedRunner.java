@@ -0,0 +1,23 @@
+package io.smartcat.seed;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Seeds demo data once at startup when the application runs with the {@code seed} profile.
+ */
+@Component
+@Profile("seed")
+public class SeedRunner implements CommandLineRunner {
+
+	@Autowired
+	private DemoDataSeeder demoDataSeeder;
+
+	@Override
+	public void run(String... args) {
+		demoDataSeeder.seed();
+	}
+
+}
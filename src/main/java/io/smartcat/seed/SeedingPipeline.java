@@ -0,0 +1,194 @@
+package io.smartcat.seed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Service;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.MeasurementService;
+
+/**
+ * Producer/consumer seeding: {@code seed.generator-threads} partitions generate chunks into a queue bounded
+ * by {@code seed.queue-depth}, and {@code seed.writer-threads} writers drain it with unordered bulk inserts.
+ * Generation and I/O overlap, and a full queue blocks the generators instead of growing the heap.
+ */
+@Service
+public class SeedingPipeline {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SeedingPipeline.class);
+
+	private static final List<Object> END_OF_STREAM = Collections.emptyList();
+
+	@Autowired
+	private MongoOperations mongoOps;
+
+	@Autowired
+	private MeasurementService measurementService;
+
+	@Value("${seed.generator-threads:2}")
+	private int generatorThreads;
+
+	@Value("${seed.writer-threads:2}")
+	private int writerThreads;
+
+	@Value("${seed.queue-depth:8}")
+	private int queueDepth;
+
+	@Value("${seed.chunk-size:10000}")
+	private int chunkSize;
+
+	@PostConstruct
+	public void validate() {
+		if (generatorThreads < 1 || writerThreads < 1 || queueDepth < 1 || chunkSize < 1) {
+			throw new IllegalStateException(String.format(
+					"seed.generator-threads, seed.writer-threads, seed.queue-depth and seed.chunk-size must be positive: %d, %d, %d, %d",
+					generatorThreads, writerThreads, queueDepth, chunkSize));
+		}
+	}
+
+	public <T> LoadReport run(Class<T> type, PartitionedGeneratorFactory<T> factory, long total) {
+		return run(factory, total, writerFor(type));
+	}
+
+	// measurements go through the service, which routes them to their owner's partition and keeps derived state in sync
+	@SuppressWarnings("unchecked")
+	private <T> ChunkWriter<T> writerFor(Class<T> type) {
+		if (type == Measurement.class) {
+			return chunk -> measurementService.bulkInsert((List<Measurement>) chunk);
+		}
+		return chunk -> mongoOps.bulkOps(BulkMode.UNORDERED, type).insert(chunk).execute();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> LoadReport run(PartitionedGeneratorFactory<T> factory, long total, ChunkWriter<T> writer) {
+		BlockingQueue<List<T>> queue = new ArrayBlockingQueue<>(queueDepth);
+		List<T> endOfStream = (List<T>) END_OF_STREAM;
+		LoadReport report = new LoadReport();
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicInteger threadIndex = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(generatorThreads + writerThreads,
+				runnable -> new Thread(runnable, "seeding-" + threadIndex.incrementAndGet()));
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> writers = new ArrayList<>();
+			for (int i = 0; i < writerThreads; i++) {
+				writers.add(submit(executor, failure, () -> drain(queue, endOfStream, writer, report)));
+			}
+			List<Future<?>> generators = new ArrayList<>();
+			for (int partition = 0; partition < generatorThreads; partition++) {
+				long rows = partitionRows(total, partition);
+				int p = partition;
+				generators.add(submit(executor, failure, () -> produce(p, rows, factory, queue, report)));
+			}
+			for (Future<?> generator : generators) {
+				await(generator, failure);
+			}
+			for (int i = 0; i < writerThreads; i++) {
+				signalEndOfStream(queue, endOfStream, failure);
+			}
+			for (Future<?> w : writers) {
+				await(w, failure);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (failure.get() != null) {
+				throw new IllegalStateException("Seeding failed", failure.get());
+			}
+			throw new IllegalStateException("Seeding interrupted", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		report.setElapsedNanos(System.nanoTime() - start);
+		LOGGER.info("Seeding pipeline finished with {} generators and {} writers: {}", generatorThreads, writerThreads, report);
+		return report;
+	}
+
+	private long partitionRows(long total, int partition) {
+		long rows = total / generatorThreads;
+		return partition < total % generatorThreads ? rows + 1 : rows;
+	}
+
+	private <T> void produce(int partition, long rows, PartitionedGeneratorFactory<T> factory, BlockingQueue<List<T>> queue,
+			LoadReport report) throws InterruptedException {
+		for (long remaining = rows; remaining > 0; remaining -= chunkSize) {
+			int size = (int) Math.min(chunkSize, remaining);
+			long generationStart = System.nanoTime();
+			List<T> rowsOfChunk = factory.create(partition, size).generateAll();
+			report.recordGeneration(System.nanoTime() - generationStart);
+			queue.put(rowsOfChunk);
+		}
+	}
+
+	private <T> void drain(BlockingQueue<List<T>> queue, List<T> endOfStream, ChunkWriter<T> writer, LoadReport report)
+			throws InterruptedException {
+		for (List<T> chunk = queue.take(); chunk != endOfStream; chunk = queue.take()) {
+			long writeStart = System.nanoTime();
+			writer.write(chunk);
+			report.recordWrite(chunk.size(), System.nanoTime() - writeStart);
+		}
+	}
+
+	/**
+	 * Writers that failed no longer drain the queue, so a blocking put could wait for them forever.
+	 */
+	private <T> void signalEndOfStream(BlockingQueue<List<T>> queue, List<T> endOfStream, AtomicReference<Throwable> failure)
+			throws InterruptedException {
+		while (!queue.offer(endOfStream, 100, TimeUnit.MILLISECONDS)) {
+			if (failure.get() != null) {
+				throw new IllegalStateException("Seeding failed", failure.get());
+			}
+		}
+	}
+
+	/**
+	 * Runs a pipeline stage; the first stage to fail records its cause and interrupts all the others, so
+	 * generators blocked on a full queue do not wait for writers that are gone.
+	 */
+	private Future<?> submit(ExecutorService executor, AtomicReference<Throwable> failure, Stage stage) {
+		return executor.submit(() -> {
+			try {
+				stage.run();
+			} catch (Exception | Error e) {
+				if (failure.compareAndSet(null, e)) {
+					executor.shutdownNow();
+				}
+				throw e;
+			}
+			return null;
+		});
+	}
+
+	private void await(Future<?> future, AtomicReference<Throwable> failure) throws InterruptedException {
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Seeding failed", failure.get() != null ? failure.get() : e.getCause());
+		}
+	}
+
+	@FunctionalInterface
+	private interface Stage {
+		void run() throws Exception;
+	}
+
+}
@@ -0,0 +1,148 @@
+package io.smartcat.service;
+
+import java.util.List;
+
+public class ApproximateSensorStatsDTO {
+
+	private String sensor;
+	private long from;
+	private long to;
+	private long coveredFrom;
+	private long ingestedSince;
+	private long count;
+	private double avg;
+	private long min;
+	private long max;
+	private double stdDev;
+	private double p50;
+	private double p95;
+	private double p99;
+	private long distinctOwners;
+	private List<OwnerCountDTO> topOwners;
+
+	public ApproximateSensorStatsDTO() {
+	}
+
+	public ApproximateSensorStatsDTO(String sensor, long from, long to, SensorSketch sketch, int topOwners) {
+		MeasurementStats stats = sketch.getStats();
+		this.sensor = sensor;
+		this.from = from;
+		this.to = to;
+		this.count = stats.getCount();
+		this.avg = stats.getMean();
+		this.min = stats.getMin();
+		this.max = stats.getMax();
+		this.stdDev = stats.getStdDev();
+		this.p50 = stats.quantile(0.5);
+		this.p95 = stats.quantile(0.95);
+		this.p99 = stats.quantile(0.99);
+		this.distinctOwners = sketch.getDistinctOwners();
+		this.topOwners = sketch.topOwners(topOwners);
+	}
+
+	public String getSensor() {
+		return sensor;
+	}
+	public void setSensor(String sensor) {
+		this.sensor = sensor;
+	}
+	/**
+	 * Start of the range the row covers, the requested start rounded down to a sketch bucket.
+	 */
+	public long getFrom() {
+		return from;
+	}
+	public void setFrom(long from) {
+		this.from = from;
+	}
+	/**
+	 * End (exclusive) of the range the row covers, the requested end rounded up to a sketch bucket.
+	 */
+	public long getTo() {
+		return to;
+	}
+	public void setTo(long to) {
+		this.to = to;
+	}
+	/**
+	 * Start of the part of [from, to) the sketches retain buckets for; older buckets have expired, so
+	 * nothing before it is counted.
+	 */
+	public long getCoveredFrom() {
+		return coveredFrom;
+	}
+	public void setCoveredFrom(long coveredFrom) {
+		this.coveredFrom = coveredFrom;
+	}
+	/**
+	 * Wall clock time the sketches started at (application start): measurements stored before it are not
+	 * counted, whatever their created.
+	 */
+	public long getIngestedSince() {
+		return ingestedSince;
+	}
+	public void setIngestedSince(long ingestedSince) {
+		this.ingestedSince = ingestedSince;
+	}
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long count) {
+		this.count = count;
+	}
+	public double getAvg() {
+		return avg;
+	}
+	public void setAvg(double avg) {
+		this.avg = avg;
+	}
+	public long getMin() {
+		return min;
+	}
+	public void setMin(long min) {
+		this.min = min;
+	}
+	public long getMax() {
+		return max;
+	}
+	public void setMax(long max) {
+		this.max = max;
+	}
+	public double getStdDev() {
+		return stdDev;
+	}
+	public void setStdDev(double stdDev) {
+		this.stdDev = stdDev;
+	}
+	public double getP50() {
+		return p50;
+	}
+	public void setP50(double p50) {
+		this.p50 = p50;
+	}
+	public double getP95() {
+		return p95;
+	}
+	public void setP95(double p95) {
+		this.p95 = p95;
+	}
+	public double getP99() {
+		return p99;
+	}
+	public void setP99(double p99) {
+		this.p99 = p99;
+	}
+	public long getDistinctOwners() {
+		return distinctOwners;
+	}
+	public void setDistinctOwners(long distinctOwners) {
+		this.distinctOwners = distinctOwners;
+	}
+	public List<OwnerCountDTO> getTopOwners() {
+		return topOwners;
+	}
+	public void setTopOwners(List<OwnerCountDTO> topOwners) {
+		this.topOwners = topOwners;
+	}
+
+}
@@ -0,0 +1,43 @@
+package io.smartcat.service;
+
+public class CacheStats {
+	
+	private final int size;
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long expirations;
+	private final long invalidations;
+	
+	public CacheStats(int size, long hits, long misses, long evictions, long expirations, long invalidations) {
+		this.size = size;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.expirations = expirations;
+		this.invalidations = invalidations;
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	public long getHits() {
+		return hits;
+	}
+	public long getMisses() {
+		return misses;
+	}
+	public long getEvictions() {
+		return evictions;
+	}
+	public long getExpirations() {
+		return expirations;
+	}
+	public long getInvalidations() {
+		return invalidations;
+	}
+	public double getHitRatio() {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+}
@@ -0,0 +1,273 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.async.client.FindIterable;
+
+import io.smartcat.config.MeasurementPartitions;
+import io.smartcat.domain.Measurement;
+
+/**
+ * Default storage mode: one document per measurement in {@code measurements}, spread over the measurement
+ * partitions by owner.
+ */
+@Component
+@ConditionalOnProperty(name = "measurement.buckets.enabled", havingValue = "false", matchIfMissing = true)
+public class DocumentMeasurementStore implements MeasurementStore {
+
+	public static final String COLLECTION = "measurements";
+
+	// everything a MeasurementPoints needs; skips _id, _class, owner, sensor and the bookkeeping fields
+	private static final DBObject POINT_FIELDS = new BasicDBObject("_id", 0).append("created", 1).append("measuredValue", 1);
+
+	@Autowired
+	private MongoOperations mongoOps;
+
+	@Autowired
+	private MeasurementPartitions partitions;
+
+	@Value("${measurement.async.max-time-ms:30000}")
+	private long asyncMaxTimeMillis;
+
+	@Value("${measurement.export.batch-size:1000}")
+	private int exportBatchSize;
+
+	@Override
+	public void insert(List<Measurement> measurements, WriteConcern writeConcern) {
+		forEachPartition(measurements, (ops, inPartition) -> insert(ops, inPartition, writeConcern));
+	}
+
+	/**
+	 * Each partition's share of the chunk is written with one unordered bulk insert. Ids are assigned
+	 * before the write, as the bulk API does not report them back.
+	 */
+	@Override
+	public void bulkInsert(List<Measurement> measurements) {
+		forEachPartition(measurements, (ops, inPartition) -> {
+			inPartition.stream().filter(measurement -> measurement.getId() == null).forEach(measurement -> measurement.setId(new ObjectId().toHexString()));
+			ops.bulkOps(BulkMode.UNORDERED, Measurement.class).insert(inPartition).execute();
+		});
+	}
+
+	private void forEachPartition(List<Measurement> measurements, BiConsumer<MongoOperations, List<Measurement>> write) {
+		if (!partitions.isPartitioned()) {
+			write.accept(mongoOps, measurements);
+			return;
+		}
+		Map<Integer, List<Measurement>> byPartition = new HashMap<>();
+		for (Measurement measurement : measurements) {
+			byPartition.computeIfAbsent(partitions.partitionOf(measurement.getOwner()), partition -> new ArrayList<>()).add(measurement);
+		}
+		byPartition.forEach((partition, inPartition) -> write.accept(partitions.get(partition), inPartition));
+	}
+
+	// MongoTemplate resolves the write concern per operation type only, so with one given this writes the mapped documents itself
+	private static void insert(MongoOperations ops, List<Measurement> measurements, WriteConcern writeConcern) {
+		if (writeConcern == null) {
+			ops.insert(measurements, Measurement.class);
+			return;
+		}
+		List<DBObject> documents = new ArrayList<>(measurements.size());
+		for (Measurement measurement : measurements) {
+			BasicDBObject document = new BasicDBObject();
+			ops.getConverter().write(measurement, document);
+			documents.add(document);
+		}
+		ops.execute(Measurement.class, collection -> collection.insert(documents, writeConcern));
+		for (int i = 0; i < measurements.size(); i++) {
+			measurements.get(i).setId(documents.get(i).get("_id").toString());
+		}
+	}
+
+	@Override
+	public List<Measurement> findNewest(String owner, String sensor, PageCursor after, int limit) {
+		Criteria criteria = Criteria.where("owner").is(owner);
+		if (sensor != null) {
+			criteria = criteria.and("sensor").is(sensor);
+		}
+		if (after != null) {
+			// the $lte bound keeps the scan a single index range; the $or only breaks ties on _id
+			criteria = criteria.and("created").lte(after.getCreated()).orOperator(
+					Criteria.where("created").lt(after.getCreated()),
+					Criteria.where("created").is(after.getCreated()).and("id").lt(after.getId()));
+		}
+//		db.measurements.find( { owner : "username", $or : [ { created : { $lt : c } }, { created : c, _id : { $lt : id } } ] })
+//			.sort( { created : -1, _id : -1 }).limit(limit);
+		Query query = new Query(criteria)
+				.with(new Sort(Sort.Direction.DESC, "created", "id"))
+				.limit(limit);
+		return partitions.forOwner(owner).find(query, Measurement.class);
+	}
+
+	/**
+	 * Backed by the async driver: the future completes on one of the driver's threads.
+	 */
+	@Override
+	public CompletableFuture<List<Measurement>> findNewestAsync(String owner, String sensor, PageCursor after, int limit) {
+		BasicDBObject filter = new BasicDBObject("owner", owner);
+		if (sensor != null) {
+			filter.append("sensor", sensor);
+		}
+		if (after != null) {
+			// same range as findNewest; ids are ObjectIds unless they were assigned as other strings
+			Object id = ObjectId.isValid(after.getId()) ? new ObjectId(after.getId()) : after.getId();
+			BasicDBList or = new BasicDBList();
+			or.add(new BasicDBObject("created", new BasicDBObject("$lt", after.getCreated())));
+			or.add(new BasicDBObject("created", after.getCreated()).append("_id", new BasicDBObject("$lt", id)));
+			filter.append("created", new BasicDBObject("$lte", after.getCreated())).append("$or", or);
+		}
+		FindIterable<BasicDBObject> find = partitions.asyncForOwner(owner).getCollection(COLLECTION, BasicDBObject.class)
+				.find(filter)
+				.sort(new BasicDBObject("created", -1).append("_id", -1))
+				.limit(limit)
+				.maxTime(asyncMaxTimeMillis, TimeUnit.MILLISECONDS);
+		return MongoFutures.toList(find.map(dbObject -> mongoOps.getConverter().read(Measurement.class, dbObject)));
+	}
+
+	/**
+	 * Only created and measuredValue are fetched and they are decoded straight into arrays, bypassing the
+	 * entity mapping.
+	 */
+	@Override
+	public MeasurementPoints findNewestPoints(String owner, String sensor, int limit) {
+//		db.measurements.find( { owner : "username", sensor : "sensor" }, { _id : 0, created : 1, measuredValue : 1 }).sort( { created : -1 }).limit(50);
+		return partitions.forOwner(owner).execute(Measurement.class, collection -> readPoints(collection
+				.find(new BasicDBObject("owner", owner).append("sensor", sensor), POINT_FIELDS)
+				.sort(new BasicDBObject("created", -1))
+				.limit(limit), limit));
+	}
+
+	@Override
+	public MeasurementPoints findPoints(String owner, String sensor) {
+		return partitions.forOwner(owner).execute(Measurement.class, collection -> readPoints(collection
+				.find(new BasicDBObject("owner", owner).append("sensor", sensor), POINT_FIELDS)
+				.sort(new BasicDBObject("created", 1))
+				.batchSize(exportBatchSize), exportBatchSize));
+	}
+
+	private static MeasurementPoints readPoints(DBCursor query, int expectedSize) {
+		long[] created = new long[Math.max(expectedSize, 16)];
+		long[] values = new long[created.length];
+		int size = 0;
+		try (DBCursor cursor = query) {
+			for (DBObject point : cursor) {
+				if (size == created.length) {
+					created = Arrays.copyOf(created, size * 2);
+					values = Arrays.copyOf(values, size * 2);
+				}
+				created[size] = ((Number) point.get("created")).longValue();
+				values[size] = ((Number) point.get("measuredValue")).longValue();
+				size++;
+			}
+		}
+		return new MeasurementPoints(Arrays.copyOf(created, size), Arrays.copyOf(values, size));
+	}
+
+	/**
+	 * Documents are read from a cursor in batches of {@code measurement.export.batch-size}.
+	 */
+	@Override
+	public void stream(String owner, String sensor, Consumer<Measurement> consumer) {
+		partitions.forOwner(owner).execute(Measurement.class, collection -> {
+			try (DBCursor cursor = collection.find(new BasicDBObject("owner", owner).append("sensor", sensor))
+					.sort(new BasicDBObject("created", 1))
+					.batchSize(exportBatchSize)) {
+				for (DBObject dbObject : cursor) {
+					consumer.accept(mongoOps.getConverter().read(Measurement.class, dbObject));
+				}
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public String getCollection() {
+		return COLLECTION;
+	}
+
+	@Override
+	public int getPartitionCount() {
+		return partitions.size();
+	}
+
+	@Override
+	public List<DBCollection> getCollections() {
+		List<DBCollection> collections = new ArrayList<>();
+		partitions.all().forEach(partition -> collections.add(partition.getCollection(COLLECTION)));
+		return collections;
+	}
+
+	@Override
+	public List<DBObject> rangeStages(Collection<String> sensors, long from, long to) {
+		BasicDBObject match = new BasicDBObject();
+		if (sensors != null) {
+			match.append("sensor", sensors.size() == 1 ? sensors.iterator().next() : new BasicDBObject("$in", sensors));
+		}
+		BasicDBObject created = createdRange(from, to);
+		if (!created.isEmpty()) {
+			match.append("created", created);
+		}
+		return match.isEmpty() ? Collections.emptyList() : Collections.singletonList(new BasicDBObject("$match", match));
+	}
+
+	static BasicDBObject createdRange(long from, long to) {
+		BasicDBObject created = new BasicDBObject();
+		if (from != Long.MIN_VALUE) {
+			created.append("$gte", from);
+		}
+		if (to != Long.MAX_VALUE) {
+			created.append("$lt", to);
+		}
+		return created;
+	}
+
+	@Override
+	public DBObject createdBeforeQuery(long created) {
+		return new BasicDBObject("created", new BasicDBObject("$lt", created));
+	}
+
+	/**
+	 * A measurement document is seen whole or not at all, so this is a delete by id.
+	 */
+	@Override
+	public long removeSeen(DBCollection collection, Map<Object, Integer> seen, long before) {
+		return collection.remove(new BasicDBObject("_id", new BasicDBObject("$in", seen.keySet()))).getN();
+	}
+
+	@Override
+	public void ensureTtlIndex(int expireAfterSeconds) {
+		for (MongoOperations partition : partitions.all()) {
+			partition.indexOps(Measurement.class).ensureIndex(new Index().named("lastChanged_ttl")
+					.on("lastChanged", Sort.Direction.ASC).expire(expireAfterSeconds));
+		}
+	}
+
+}
@@ -0,0 +1,11 @@
+package io.smartcat.service;
+
+public class InvalidCursorException extends IllegalArgumentException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public InvalidCursorException(String token) {
+		super("Invalid page cursor: " + token);
+	}
+
+}
@@ -0,0 +1,189 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * In-memory index of the newest {@code measurement.latest-index.capacity} measurements per owner/sensor,
+ * holding the same documents a Mongo read returns. It is warmed from Mongo while the context starts (before
+ * the web server accepts requests) and then kept current from {@link MeasurementsIngestedEvent}; a ring is
+ * read from Mongo once before it is first served, and measurements ingested during that read are merged
+ * in. Writes that bypass {@link MeasurementService} (another process, a restore, retention) are not seen;
+ * with {@code measurement.latest-index.refresh-ms} set, rings older than that are read again.
+ */
+@Component
+public class LatestMeasurementsIndex {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LatestMeasurementsIndex.class);
+
+	@Autowired
+	private MeasurementStore measurementStore;
+
+	@Value("${measurement.latest-index.enabled:true}")
+	private boolean enabled;
+
+	@Value("${measurement.latest-index.capacity:50}")
+	private int capacity;
+
+	@Value("${measurement.latest-index.refresh-ms:0}")
+	private long refreshMillis;
+
+	private final ConcurrentMap<OwnerSensor, MeasurementRing> rings = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void warmUp() {
+		if (!enabled) {
+			return;
+		}
+		if (capacity < 1) {
+			throw new IllegalStateException("measurement.latest-index.capacity must be positive: " + capacity);
+		}
+		if (refreshMillis < 0) {
+			throw new IllegalStateException("measurement.latest-index.refresh-ms must not be negative: " + refreshMillis);
+		}
+		long start = System.currentTimeMillis();
+		measurementStore.getCollections().forEach(this::warmUp);
+		LOGGER.info("Warmed latest measurements index for {} owner/sensor pairs in {} ms", rings.size(), System.currentTimeMillis() - start);
+	}
+
+	private void warmUp(DBCollection collection) {
+		List<DBObject> pipeline = new ArrayList<>();
+		pipeline.add(new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject("owner", "$owner").append("sensor", "$sensor"))));
+		for (DBObject group : collection.aggregate(pipeline).results()) {
+			DBObject id = (DBObject) group.get("_id");
+			refill(new OwnerSensor((String) id.get("owner"), (String) id.get("sensor")));
+		}
+	}
+
+	/**
+	 * Drops every ring, e.g. after the database was switched underneath the application.
+	 */
+	public void clear() {
+		rings.clear();
+	}
+
+	public boolean canServe(int limit) {
+		return enabled && limit <= capacity;
+	}
+
+	/**
+	 * Newest measurements, newest first, refilling the ring from Mongo first when it may be incomplete.
+	 */
+	public List<Measurement> getNewest(String owner, String sensor, int limit) {
+		OwnerSensor key = new OwnerSensor(owner, sensor);
+		MeasurementRing ring = freshRing(key);
+		if (ring != null) {
+			return ring.newest(limit);
+		}
+		List<Measurement> loaded = refill(key);
+		return loaded.size() > limit ? loaded.subList(0, limit) : loaded;
+	}
+
+	/**
+	 * Same as {@link #getNewest}, but null instead of reading Mongo when the ring may be incomplete.
+	 */
+	public List<Measurement> getNewestIfFresh(String owner, String sensor, int limit) {
+		MeasurementRing ring = freshRing(new OwnerSensor(owner, sensor));
+		return ring == null ? null : ring.newest(limit);
+	}
+
+	/**
+	 * Same as {@link #getNewest} without materializing a Measurement per entry when the ring is fresh.
+	 */
+	public MeasurementPoints getNewestPoints(String owner, String sensor, int limit) {
+		OwnerSensor key = new OwnerSensor(owner, sensor);
+		MeasurementRing ring = freshRing(key);
+		if (ring == null) {
+			List<Measurement> loaded = refill(key);
+			return MeasurementPoints.of(loaded.size() > limit ? loaded.subList(0, limit) : loaded);
+		}
+		long[] created = new long[limit];
+		long[] values = new long[limit];
+		int count = ring.copyNewest(limit, created, values);
+		if (count == limit) {
+			return new MeasurementPoints(created, values);
+		}
+		return new MeasurementPoints(Arrays.copyOf(created, count), Arrays.copyOf(values, count));
+	}
+
+	private MeasurementRing freshRing(OwnerSensor key) {
+		MeasurementRing ring = rings.get(key);
+		return ring != null && ring.isFresh(System.currentTimeMillis(), refreshMillis) ? ring : null;
+	}
+
+	/**
+	 * Reads the newest {@code capacity} measurements of the pair and makes them the ring's contents, together
+	 * with the measurements added to it during the read. Pairs without measurements get no ring, so lookups
+	 * of unknown pairs do not fill the index.
+	 */
+	private List<Measurement> refill(OwnerSensor key) {
+		MeasurementRing ring = rings.get(key);
+		long version = ring == null ? 0 : ring.version();
+		List<Measurement> loaded = measurementStore.findNewest(key.owner, key.sensor, null, capacity);
+		if (ring == null) {
+			if (loaded.isEmpty()) {
+				return loaded;
+			}
+			ring = rings.computeIfAbsent(key, k -> new MeasurementRing(k.owner, k.sensor, capacity));
+		}
+		ring.fill(loaded, version, System.currentTimeMillis());
+		return loaded;
+	}
+
+	@EventListener
+	public void onMeasurementsIngested(MeasurementsIngestedEvent event) {
+		if (!enabled) {
+			return;
+		}
+		for (Measurement measurement : event.getMeasurements()) {
+			rings.computeIfAbsent(new OwnerSensor(measurement.getOwner(), measurement.getSensor()), key -> new MeasurementRing(key.owner, key.sensor, capacity))
+					.add(measurement);
+		}
+	}
+
+	private static final class OwnerSensor {
+
+		private final String owner;
+		private final String sensor;
+
+		private OwnerSensor(String owner, String sensor) {
+			this.owner = owner;
+			this.sensor = sensor;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof OwnerSensor)) {
+				return false;
+			}
+			OwnerSensor other = (OwnerSensor) o;
+			return Objects.equals(owner, other.owner) && Objects.equals(sensor, other.sensor);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(owner, sensor);
+		}
+
+	}
+
+}
@@ -0,0 +1,55 @@
+package io.smartcat.service;
+
+import java.util.List;
+
+import io.smartcat.domain.Measurement;
+
+public class MeasurementBatchDTO {
+
+	private String owner;
+	private String sensor;
+	private List<Measurement> measurements;
+	private long dropped;
+
+	public MeasurementBatchDTO() {
+	}
+
+	public MeasurementBatchDTO(String owner, String sensor, List<Measurement> measurements, long dropped) {
+		this.owner = owner;
+		this.sensor = sensor;
+		this.measurements = measurements;
+		this.dropped = dropped;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	public String getSensor() {
+		return sensor;
+	}
+	public void setSensor(String sensor) {
+		this.sensor = sensor;
+	}
+	/**
+	 * Measurements ingested since the previous batch, in ingest order.
+	 */
+	public List<Measurement> getMeasurements() {
+		return measurements;
+	}
+	public void setMeasurements(List<Measurement> measurements) {
+		this.measurements = measurements;
+	}
+	/**
+	 * Older measurements left out since the previous batch because the subscriber fell behind.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+	public void setDropped(long dropped) {
+		this.dropped = dropped;
+	}
+
+}
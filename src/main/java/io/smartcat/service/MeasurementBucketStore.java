@@ -0,0 +1,493 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+import io.smartcat.config.MeasurementPartitions;
+import io.smartcat.domain.Measurement;
+import io.smartcat.domain.MeasurementBucket;
+
+/**
+ * Optional storage mode ({@code measurement.buckets.enabled}) that keeps measurements packed in
+ * {@link MeasurementBucket} documents instead of one document each. Owner, sensor, id and index entries
+ * are paid once per bucket, a measurement costs a 32-bit offset and a value. Measurements read back from
+ * buckets carry owner, sensor, created, measuredValue and an id made of the bucket id and the sequence
+ * number of the entry in the bucket: its position plus the number of entries retention dropped from the
+ * front of the bucket, so ids and keyset cursors stay the same when a bucket is trimmed. Version,
+ * lastChanged and active are not stored: they read back as 0, null and false, and the TTL on lastChanged
+ * is not available.
+ * <p>
+ * Buckets start out empty. Measurement documents written before the mode was enabled are moved into
+ * buckets at startup with {@code measurement.buckets.migrate}; without it they are not read and a warning
+ * says how many there are.
+ */
+@Component
+@ConditionalOnProperty(name = "measurement.buckets.enabled", havingValue = "true")
+@DependsOn("indexProvisioner")
+public class MeasurementBucketStore implements MeasurementStore {
+
+	public static final String COLLECTION = "measurement_buckets";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MeasurementBucketStore.class);
+
+	private static final int MIGRATION_BATCH_SIZE = 10_000;
+
+	private static final DBObject BUCKET_FIELDS = new BasicDBObject("owner", 1).append("sensor", 1)
+			.append("start", 1).append("first", 1).append("offsets", 1).append("values", 1);
+
+	private static final Comparator<Measurement> NEWEST_FIRST = Comparator.comparingLong(Measurement::getCreated)
+			.thenComparing(Measurement::getId).reversed();
+
+	@Autowired
+	private MongoOperations mongoOps;
+
+	@Autowired
+	private MeasurementPartitions partitions;
+
+	@Value("${measurement.buckets.window-ms:3600000}")
+	private long window;
+
+	@Value("${measurement.buckets.max-count:1000}")
+	private int maxCount;
+
+	@Value("${measurement.buckets.migrate:false}")
+	private boolean migrate;
+
+	@Value("${measurement.buckets.read-threads:4}")
+	private int readThreads;
+
+	@Value("${measurement.buckets.read-queue-capacity:64}")
+	private int readQueueCapacity;
+
+	// retention only removes whole buckets, so they may not straddle its intervals
+	@Value("${measurement.retention.interval-ms:3600000}")
+	private long retentionInterval;
+
+	private ThreadPoolExecutor readExecutor;
+
+	@PostConstruct
+	public void init() {
+		if (window < 1 || window > Integer.MAX_VALUE) {
+			throw new IllegalStateException("measurement.buckets.window-ms must fit a 32-bit offset: " + window);
+		}
+		if (maxCount < 1) {
+			throw new IllegalStateException("measurement.buckets.max-count must be positive: " + maxCount);
+		}
+		if (partitions.isPartitioned()) {
+			throw new IllegalStateException("measurement.buckets.enabled does not support mongo.partitions.hosts");
+		}
+		if (retentionInterval % window != 0) {
+			throw new IllegalStateException("measurement.retention.interval-ms must be a multiple of measurement.buckets.window-ms");
+		}
+		if (readThreads < 1 || readQueueCapacity < 1) {
+			throw new IllegalStateException("measurement.buckets.read-threads and read-queue-capacity must be positive");
+		}
+		AtomicInteger threadIndex = new AtomicInteger();
+		readExecutor = new ThreadPoolExecutor(readThreads, readThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(readQueueCapacity),
+				runnable -> {
+					Thread thread = new Thread(runnable, "bucket-read-" + threadIndex.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		long documents = mongoOps.getCollection(DocumentMeasurementStore.COLLECTION).count();
+		if (documents == 0) {
+			return;
+		}
+		if (migrate) {
+			migrateDocuments();
+		} else {
+			LOGGER.warn("{} measurements are stored as documents, which bucket storage does not read; "
+					+ "set measurement.buckets.migrate=true to move them into buckets", documents);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		readExecutor.shutdownNow();
+	}
+
+	/**
+	 * Moves the measurement documents into buckets, batch by batch, and returns how many were moved. Each
+	 * batch is removed once its buckets are written, so an interrupted migration continues where it
+	 * stopped; only the batch in flight at that point can end up in buckets twice. Rollups are left as
+	 * they are, the measurements do not change.
+	 */
+	public long migrateDocuments() {
+		long start = System.currentTimeMillis();
+		DBCollection documents = mongoOps.getCollection(DocumentMeasurementStore.COLLECTION);
+		List<Measurement> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+		List<Object> ids = new ArrayList<>(MIGRATION_BATCH_SIZE);
+		long migrated = 0;
+		try (DBCursor cursor = documents.find().sort(new BasicDBObject("_id", 1)).batchSize(MIGRATION_BATCH_SIZE)) {
+			while (cursor.hasNext()) {
+				DBObject document = cursor.next();
+				ids.add(document.get("_id"));
+				batch.add(mongoOps.getConverter().read(Measurement.class, document));
+				if (batch.size() == MIGRATION_BATCH_SIZE || !cursor.hasNext()) {
+					insert(batch, null);
+					documents.remove(new BasicDBObject("_id", new BasicDBObject("$in", ids)));
+					migrated += batch.size();
+					batch.clear();
+					ids.clear();
+				}
+			}
+		}
+		LOGGER.info("Migrated {} measurement documents into buckets in {} ms", migrated, System.currentTimeMillis() - start);
+		return migrated;
+	}
+
+	private long floorToWindow(long created) {
+		return Math.floorDiv(created, window) * window;
+	}
+
+	/**
+	 * Appends the measurements to the open bucket of their owner, sensor and window, one bulk of upserts
+	 * per call. A bucket is open while its count is below {@code max-count}; when none is, the upsert
+	 * starts a new one. Each upsert adds at most {@code max-count} measurements, so a bucket can end up
+	 * holding up to twice that many.
+	 */
+	@Override
+	public void insert(List<Measurement> measurements, WriteConcern writeConcern) {
+		Map<WindowKey, List<Measurement>> windows = new LinkedHashMap<>();
+		for (Measurement measurement : measurements) {
+			windows.computeIfAbsent(new WindowKey(measurement.getOwner(), measurement.getSensor(), floorToWindow(measurement.getCreated())),
+					key -> new ArrayList<>()).add(measurement);
+		}
+		List<Pair<Query, Update>> upserts = new ArrayList<>();
+		windows.forEach((key, inWindow) -> {
+			for (int from = 0; from < inWindow.size(); from += maxCount) {
+				List<Measurement> chunk = inWindow.subList(from, Math.min(from + maxCount, inWindow.size()));
+				Object[] offsets = new Object[chunk.size()];
+				Object[] values = new Object[chunk.size()];
+				for (int i = 0; i < chunk.size(); i++) {
+					offsets[i] = (int) (chunk.get(i).getCreated() - key.start);
+					values[i] = chunk.get(i).getMeasuredValue();
+				}
+				Update update = new Update().inc("count", chunk.size());
+				update.push("offsets").each(offsets);
+				update.push("values").each(values);
+				upserts.add(Pair.of(Query.query(Criteria.where("owner").is(key.owner).and("sensor").is(key.sensor)
+						.and("start").is(key.start).and("count").lt(maxCount)), update));
+			}
+		});
+		if (upserts.isEmpty()) {
+			return;
+		}
+		if (writeConcern == null) {
+			mongoOps.bulkOps(BulkMode.UNORDERED, MeasurementBucket.class).upsert(upserts).execute();
+			return;
+		}
+		mongoOps.execute(MeasurementBucket.class, collection -> {
+			BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+			upserts.forEach(upsert -> bulk.find(upsert.getFirst().getQueryObject()).upsert().updateOne(upsert.getSecond().getUpdateObject()));
+			return bulk.execute(writeConcern);
+		});
+	}
+
+	@Override
+	public void bulkInsert(List<Measurement> measurements) {
+		insert(measurements, null);
+	}
+
+	/**
+	 * Buckets are read newest window first and reading stops at the first window boundary after
+	 * {@code limit} measurements were collected.
+	 */
+	@Override
+	public List<Measurement> findNewest(String owner, String sensor, PageCursor after, int limit) {
+		BasicDBObject query = new BasicDBObject("owner", owner);
+		if (sensor != null) {
+			query.append("sensor", sensor);
+		}
+		if (after != null) {
+			query.append("start", new BasicDBObject("$lte", after.getCreated()));
+		}
+		List<Measurement> result = new ArrayList<>();
+		mongoOps.execute(MeasurementBucket.class, collection -> {
+			try (DBCursor cursor = collection.find(query, BUCKET_FIELDS).sort(new BasicDBObject("start", -1))) {
+				Long currentStart = null;
+				for (DBObject bucket : cursor) {
+					long start = ((Number) bucket.get("start")).longValue();
+					if (currentStart != null && start != currentStart && result.size() >= limit) {
+						break;
+					}
+					currentStart = start;
+					unpack(bucket, measurement -> {
+						if (after == null || isAfter(measurement, after)) {
+							result.add(measurement);
+						}
+					});
+				}
+			}
+			return null;
+		});
+		result.sort(NEWEST_FIRST);
+		return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+	}
+
+	/**
+	 * The driver has no async path for bucket reads, so they run on a pool of
+	 * {@code measurement.buckets.read-threads}; when it and its queue are full the caller runs the read.
+	 */
+	@Override
+	public CompletableFuture<List<Measurement>> findNewestAsync(String owner, String sensor, PageCursor after, int limit) {
+		return CompletableFuture.supplyAsync(() -> findNewest(owner, sensor, after, limit), readExecutor);
+	}
+
+	@Override
+	public MeasurementPoints findNewestPoints(String owner, String sensor, int limit) {
+		return MeasurementPoints.of(findNewest(owner, sensor, null, limit));
+	}
+
+	@Override
+	public MeasurementPoints findPoints(String owner, String sensor) {
+		List<Measurement> measurements = new ArrayList<>();
+		stream(owner, sensor, measurements::add);
+		return MeasurementPoints.of(measurements);
+	}
+
+	/**
+	 * One window is held in memory at a time.
+	 */
+	@Override
+	public void stream(String owner, String sensor, Consumer<Measurement> consumer) {
+		mongoOps.execute(MeasurementBucket.class, collection -> {
+			try (DBCursor cursor = collection.find(new BasicDBObject("owner", owner).append("sensor", sensor), BUCKET_FIELDS)
+					.sort(new BasicDBObject("start", 1))) {
+				List<Measurement> inWindow = new ArrayList<>();
+				Long currentStart = null;
+				for (DBObject bucket : cursor) {
+					long start = ((Number) bucket.get("start")).longValue();
+					if (currentStart != null && start != currentStart) {
+						emitOldestFirst(inWindow, consumer);
+					}
+					currentStart = start;
+					unpack(bucket, inWindow::add);
+				}
+				emitOldestFirst(inWindow, consumer);
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public String getCollection() {
+		return COLLECTION;
+	}
+
+	// buckets are not partitioned, they are on the primary
+	@Override
+	public int getPartitionCount() {
+		return 1;
+	}
+
+	@Override
+	public List<DBCollection> getCollections() {
+		return Collections.singletonList(mongoOps.getCollection(COLLECTION));
+	}
+
+	/**
+	 * Matches the buckets that can hold measurements of the range, unpacks them and matches the
+	 * measurements again, as a bucket's window need not be inside the range.
+	 */
+	@Override
+	public List<DBObject> rangeStages(Collection<String> sensors, long from, long to) {
+		List<DBObject> stages = new ArrayList<>();
+		BasicDBObject match = new BasicDBObject();
+		if (sensors != null) {
+			match.append("sensor", sensors.size() == 1 ? sensors.iterator().next() : new BasicDBObject("$in", sensors));
+		}
+		BasicDBObject start = new BasicDBObject();
+		if (from != Long.MIN_VALUE) {
+			// a bucket can hold measurements up to start + window, so the window before from may overlap
+			start.append("$gt", from - window);
+		}
+		if (to != Long.MAX_VALUE) {
+			start.append("$lt", to);
+		}
+		if (!start.isEmpty()) {
+			match.append("start", start);
+		}
+		if (!match.isEmpty()) {
+			stages.add(new BasicDBObject("$match", match));
+		}
+		BasicDBList created = new BasicDBList();
+		created.add("$start");
+		created.add("$offsets");
+		BasicDBList value = new BasicDBList();
+		value.add("$values");
+		value.add("$i");
+		stages.add(new BasicDBObject("$unwind", new BasicDBObject("path", "$offsets").append("includeArrayIndex", "i")));
+		stages.add(new BasicDBObject("$project", new BasicDBObject("owner", 1)
+				.append("sensor", 1)
+				.append("created", new BasicDBObject("$add", created))
+				.append("measuredValue", new BasicDBObject("$arrayElemAt", value))));
+		BasicDBObject range = DocumentMeasurementStore.createdRange(from, to);
+		if (!range.isEmpty()) {
+			stages.add(new BasicDBObject("$match", new BasicDBObject("created", range)));
+		}
+		return stages;
+	}
+
+	/**
+	 * A bucket holds measurements created up to its start plus the window, so it goes as a whole once that
+	 * is not after {@code created}.
+	 */
+	@Override
+	public DBObject createdBeforeQuery(long created) {
+		return new BasicDBObject("start", new BasicDBObject("$lte", created - window));
+	}
+
+	/**
+	 * A bucket goes when the aggregation saw as many measurements as it holds now and its window ends
+	 * before {@code before}. Buckets are append only, so one that took more measurements since keeps just
+	 * those: the seen ones are the first entries of its arrays.
+	 */
+	@Override
+	public long removeSeen(DBCollection collection, Map<Object, Integer> seen, long before) {
+		Map<Integer, List<Object>> byCount = new HashMap<>();
+		seen.forEach((id, count) -> byCount.computeIfAbsent(count, c -> new ArrayList<>()).add(id));
+		long removed = 0;
+		for (Map.Entry<Integer, List<Object>> sameCount : byCount.entrySet()) {
+			BasicDBObject query = new BasicDBObject("_id", new BasicDBObject("$in", sameCount.getValue()))
+					.append("count", sameCount.getKey());
+			query.putAll(createdBeforeQuery(before));
+			removed += collection.remove(query).getN();
+		}
+		if (removed < seen.size()) {
+			BasicDBObject grown = new BasicDBObject("_id", new BasicDBObject("$in", seen.keySet()));
+			grown.putAll(createdBeforeQuery(before));
+			try (DBCursor cursor = collection.find(grown, new BasicDBObject("count", 1))) {
+				for (DBObject bucket : cursor) {
+					dropFirst(collection, bucket.get("_id"), seen.get(bucket.get("_id")));
+				}
+			}
+		}
+		return removed;
+	}
+
+	// keeps the entries after the first seen ones; the count guards against appends between read and update
+	private static void dropFirst(DBCollection collection, Object id, int seen) {
+		while (true) {
+			DBObject bucket = collection.findOne(new BasicDBObject("_id", id), new BasicDBObject("count", 1));
+			if (bucket == null) {
+				return;
+			}
+			int count = ((Number) bucket.get("count")).intValue();
+			int kept = count - seen;
+			if (kept <= 0) {
+				return;
+			}
+			BasicDBObject keepLast = new BasicDBObject("$each", Collections.emptyList()).append("$slice", -kept);
+			DBObject update = new BasicDBObject("$push", new BasicDBObject("offsets", keepLast).append("values", keepLast))
+					.append("$set", new BasicDBObject("count", kept))
+					.append("$inc", new BasicDBObject("first", seen));
+			if (collection.update(new BasicDBObject("_id", id).append("count", count), update).getN() == 1) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void ensureTtlIndex(int expireAfterSeconds) {
+		throw new IllegalStateException("measurement.retention.ttl needs document storage, buckets have no lastChanged");
+	}
+
+	private static void unpack(DBObject bucket, Consumer<Measurement> consumer) {
+		String id = bucket.get("_id").toString();
+		String owner = (String) bucket.get("owner");
+		String sensor = (String) bucket.get("sensor");
+		long start = ((Number) bucket.get("start")).longValue();
+		// absent until retention first trims the bucket
+		long first = bucket.get("first") == null ? 0 : ((Number) bucket.get("first")).longValue();
+		List<?> offsets = (List<?>) bucket.get("offsets");
+		List<?> values = (List<?>) bucket.get("values");
+		for (int i = 0; i < offsets.size(); i++) {
+			Measurement measurement = new Measurement();
+			measurement.setId(String.format("%s:%010d", id, first + i));
+			measurement.setOwner(owner);
+			measurement.setSensor(sensor);
+			measurement.setCreated(start + ((Number) offsets.get(i)).longValue());
+			measurement.setMeasuredValue(((Number) values.get(i)).longValue());
+			consumer.accept(measurement);
+		}
+	}
+
+	private static boolean isAfter(Measurement measurement, PageCursor cursor) {
+		return measurement.getCreated() < cursor.getCreated()
+				|| measurement.getCreated() == cursor.getCreated() && measurement.getId().compareTo(cursor.getId()) < 0;
+	}
+
+	private static void emitOldestFirst(List<Measurement> measurements, Consumer<Measurement> consumer) {
+		measurements.sort(Comparator.comparingLong(Measurement::getCreated).thenComparing(Measurement::getId));
+		measurements.forEach(consumer);
+		measurements.clear();
+	}
+
+	private static final class WindowKey {
+
+		private final String owner;
+		private final String sensor;
+		private final long start;
+
+		private WindowKey(String owner, String sensor, long start) {
+			this.owner = owner;
+			this.sensor = sensor;
+			this.start = start;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof WindowKey)) {
+				return false;
+			}
+			WindowKey other = (WindowKey) o;
+			return start == other.start && Objects.equals(owner, other.owner) && Objects.equals(sensor, other.sensor);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(owner, sensor, start);
+		}
+
+	}
+
+}
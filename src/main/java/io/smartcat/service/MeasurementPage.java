@@ -0,0 +1,33 @@
+package io.smartcat.service;
+
+import java.util.List;
+
+import io.smartcat.domain.Measurement;
+
+public class MeasurementPage {
+	
+	private List<Measurement> measurements;
+	private String nextCursor;
+	
+	public MeasurementPage(List<Measurement> measurements, String nextCursor) {
+		this.measurements = measurements;
+		this.nextCursor = nextCursor;
+	}
+	
+	public List<Measurement> getMeasurements() {
+		return measurements;
+	}
+	public void setMeasurements(List<Measurement> measurements) {
+		this.measurements = measurements;
+	}
+	/**
+	 * Token for the following page, or {@code null} when this is the last one.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+}
@@ -0,0 +1,48 @@
+package io.smartcat.service;
+
+import java.util.List;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * Compact read model of one owner/sensor series: parallel arrays of created timestamps and measured
+ * values, in the order they were read. Costs two long arrays instead of one object (plus id and
+ * strings) per measurement.
+ */
+public class MeasurementPoints {
+	
+	private final long[] created;
+	private final long[] measuredValues;
+	
+	public MeasurementPoints(long[] created, long[] measuredValues) {
+		if (created.length != measuredValues.length) {
+			throw new IllegalArgumentException("created and measuredValues differ in length");
+		}
+		this.created = created;
+		this.measuredValues = measuredValues;
+	}
+	
+	/**
+	 * Points of the measurements, in list order.
+	 */
+	public static MeasurementPoints of(List<Measurement> measurements) {
+		long[] created = new long[measurements.size()];
+		long[] values = new long[measurements.size()];
+		for (int i = 0; i < created.length; i++) {
+			created[i] = measurements.get(i).getCreated();
+			values[i] = measurements.get(i).getMeasuredValue();
+		}
+		return new MeasurementPoints(created, values);
+	}
+	
+	public long[] getCreated() {
+		return created;
+	}
+	public long[] getMeasuredValues() {
+		return measuredValues;
+	}
+	public int size() {
+		return created.length;
+	}
+
+}
@@ -0,0 +1,194 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * Fixed-capacity buffer of the newest measurements of one owner/sensor, ordered by {@code created}.
+ * In-order appends overwrite the oldest slot in O(1); late arrivals are inserted at their position
+ * (O(capacity)) or ignored when older than everything retained. Entries are kept in primitive columns, one
+ * array per field, so adding a measurement allocates nothing; owner and sensor are the ring's own. The ring
+ * remembers when it was last filled from Mongo; until then it only holds what was added since it was
+ * created.
+ */
+class MeasurementRing {
+
+	// lastChanged of measurements that have none
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private final String owner;
+	private final String sensor;
+	private final long[] created;
+	private final long[] values;
+	private final String[] ids;
+	private final short[] documentVersions;
+	private final long[] lastChanged;
+	private final boolean[] active;
+	// version at which each entry was added, 0 for entries filled from Mongo
+	private final long[] addedAt;
+	private int oldest;
+	private int size;
+	// number of adds, so a fill can tell which entries arrived while it was reading
+	private long version;
+	private long filledAt;
+
+	MeasurementRing(String owner, String sensor, int capacity) {
+		this.owner = owner;
+		this.sensor = sensor;
+		this.created = new long[capacity];
+		this.values = new long[capacity];
+		this.ids = new String[capacity];
+		this.documentVersions = new short[capacity];
+		this.lastChanged = new long[capacity];
+		this.active = new boolean[capacity];
+		this.addedAt = new long[capacity];
+	}
+
+	synchronized void add(Measurement measurement) {
+		version++;
+		insert(measurement, version);
+	}
+
+	private void insert(Measurement measurement, long added) {
+		int capacity = created.length;
+		long createdAt = measurement.getCreated();
+		if (size == capacity && createdAt < created[oldest]) {
+			return;
+		}
+		int position = size;
+		while (position > 0 && created[slot(position - 1)] > createdAt) {
+			position--;
+		}
+		// the same document read from Mongo and added by ingest is kept once
+		for (int i = position - 1; i >= 0 && created[slot(i)] == createdAt; i--) {
+			if (measurement.getId() != null && measurement.getId().equals(ids[slot(i)])) {
+				return;
+			}
+		}
+		if (size == capacity) {
+			if (position == capacity) {
+				// plain append: the oldest slot becomes the newest one
+				set(oldest, measurement, added);
+				oldest = (oldest + 1) % capacity;
+				return;
+			}
+			// drop the oldest element by shifting everything before the insert position one slot back
+			for (int i = 0; i < position - 1; i++) {
+				move(slot(i + 1), slot(i));
+			}
+			position--;
+		} else {
+			for (int i = size; i > position; i--) {
+				move(slot(i - 1), slot(i));
+			}
+			size++;
+		}
+		set(slot(position), measurement, added);
+	}
+
+	private void set(int slot, Measurement measurement, long added) {
+		created[slot] = measurement.getCreated();
+		values[slot] = measurement.getMeasuredValue();
+		ids[slot] = measurement.getId();
+		documentVersions[slot] = measurement.getVersion();
+		lastChanged[slot] = measurement.getLastChanged() == null ? NO_DATE : measurement.getLastChanged().getTime();
+		active[slot] = measurement.isActive();
+		addedAt[slot] = added;
+	}
+
+	private void move(int from, int to) {
+		created[to] = created[from];
+		values[to] = values[from];
+		ids[to] = ids[from];
+		documentVersions[to] = documentVersions[from];
+		lastChanged[to] = lastChanged[from];
+		active[to] = active[from];
+		addedAt[to] = addedAt[from];
+	}
+
+	synchronized long version() {
+		return version;
+	}
+
+	/**
+	 * Replaces the contents with {@code newestFirst}, read from Mongo, merged with whatever was added since
+	 * {@code expectedVersion}, i.e. while the caller was reading; the read may or may not include those
+	 * measurements, they are kept once either way.
+	 */
+	synchronized void fill(List<Measurement> newestFirst, long expectedVersion, long now) {
+		List<Measurement> addedDuringRead = new ArrayList<>();
+		List<Long> addedVersions = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			if (addedAt[slot(i)] > expectedVersion) {
+				addedDuringRead.add(measurement(slot(i)));
+				addedVersions.add(addedAt[slot(i)]);
+			}
+		}
+		oldest = 0;
+		size = 0;
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = null;
+		}
+		for (int i = Math.min(newestFirst.size(), created.length) - 1; i >= 0; i--) {
+			insert(newestFirst.get(i), 0);
+		}
+		for (int i = 0; i < addedDuringRead.size(); i++) {
+			insert(addedDuringRead.get(i), addedVersions.get(i));
+		}
+		filledAt = now;
+	}
+
+	/**
+	 * Whether the ring was filled from Mongo, less than {@code maxAgeMillis} ago unless that is 0.
+	 */
+	synchronized boolean isFresh(long now, long maxAgeMillis) {
+		return filledAt > 0 && (maxAgeMillis == 0 || now - filledAt < maxAgeMillis);
+	}
+
+	/**
+	 * The newest {@code limit} measurements, newest first, as new documents.
+	 */
+	synchronized List<Measurement> newest(int limit) {
+		int count = Math.min(limit, size);
+		List<Measurement> newest = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			newest.add(measurement(slot(size - 1 - i)));
+		}
+		return newest;
+	}
+
+	private Measurement measurement(int slot) {
+		Measurement measurement = new Measurement();
+		measurement.setId(ids[slot]);
+		measurement.setOwner(owner);
+		measurement.setSensor(sensor);
+		measurement.setCreated(created[slot]);
+		measurement.setMeasuredValue(values[slot]);
+		measurement.setVersion(documentVersions[slot]);
+		measurement.setLastChanged(lastChanged[slot] == NO_DATE ? null : new Date(lastChanged[slot]));
+		measurement.setActive(active[slot]);
+		return measurement;
+	}
+
+	/**
+	 * Copies created and measuredValue of the newest {@code limit} entries, newest first, into the given
+	 * arrays and returns how many were copied.
+	 */
+	synchronized int copyNewest(int limit, long[] createdOut, long[] valuesOut) {
+		int count = Math.min(limit, size);
+		for (int i = 0; i < count; i++) {
+			int slot = slot(size - 1 - i);
+			createdOut[i] = created[slot];
+			valuesOut[i] = values[slot];
+		}
+		return count;
+	}
+
+	private int slot(int position) {
+		return (oldest + position) % created.length;
+	}
+
+}
@@ -1,37 +1,178 @@
 package io.smartcat.service;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.WriteConcern;
+
 import io.smartcat.domain.Measurement;
-import io.smartcat.repository.MeasurementRepository;
 
 @Service
 public class MeasurementService {
 	
 	@Autowired
-	private MeasurementRepository measurementRepository;
-
+	private ApplicationEventPublisher eventPublisher;
+	
+	@Autowired
+	private NewestMeasurementsCache newestMeasurementsCache;
+	
+	@Autowired
+	private LatestMeasurementsIndex latestMeasurementsIndex;
+	
+	@Autowired
+	private MeasurementStore measurementStore;
+	
+	@Autowired
+	private RetentionService retentionService;
+	
+	@Autowired
+	private RollupService rollupService;
+	
+	/**
+	 * Inserts the batch into the {@link MeasurementStore} and publishes it as {@link MeasurementsIngestedEvent};
+	 * this is the write path that keeps rollups and other derived state in sync.
+	 */
+	public void saveAll(List<Measurement> measurements) {
+		saveAll(measurements, null);
+	}
+	
+	/**
+	 * Same as {@link #saveAll(List)}, acknowledged with {@code writeConcern} instead of
+	 * {@code mongo.bulk-write-concern} unless it is null.
+	 */
+	public void saveAll(List<Measurement> measurements, WriteConcern writeConcern) {
+		write(measurements, batch -> measurementStore.insert(batch, writeConcern));
+	}
+	
+	/**
+	 * Bulk load variant of {@link #saveAll(List)} for generated chunks, see {@link MeasurementStore#bulkInsert}.
+	 */
+	public void bulkInsert(List<Measurement> measurements) {
+		write(measurements, measurementStore::bulkInsert);
+	}
+	
+	private void write(List<Measurement> measurements, Consumer<List<Measurement>> insert) {
+		if (measurements.isEmpty()) {
+			return;
+		}
+		if (retentionService.isTtlEnabled()) {
+			Date now = new Date();
+			measurements.stream().filter(measurement -> measurement.getLastChanged() == null).forEach(measurement -> measurement.setLastChanged(now));
+		}
+		rollupService.ingest(() -> {
+			insert.accept(measurements);
+			eventPublisher.publishEvent(new MeasurementsIngestedEvent(this, measurements));
+		});
+	}
+	
 	public List<Measurement> getNewestMeasurementsForUser(String username, int limit) {
-		PageRequest request = new PageRequest(0, limit, new Sort(Sort.Direction.DESC, "created"));
 //		db.measurements.find( { owner : "username" }).sort( { created : -1 }).limit(50);
 //		select * from measurements where owner = 'username' sort by created desc limit 50;
-		return measurementRepository.findByOwner(username, request);
+		return newestMeasurementsCache.get(username, null, limit, () -> measurementStore.findNewest(username, null, null, limit));
 	}
 	
 	public List<Measurement> getNewestMeasurementsForUserAndSensor(String username, String sensor, int limit) {
-		PageRequest request = new PageRequest(0, limit, new Sort(Sort.Direction.DESC, "created"));
+		if (latestMeasurementsIndex.canServe(limit)) {
+			return latestMeasurementsIndex.getNewest(username, sensor, limit);
+		}
 //		db.measurements.find( { owner : "username", sensor : "sensor" }).sort( { created : -1 }).limit(50);
 //		select * from measurements where owner = 'username' and sensor = 'sensor' sort by created desc limit 50;
-		return measurementRepository.findByOwnerAndSensor(username, sensor, request);
+		return newestMeasurementsCache.get(username, sensor, limit, () -> measurementStore.findNewest(username, sensor, null, limit));
+	}
+	
+	/**
+	 * Non-blocking variant of {@link #getNewestMeasurementsForUser}, see {@link MeasurementStore#findNewestAsync}
+	 * for where the query runs. Cache hits complete immediately.
+	 */
+	public CompletableFuture<List<Measurement>> getNewestMeasurementsForUserAsync(String username, int limit) {
+		return newestMeasurementsCache.getAsync(username, null, limit, () -> measurementStore.findNewestAsync(username, null, null, limit));
+	}
+	
+	/**
+	 * Non-blocking variant of {@link #getNewestMeasurementsForUserAndSensor}, see {@link #getNewestMeasurementsForUserAsync}.
+	 */
+	public CompletableFuture<List<Measurement>> getNewestMeasurementsForUserAndSensorAsync(String username, String sensor, int limit) {
+		if (latestMeasurementsIndex.canServe(limit)) {
+			// refilling a ring would block the caller, the async read below does not
+			List<Measurement> newest = latestMeasurementsIndex.getNewestIfFresh(username, sensor, limit);
+			if (newest != null) {
+				return CompletableFuture.completedFuture(newest);
+			}
+		}
+		return newestMeasurementsCache.getAsync(username, sensor, limit, () -> measurementStore.findNewestAsync(username, sensor, null, limit));
+	}
+	
+	/**
+	 * Projected variant of {@link #getNewestMeasurementsForUserAndSensor}, newest first. Only created and
+	 * measuredValue are read.
+	 */
+	public MeasurementPoints getNewestPointsForUserAndSensor(String owner, String sensor, int limit) {
+		if (latestMeasurementsIndex.canServe(limit)) {
+			return latestMeasurementsIndex.getNewestPoints(owner, sensor, limit);
+		}
+		return measurementStore.findNewestPoints(owner, sensor, limit);
+	}
+	
+	/**
+	 * Projected variant of {@link #getMeasurementsByUserAndSensor}, oldest first.
+	 */
+	public MeasurementPoints getPointsByUserAndSensor(String owner, String sensor) {
+		return measurementStore.findPoints(owner, sensor);
+	}
+	
+	/**
+	 * Keyset pagination over an owner's history, newest first, optionally narrowed to one sensor. Passing
+	 * the {@code nextCursor} of the previous page continues right after its last measurement with an index
+	 * range on (created, _id) instead of skipping rows, so every page costs the same as the first.
+	 */
+	public MeasurementPage getMeasurementHistory(String owner, String sensor, String cursor, int limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit must be positive, was " + limit);
+		}
+		return toPage(measurementStore.findNewest(owner, sensor, cursor == null ? null : PageCursor.decode(cursor), limit + 1), limit);
+	}
+	
+	/**
+	 * Non-blocking variant of {@link #getMeasurementHistory}, see {@link MeasurementStore#findNewestAsync}.
+	 */
+	public CompletableFuture<MeasurementPage> getMeasurementHistoryAsync(String owner, String sensor, String cursor, int limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit must be positive, was " + limit);
+		}
+		return measurementStore.findNewestAsync(owner, sensor, cursor == null ? null : PageCursor.decode(cursor), limit + 1)
+				.thenApply(measurements -> toPage(measurements, limit));
+	}
+	
+	// one more than limit was read, to tell whether there is a next page
+	private static MeasurementPage toPage(List<Measurement> measurements, int limit) {
+		if (measurements.size() <= limit) {
+			return new MeasurementPage(measurements, null);
+		}
+		measurements = measurements.subList(0, limit);
+		Measurement last = measurements.get(limit - 1);
+		return new MeasurementPage(measurements, new PageCursor(last.getCreated(), last.getId()).encode());
 	}
 	
 	public List<Measurement> getMeasurementsByUserAndSensor(String owner, String sensor) {
 //		db.measurements.find({owner : "owner", sensor : "heart-rate-monitor"}, {_id : 0, _class : 0})
-		return measurementRepository.findByOwnerAndSensor(owner, sensor);
+		List<Measurement> measurements = new ArrayList<>();
+		measurementStore.stream(owner, sensor, measurements::add);
+		return measurements;
+	}
+	
+	/**
+	 * Streaming variant of {@link #getMeasurementsByUserAndSensor}: measurements are read oldest first and
+	 * handed to the consumer one by one, so only one batch is in memory regardless of how many measurements
+	 * the owner has.
+	 */
+	public void streamMeasurementsByUserAndSensor(String owner, String sensor, Consumer<Measurement> consumer) {
+		measurementStore.stream(owner, sensor, consumer);
 	}
 }
@@ -0,0 +1,26 @@
+package io.smartcat.service;
+
+import java.io.IOException;
+
+/**
+ * Receiving end of a {@link MeasurementSubscriptionHub} subscription, e.g. a server-sent events stream.
+ */
+public interface MeasurementSink {
+
+	/**
+	 * Delivers one micro-batch; called by one hub thread at a time. Throwing ends the subscription.
+	 */
+	void send(MeasurementBatchDTO batch) throws IOException;
+
+	/**
+	 * Sent instead of a batch when there was nothing to deliver for a while; throwing ends the
+	 * subscription.
+	 */
+	void heartbeat() throws IOException;
+
+	/**
+	 * Called when the hub ends the subscription (failed send, shutdown), not when it is cancelled.
+	 */
+	void close();
+
+}
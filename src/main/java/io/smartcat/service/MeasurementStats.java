@@ -0,0 +1,79 @@
+package io.smartcat.service;
+
+import com.tdunning.math.stats.MergingDigest;
+import com.tdunning.math.stats.TDigest;
+
+/**
+ * Single-pass statistics of measured values: exact count, mean, min, max and population standard
+ * deviation (Welford's update, so no sum of squares overflows), and approximate quantiles from a
+ * t-digest. Instances over disjoint data can be merged.
+ */
+public class MeasurementStats {
+
+	// t-digest accuracy; 100 keeps p99 within a fraction of a percent of the rank at a few KB per instance
+	private static final double COMPRESSION = 100;
+
+	private long count;
+	private double mean;
+	private double squaredDistances;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+	private final TDigest digest = new MergingDigest(COMPRESSION);
+
+	public void add(long value) {
+		add(value, 1);
+	}
+
+	/**
+	 * Adds {@code weight} occurrences of {@code value} at once, e.g. one row of a {@code $group} by value.
+	 */
+	public void add(long value, long weight) {
+		if (weight <= 0) {
+			throw new IllegalArgumentException("weight must be positive, was " + weight);
+		}
+		count += weight;
+		double delta = value - mean;
+		mean += delta * weight / count;
+		squaredDistances += delta * (value - mean) * weight;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		// the digest takes int weights
+		for (long left = weight; left > 0; left -= Integer.MAX_VALUE) {
+			digest.add(value, (int) Math.min(left, Integer.MAX_VALUE));
+		}
+	}
+
+	public void merge(MeasurementStats other) {
+		if (other.count == 0) {
+			return;
+		}
+		long total = count + other.count;
+		double delta = other.mean - mean;
+		squaredDistances += other.squaredDistances + delta * delta * count * other.count / total;
+		mean += delta * other.count / total;
+		count = total;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		digest.add(other.digest);
+	}
+
+	public long getCount() {
+		return count;
+	}
+	public double getMean() {
+		return mean;
+	}
+	public long getMin() {
+		return min;
+	}
+	public long getMax() {
+		return max;
+	}
+	public double getStdDev() {
+		return count == 0 ? 0 : Math.sqrt(squaredDistances / count);
+	}
+	public double quantile(double q) {
+		return count == 0 ? 0 : digest.quantile(q);
+	}
+
+}
@@ -0,0 +1,104 @@
+package io.smartcat.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * Where the raw measurements are kept: one document each ({@link DocumentMeasurementStore}, the default)
+ * or packed per owner, sensor and time window ({@link MeasurementBucketStore}, with
+ * {@code measurement.buckets.enabled}). Exactly one of them is a bean. Everything derived from raw
+ * measurements (rollups, downsamples, reports, the latest measurements index) reads them through this
+ * interface, so it works the same in both modes.
+ */
+public interface MeasurementStore {
+
+	/**
+	 * Writes the measurements, acknowledged with {@code writeConcern} instead of
+	 * {@code mongo.bulk-write-concern} unless it is null.
+	 */
+	void insert(List<Measurement> measurements, WriteConcern writeConcern);
+
+	/**
+	 * Bulk load variant of {@link #insert} for generated chunks.
+	 */
+	void bulkInsert(List<Measurement> measurements);
+
+	/**
+	 * Up to {@code limit} measurements of an owner (and sensor, unless null), newest first by (created, id),
+	 * strictly after {@code after} in that order when it is given.
+	 */
+	List<Measurement> findNewest(String owner, String sensor, PageCursor after, int limit);
+
+	/**
+	 * Non-blocking variant of {@link #findNewest}: the calling thread is released while the read runs.
+	 */
+	CompletableFuture<List<Measurement>> findNewestAsync(String owner, String sensor, PageCursor after, int limit);
+
+	/**
+	 * Created and measuredValue of the newest {@code limit} measurements of an owner's sensor, newest first.
+	 */
+	MeasurementPoints findNewestPoints(String owner, String sensor, int limit);
+
+	/**
+	 * Created and measuredValue of all measurements of an owner's sensor, oldest first.
+	 */
+	MeasurementPoints findPoints(String owner, String sensor);
+
+	/**
+	 * All measurements of an owner's sensor, oldest first, without holding them all in memory.
+	 */
+	void stream(String owner, String sensor, Consumer<Measurement> consumer);
+
+	/**
+	 * Name of the collection holding the raw data, the same on every partition it is spread over.
+	 */
+	String getCollection();
+
+	/**
+	 * Raw data lives on measurement partitions 0 to this count - 1.
+	 */
+	int getPartitionCount();
+
+	/**
+	 * The raw data collection of each partition it is spread over, in partition order.
+	 */
+	List<DBCollection> getCollections();
+
+	/**
+	 * Aggregation stages that, run on {@link #getCollection()}, yield one document per measurement of
+	 * {@code sensors} (every sensor when null) created in [{@code from}, {@code to}), shaped like a
+	 * measurement document: owner, sensor, created and measuredValue, plus the {@code _id} of the raw
+	 * document holding it. {@link Long#MIN_VALUE} and {@link Long#MAX_VALUE} leave the range open on that
+	 * side.
+	 */
+	List<DBObject> rangeStages(Collection<String> sensors, long from, long to);
+
+	/**
+	 * Query on {@link #getCollection()} for the raw documents whose measurements were all created before
+	 * {@code created}, i.e. those that can be removed once everything below it is downsampled.
+	 */
+	DBObject createdBeforeQuery(long created);
+
+	/**
+	 * Removes from {@code collection} the raw documents whose measurements were all seen by an aggregation
+	 * over {@link #rangeStages} ending before {@code before}: {@code seen} maps each {@code _id} it passed
+	 * to the number of measurements it yielded for it. Documents that took more measurements since, or
+	 * that also hold measurements from {@code before} on, are kept. Returns the number removed.
+	 */
+	long removeSeen(DBCollection collection, Map<Object, Integer> seen, long before);
+
+	/**
+	 * Puts a TTL index on {@code lastChanged}, or fails when the store does not keep it.
+	 */
+	void ensureTtlIndex(int expireAfterSeconds);
+
+}
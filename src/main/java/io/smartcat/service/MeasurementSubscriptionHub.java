@@ -0,0 +1,259 @@
+package io.smartcat.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * Pushes newly ingested measurements to subscribers of an owner/sensor pair. Ingest only appends to the
+ * pending buffers of the matching subscriptions ({@link MeasurementsIngestedEvent}, so only writes through
+ * {@link MeasurementService#saveAll} are pushed); every {@code measurement.subscriptions.flush-interval-ms}
+ * whatever is pending goes out as one batch per subscriber on the sender threads. A subscriber has at
+ * most one batch in flight, so a slow one never holds up the others or ingest: while it is busy its
+ * buffer keeps the newest {@code max-pending} measurements and counts the older ones it drops. A
+ * subscriber that got nothing for {@code heartbeat-ms} gets a heartbeat instead, which keeps idle
+ * connections from being cut by proxies and finds subscribers that went away without closing.
+ */
+@Component
+public class MeasurementSubscriptionHub {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MeasurementSubscriptionHub.class);
+
+	@Value("${measurement.subscriptions.max-subscribers:10000}")
+	private int maxSubscribers;
+
+	@Value("${measurement.subscriptions.max-pending:1000}")
+	private int maxPending;
+
+	@Value("${measurement.subscriptions.flush-interval-ms:100}")
+	private long flushIntervalMillis;
+
+	@Value("${measurement.subscriptions.sender-threads:4}")
+	private int senderThreads;
+
+	@Value("${measurement.subscriptions.heartbeat-ms:15000}")
+	private long heartbeatMillis;
+
+	private final ConcurrentMap<OwnerSensor, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+	private final AtomicInteger subscriberCount = new AtomicInteger();
+	private ScheduledExecutorService flusher;
+	private ExecutorService senders;
+
+	@PostConstruct
+	public void start() {
+		if (flushIntervalMillis < 1 || heartbeatMillis < 1) {
+			throw new IllegalStateException("measurement.subscriptions.flush-interval-ms and heartbeat-ms must be positive");
+		}
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "subscription-flusher"));
+		AtomicInteger threadIndex = new AtomicInteger();
+		senders = Executors.newFixedThreadPool(senderThreads, runnable -> daemon(runnable, "subscription-sender-" + threadIndex.incrementAndGet()));
+		flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		flusher.shutdownNow();
+		senders.shutdownNow();
+		subscriptions.values().forEach(subscribers -> subscribers.forEach(Subscription::close));
+	}
+
+	/**
+	 * Starts pushing measurements of the owner's sensor ingested from now on to {@code sink}.
+	 *
+	 * @throws RejectedExecutionException when {@code max-subscribers} subscriptions are open
+	 */
+	public Subscription subscribe(String owner, String sensor, MeasurementSink sink) {
+		if (subscriberCount.incrementAndGet() > maxSubscribers) {
+			subscriberCount.decrementAndGet();
+			throw new RejectedExecutionException("Too many subscriptions: " + maxSubscribers);
+		}
+		Subscription subscription = new Subscription(new OwnerSensor(owner, sensor), sink);
+		// compute, like remove(), so a subscription never lands in a set that was just unmapped
+		subscriptions.compute(subscription.key, (key, subscribers) -> {
+			Set<Subscription> updated = subscribers == null ? ConcurrentHashMap.newKeySet() : subscribers;
+			updated.add(subscription);
+			return updated;
+		});
+		return subscription;
+	}
+
+	public int getSubscriberCount() {
+		return subscriberCount.get();
+	}
+
+	@EventListener
+	public void onMeasurementsIngested(MeasurementsIngestedEvent event) {
+		if (subscriptions.isEmpty()) {
+			return;
+		}
+		Map<OwnerSensor, List<Measurement>> subscribed = new HashMap<>();
+		for (Measurement measurement : event.getMeasurements()) {
+			OwnerSensor key = new OwnerSensor(measurement.getOwner(), measurement.getSensor());
+			if (subscriptions.containsKey(key)) {
+				subscribed.computeIfAbsent(key, k -> new ArrayList<>()).add(measurement);
+			}
+		}
+		subscribed.forEach((key, measurements) -> {
+			Set<Subscription> subscribers = subscriptions.get(key);
+			if (subscribers != null) {
+				subscribers.forEach(subscription -> subscription.offer(measurements));
+			}
+		});
+	}
+
+	/**
+	 * Hands every subscription with no batch in flight and pending measurements, or due a heartbeat, to the
+	 * senders.
+	 */
+	void flush() {
+		long heartbeatBefore = System.currentTimeMillis() - heartbeatMillis;
+		for (Set<Subscription> subscribers : subscriptions.values()) {
+			for (Subscription subscription : subscribers) {
+				if ((subscription.hasPending() || subscription.lastSentAt <= heartbeatBefore) && subscription.sending.compareAndSet(false, true)) {
+					try {
+						senders.execute(subscription::send);
+					} catch (RejectedExecutionException e) {
+						subscription.sending.set(false);
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private void remove(Subscription subscription) {
+		subscriptions.computeIfPresent(subscription.key, (key, subscribers) -> {
+			subscribers.remove(subscription);
+			return subscribers.isEmpty() ? null : subscribers;
+		});
+	}
+
+	private static Thread daemon(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * An open subscription; {@link #cancel()} ends it.
+	 */
+	public final class Subscription {
+
+		private final OwnerSensor key;
+		private final MeasurementSink sink;
+		private final ArrayDeque<Measurement> pending = new ArrayDeque<>();
+		private final AtomicBoolean sending = new AtomicBoolean();
+		private final AtomicBoolean open = new AtomicBoolean(true);
+		private long dropped;
+		private volatile long lastSentAt = System.currentTimeMillis();
+
+		private Subscription(OwnerSensor key, MeasurementSink sink) {
+			this.key = key;
+			this.sink = sink;
+		}
+
+		public void cancel() {
+			if (open.compareAndSet(true, false)) {
+				remove(this);
+				subscriberCount.decrementAndGet();
+			}
+		}
+
+		private void close() {
+			if (open.get()) {
+				cancel();
+				sink.close();
+			}
+		}
+
+		private synchronized void offer(List<Measurement> measurements) {
+			for (Measurement measurement : measurements) {
+				if (pending.size() == maxPending) {
+					pending.pollFirst();
+					dropped++;
+				}
+				pending.addLast(measurement);
+			}
+		}
+
+		private synchronized boolean hasPending() {
+			return !pending.isEmpty();
+		}
+
+		private void send() {
+			MeasurementBatchDTO batch = null;
+			synchronized (this) {
+				if (!pending.isEmpty()) {
+					batch = new MeasurementBatchDTO(key.owner, key.sensor, new ArrayList<>(pending), dropped);
+					pending.clear();
+					dropped = 0;
+				}
+			}
+			try {
+				if (batch != null) {
+					sink.send(batch);
+				} else {
+					sink.heartbeat();
+				}
+				lastSentAt = System.currentTimeMillis();
+			} catch (Exception e) {
+				LOGGER.debug("Closing subscription to {}/{} after failed send", key.owner, key.sensor, e);
+				close();
+			} finally {
+				sending.set(false);
+			}
+		}
+
+	}
+
+	private static final class OwnerSensor {
+
+		private final String owner;
+		private final String sensor;
+
+		private OwnerSensor(String owner, String sensor) {
+			this.owner = owner;
+			this.sensor = sensor;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof OwnerSensor)) {
+				return false;
+			}
+			OwnerSensor other = (OwnerSensor) o;
+			return Objects.equals(owner, other.owner) && Objects.equals(sensor, other.sensor);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(owner, sensor);
+		}
+
+	}
+
+}
@@ -0,0 +1,265 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.WriteConcern;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * Coalesces measurements submitted by concurrent requests into bulk writes. Flusher threads take whatever
+ * has queued up, keep collecting for at most {@code measurement.ingest.linger-ms} or until
+ * {@code measurement.ingest.max-batch} measurements, and write the result with one
+ * {@link MeasurementService#saveAll} call, acknowledged with {@code measurement.ingest.write-concern}
+ * when it is set (JOURNALED waits for the journal commit, which group commit makes affordable) and with
+ * {@code mongo.bulk-write-concern} like any other bulk write otherwise. At most
+ * {@code measurement.ingest.capacity} measurements are buffered: {@link #offer(List)} rejects what does
+ * not fit, the other variants block the caller for a while to let the flushers make room. Submissions can
+ * be followed with a future that completes once their batch is written. On shutdown everything accepted
+ * is written before the context closes.
+ */
+@Component
+public class MeasurementWriteBuffer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MeasurementWriteBuffer.class);
+
+	private static final long IDLE_POLL_MILLIS = 100;
+
+	@Autowired
+	private MeasurementService measurementService;
+
+	@Value("${measurement.ingest.capacity:100000}")
+	private int capacity;
+
+	@Value("${measurement.ingest.max-batch:5000}")
+	private int maxBatch;
+
+	@Value("${measurement.ingest.linger-ms:20}")
+	private long lingerMillis;
+
+	@Value("${measurement.ingest.flush-threads:2}")
+	private int flushThreads;
+
+	// empty leaves the write concern to mongo.bulk-write-concern
+	@Value("${measurement.ingest.write-concern:}")
+	private String writeConcernName;
+
+	private WriteConcern writeConcern;
+	private final BlockingQueue<Submission> pending = new LinkedBlockingQueue<>();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final List<Thread> flushers = new ArrayList<>();
+	private Semaphore freeSlots;
+	private volatile boolean running;
+
+	@PostConstruct
+	public void start() {
+		if (maxBatch <= 0) {
+			throw new IllegalStateException("measurement.ingest.max-batch must be positive, was " + maxBatch);
+		}
+		if (!writeConcernName.isEmpty()) {
+			writeConcern = WriteConcern.valueOf(writeConcernName);
+			if (writeConcern == null) {
+				throw new IllegalStateException("Unknown measurement.ingest.write-concern: " + writeConcernName);
+			}
+		}
+		freeSlots = new Semaphore(capacity);
+		running = true;
+		for (int i = 0; i < flushThreads; i++) {
+			Thread flusher = new Thread(this::flushLoop, "measurement-flusher-" + i);
+			flusher.setDaemon(true);
+			flusher.start();
+			flushers.add(flusher);
+		}
+	}
+
+	/**
+	 * Queues the measurements for the next bulk write, or returns false without queueing anything when
+	 * the buffer cannot take all of them.
+	 */
+	public boolean offer(List<Measurement> measurements) {
+		if (measurements.isEmpty()) {
+			return true;
+		}
+		if (!running || !freeSlots.tryAcquire(measurements.size())) {
+			return false;
+		}
+		return enqueue(new Submission(measurements, null));
+	}
+
+	/**
+	 * Same as {@link #offer(List)}, waiting up to {@code maxWaitMillis} for the buffer to have room.
+	 */
+	public boolean offer(List<Measurement> measurements, long maxWaitMillis) throws InterruptedException {
+		return submit(measurements, maxWaitMillis, null);
+	}
+
+	/**
+	 * Same as {@link #offer(List, long)}, returning a future that completes when the measurements are
+	 * written and fails when their batch fails, or null when they were not queued.
+	 */
+	public CompletableFuture<Void> submit(List<Measurement> measurements, long maxWaitMillis) throws InterruptedException {
+		CompletableFuture<Void> written = new CompletableFuture<>();
+		return submit(measurements, maxWaitMillis, written) ? written : null;
+	}
+
+	private boolean submit(List<Measurement> measurements, long maxWaitMillis, CompletableFuture<Void> written) throws InterruptedException {
+		if (measurements.isEmpty()) {
+			if (written != null) {
+				written.complete(null);
+			}
+			return true;
+		}
+		if (!running || measurements.size() > capacity || !freeSlots.tryAcquire(measurements.size(), maxWaitMillis, TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		return enqueue(new Submission(measurements, written));
+	}
+
+	// called holding permits for the submission; gives them back when it is not queued. Synchronized with
+	// stop() so nothing is queued after the final drain.
+	private synchronized boolean enqueue(Submission submission) {
+		if (!running) {
+			freeSlots.release(submission.measurements.size());
+			return false;
+		}
+		pending.add(submission);
+		return true;
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getBuffered() {
+		return capacity - freeSlots.availablePermits();
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		synchronized (this) {
+			running = false;
+		}
+		for (Thread flusher : flushers) {
+			flusher.join();
+		}
+		// whatever was queued before the flushers stopped is written by the closing thread
+		List<Submission> batch = new ArrayList<>();
+		pending.drainTo(batch);
+		write(batch);
+	}
+
+	private void flushLoop() {
+		// a submission that did not fit into the previous batch starts the next one
+		Submission carried = null;
+		while (running) {
+			try {
+				Submission first = carried != null ? carried : pending.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+				carried = null;
+				if (first == null) {
+					continue;
+				}
+				List<Submission> batch = new ArrayList<>();
+				batch.add(first);
+				int size = first.measurements.size();
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+				while (size < maxBatch) {
+					Submission next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					if (size + next.measurements.size() > maxBatch) {
+						carried = next;
+						break;
+					}
+					batch.add(next);
+					size += next.measurements.size();
+				}
+				write(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		if (carried != null) {
+			write(Collections.singletonList(carried));
+		}
+	}
+
+	// writes the submissions in bulk writes of at most maxBatch measurements; a submission larger than that
+	// on its own, or the final drain, is split. A failed write fails every submission of the call.
+	private void write(List<Submission> submissions) {
+		if (submissions.isEmpty()) {
+			return;
+		}
+		List<Measurement> batch = new ArrayList<>();
+		for (Submission submission : submissions) {
+			batch.addAll(submission.measurements);
+		}
+		int done = 0;
+		try {
+			while (done < batch.size()) {
+				List<Measurement> slice = batch.subList(done, Math.min(done + maxBatch, batch.size()));
+				measurementService.saveAll(slice, writeConcern);
+				written.addAndGet(slice.size());
+				done += slice.size();
+			}
+			submissions.forEach(submission -> submission.complete(null));
+		} catch (RuntimeException e) {
+			failed.addAndGet(batch.size() - done);
+			LOGGER.error("Failed to write batch of {} measurements", batch.size(), e);
+			submissions.forEach(submission -> submission.complete(e));
+		} finally {
+			freeSlots.release(batch.size());
+		}
+	}
+
+	private static final class Submission {
+
+		private final List<Measurement> measurements;
+		private final CompletableFuture<Void> written;
+
+		private Submission(List<Measurement> measurements, CompletableFuture<Void> written) {
+			this.measurements = measurements;
+			this.written = written;
+		}
+
+		private void complete(RuntimeException failure) {
+			if (written == null) {
+				return;
+			}
+			if (failure == null) {
+				written.complete(null);
+			} else {
+				written.completeExceptionally(failure);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,28 @@
+package io.smartcat.service;
+
+import java.util.List;
+
+import org.springframework.context.ApplicationEvent;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * Published synchronously after a batch of measurements has been written, so derived state (rollups,
+ * caches, in-memory indexes) is updated before the write call returns.
+ */
+public class MeasurementsIngestedEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<Measurement> measurements;
+
+	public MeasurementsIngestedEvent(Object source, List<Measurement> measurements) {
+		super(source);
+		this.measurements = measurements;
+	}
+
+	public List<Measurement> getMeasurements() {
+		return measurements;
+	}
+
+}
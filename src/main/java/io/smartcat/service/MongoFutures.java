@@ -0,0 +1,46 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+
+import com.mongodb.async.client.MongoIterable;
+
+/**
+ * Bridges the callbacks of the async driver to {@link CompletableFuture}s. Futures complete on the
+ * driver's threads and driver exceptions are translated the same way {@code MongoTemplate} does.
+ */
+final class MongoFutures {
+
+	private static final PersistenceExceptionTranslator EXCEPTION_TRANSLATOR = new MongoExceptionTranslator();
+
+	private MongoFutures() {
+	}
+
+	static <T> CompletableFuture<List<T>> toList(MongoIterable<T> iterable) {
+		CompletableFuture<List<T>> future = new CompletableFuture<>();
+		iterable.into(new ArrayList<>(), (result, failure) -> {
+			if (failure == null) {
+				future.complete(result);
+			} else {
+				future.completeExceptionally(translate(failure));
+			}
+		});
+		return future;
+	}
+
+	private static Throwable translate(Throwable failure) {
+		if (failure instanceof RuntimeException) {
+			DataAccessException translated = EXCEPTION_TRANSLATOR.translateExceptionIfPossible((RuntimeException) failure);
+			if (translated != null) {
+				return translated;
+			}
+		}
+		return failure;
+	}
+
+}
@@ -0,0 +1,241 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * Bounded LRU cache with TTL for the "newest N measurements" queries, keyed by owner, sensor (null for
+ * all sensors of the owner) and limit. Entries of an owner/sensor are dropped when measurements for it
+ * are ingested, so the cache never serves a page older than the last write plus the time of one query.
+ * Callers get their own copies of the cached measurements.
+ */
+@Component
+public class NewestMeasurementsCache {
+
+	private static final int VERSION_STRIPES = 4096;
+
+	private final boolean enabled;
+	private final long ttlMillis;
+	private final Map<Key, CachedPage> entries;
+	// cached keys per owner, so an ingest only visits the entries of the owners it wrote
+	private final Map<String, Set<Key>> keysByOwner = new HashMap<>();
+	// write versions of (owner, sensor) and (owner, all sensors), striped to bound the memory; a load is only
+	// cached when the version of its key did not change meanwhile, a collision merely skips caching one load
+	private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+	private long invalidations;
+
+	@Autowired
+	public NewestMeasurementsCache(@Value("${measurement.cache.enabled:true}") boolean enabled,
+			@Value("${measurement.cache.max-entries:10000}") int maxEntries,
+			@Value("${measurement.cache.ttl-ms:5000}") long ttlMillis) {
+		this.enabled = enabled;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<Key, CachedPage>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedPage> eldest) {
+				if (size() > maxEntries) {
+					evictions++;
+					unindex(eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public List<Measurement> get(String owner, String sensor, int limit, Supplier<List<Measurement>> loader) {
+		if (!enabled) {
+			return loader.get();
+		}
+		Key key = new Key(owner, sensor, limit);
+		synchronized (this) {
+			List<Measurement> cached = lookup(key);
+			if (cached != null) {
+				return copyOf(cached);
+			}
+		}
+		long versionBeforeLoad = versions.get(stripe(owner, sensor));
+		return store(key, loader.get(), versionBeforeLoad);
+	}
+
+	/**
+	 * Same as {@link #get} for a loader that completes asynchronously; the result is cached when the
+	 * loader's future completes.
+	 */
+	public CompletableFuture<List<Measurement>> getAsync(String owner, String sensor, int limit, Supplier<CompletableFuture<List<Measurement>>> loader) {
+		if (!enabled) {
+			return loader.get();
+		}
+		Key key = new Key(owner, sensor, limit);
+		synchronized (this) {
+			List<Measurement> cached = lookup(key);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(copyOf(cached));
+			}
+		}
+		long versionBeforeLoad = versions.get(stripe(owner, sensor));
+		return loader.get().thenApply(measurements -> store(key, measurements, versionBeforeLoad));
+	}
+
+	// callers hold the monitor
+	private List<Measurement> lookup(Key key) {
+		CachedPage entry = entries.get(key);
+		if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+			hits++;
+			return entry.measurements;
+		}
+		if (entry != null) {
+			entries.remove(key);
+			unindex(key);
+			expirations++;
+		}
+		misses++;
+		return null;
+	}
+
+	private List<Measurement> store(Key key, List<Measurement> loaded, long versionBeforeLoad) {
+		// a write that landed while loading may not be in the result, so only cache it if its key was not written meanwhile
+		if (versions.get(stripe(key.owner, key.sensor)) == versionBeforeLoad) {
+			List<Measurement> measurements = Collections.unmodifiableList(copyOf(loaded));
+			synchronized (this) {
+				if (versions.get(stripe(key.owner, key.sensor)) == versionBeforeLoad) {
+					entries.put(key, new CachedPage(measurements, System.currentTimeMillis() + ttlMillis));
+					keysByOwner.computeIfAbsent(key.owner, owner -> new HashSet<>()).add(key);
+				}
+			}
+		}
+		return loaded;
+	}
+
+	@EventListener
+	public void onMeasurementsIngested(MeasurementsIngestedEvent event) {
+		if (!enabled) {
+			return;
+		}
+		Map<String, Set<String>> sensorsByOwner = new HashMap<>();
+		for (Measurement measurement : event.getMeasurements()) {
+			sensorsByOwner.computeIfAbsent(measurement.getOwner(), owner -> new HashSet<>()).add(measurement.getSensor());
+		}
+		synchronized (this) {
+			invalidations++;
+			sensorsByOwner.forEach((owner, sensors) -> {
+				// bumped under the monitor, so a load that read the old version cannot store after the removal below
+				versions.incrementAndGet(stripe(owner, null));
+				sensors.forEach(sensor -> versions.incrementAndGet(stripe(owner, sensor)));
+				Set<Key> keys = keysByOwner.get(owner);
+				if (keys == null) {
+					return;
+				}
+				Iterator<Key> iterator = keys.iterator();
+				while (iterator.hasNext()) {
+					Key key = iterator.next();
+					if (key.sensor == null || sensors.contains(key.sensor)) {
+						entries.remove(key);
+						iterator.remove();
+					}
+				}
+				if (keys.isEmpty()) {
+					keysByOwner.remove(owner);
+				}
+			});
+		}
+	}
+
+	// callers hold the monitor
+	private void unindex(Key key) {
+		Set<Key> keys = keysByOwner.get(key.owner);
+		if (keys != null && keys.remove(key) && keys.isEmpty()) {
+			keysByOwner.remove(key.owner);
+		}
+	}
+
+	private static int stripe(String owner, String sensor) {
+		return Math.floorMod(Objects.hash(owner, sensor), VERSION_STRIPES);
+	}
+
+	// cached measurements are never handed out, so callers may modify what they get
+	private static List<Measurement> copyOf(List<Measurement> measurements) {
+		List<Measurement> copies = new ArrayList<>(measurements.size());
+		measurements.forEach(measurement -> copies.add(measurement.copy()));
+		return copies;
+	}
+
+	/**
+	 * Drops every entry, e.g. after the database was switched underneath the application.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		keysByOwner.clear();
+	}
+
+	public synchronized CacheStats stats() {
+		return new CacheStats(entries.size(), hits, misses, evictions, expirations, invalidations);
+	}
+
+	private static final class CachedPage {
+
+		private final List<Measurement> measurements;
+		private final long expiresAt;
+
+		private CachedPage(List<Measurement> measurements, long expiresAt) {
+			this.measurements = measurements;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+	private static final class Key {
+
+		private final String owner;
+		private final String sensor;
+		private final int limit;
+
+		private Key(String owner, String sensor, int limit) {
+			this.owner = owner;
+			this.sensor = sensor;
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return limit == other.limit && Objects.equals(owner, other.owner) && Objects.equals(sensor, other.sensor);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(owner, sensor, limit);
+		}
+
+	}
+
+}
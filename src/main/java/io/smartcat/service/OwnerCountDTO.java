@@ -0,0 +1,29 @@
+package io.smartcat.service;
+
+public class OwnerCountDTO {
+
+	private String owner;
+	private long estimatedCount;
+
+	public OwnerCountDTO() {
+	}
+
+	public OwnerCountDTO(String owner, long estimatedCount) {
+		this.owner = owner;
+		this.estimatedCount = estimatedCount;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	public long getEstimatedCount() {
+		return estimatedCount;
+	}
+	public void setEstimatedCount(long estimatedCount) {
+		this.estimatedCount = estimatedCount;
+	}
+
+}
@@ -0,0 +1,49 @@
+package io.smartcat.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last measurement of a page, (created, id), handed to clients as an opaque URL safe
+ * token. The next page starts strictly after this position in (created DESC, id DESC) order.
+ */
+public class PageCursor {
+	
+	private final long created;
+	private final String id;
+	
+	public PageCursor(long created, String id) {
+		this.created = created;
+		this.id = id;
+	}
+	
+	public long getCreated() {
+		return created;
+	}
+	public String getId() {
+		return id;
+	}
+	
+	public String encode() {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString((created + ":" + id).getBytes(StandardCharsets.UTF_8));
+	}
+	
+	public static PageCursor decode(String token) {
+		String value;
+		try {
+			value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidCursorException(token);
+		}
+		int separator = value.indexOf(':');
+		if (separator < 1 || separator == value.length() - 1) {
+			throw new InvalidCursorException(token);
+		}
+		try {
+			return new PageCursor(Long.parseLong(value.substring(0, separator)), value.substring(separator + 1));
+		} catch (NumberFormatException e) {
+			throw new InvalidCursorException(token);
+		}
+	}
+
+}
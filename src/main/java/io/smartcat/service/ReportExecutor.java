@@ -0,0 +1,174 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.MongoExecutionTimeoutException;
+
+/**
+ * Splits large report ranges into time slices and runs them concurrently on a bounded pool. When the
+ * pool and its queue are full the submitting thread runs the slice itself, so concurrent reports slow
+ * down instead of queueing without bound. A report fails as a whole: on the first failure, on its
+ * timeout or when the calling thread is interrupted, the remaining slices are cancelled. Running out of
+ * time, here or on the server, fails with a {@link QueryTimeoutException}.
+ */
+@Component
+public class ReportExecutor {
+
+	@Value("${report.parallel.threads:4}")
+	private int threads;
+
+	@Value("${report.parallel.queue-capacity:64}")
+	private int queueCapacity;
+
+	// ranges are cut into at most max-slices slices that are at least min-slice-width wide
+	@Value("${report.parallel.max-slices:8}")
+	private int maxSlices;
+
+	@Value("${report.parallel.min-slice-width:3600000}")
+	private long minSliceWidth;
+
+	@Value("${report.timeout-ms:30000}")
+	private long timeoutMillis;
+
+	private ThreadPoolExecutor executor;
+
+	@PostConstruct
+	public void start() {
+		if (threads < 1 || queueCapacity < 1) {
+			throw new IllegalStateException("report.parallel.threads and queue-capacity must be positive");
+		}
+		// slices() divides by the width and caps the slice count, so neither may be zero
+		if (maxSlices < 1 || minSliceWidth < 1) {
+			throw new IllegalStateException("report.parallel.max-slices and min-slice-width must be positive");
+		}
+		if (timeoutMillis < 1) {
+			throw new IllegalStateException("report.timeout-ms must be positive: " + timeoutMillis);
+		}
+		AtomicInteger threadIndex = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+				runnable -> {
+					Thread thread = new Thread(runnable, "report-slice-" + threadIndex.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * [start, end) cut into equal, contiguous slices as {start, end} pairs; empty for an empty range.
+	 */
+	public List<long[]> slices(long start, long end) {
+		List<long[]> slices = new ArrayList<>();
+		if (start >= end) {
+			return slices;
+		}
+		long range = end - start;
+		long count = Math.max(1, Math.min(maxSlices, range / minSliceWidth));
+		long width = (range + count - 1) / count;
+		for (long sliceStart = start; sliceStart < end; sliceStart += width) {
+			slices.add(new long[] { sliceStart, Math.min(sliceStart + width, end) });
+		}
+		return slices;
+	}
+
+	/**
+	 * Runs the tasks concurrently and returns their results in task order. Tasks receive the deadline
+	 * ({@link System#currentTimeMillis()} based) so they can bound server-side work with maxTimeMS.
+	 *
+	 * @throws QueryTimeoutException when the results are not all there within {@code timeoutMillis}
+	 */
+	public <T> List<T> invokeAll(List<SliceTask<T>> tasks, long timeoutMillis) {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		if (tasks.size() == 1) {
+			return single(tasks.get(0), deadline);
+		}
+		List<Future<T>> futures = new ArrayList<>(tasks.size());
+		try {
+			for (SliceTask<T> task : tasks) {
+				futures.add(executor.submit((Callable<T>) () -> task.run(deadline)));
+			}
+			List<T> results = new ArrayList<>(tasks.size());
+			for (Future<T> future : futures) {
+				results.add(future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+			}
+			return results;
+		} catch (TimeoutException e) {
+			throw new QueryTimeoutException("Report did not finish within " + timeoutMillis + " ms", e);
+		} catch (ExecutionException e) {
+			throw propagate(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QueryTimeoutException("Report was interrupted", e);
+		} finally {
+			futures.forEach(future -> future.cancel(true));
+		}
+	}
+
+	// a single slice runs on the calling thread, there is nothing to overlap it with
+	private static <T> List<T> single(SliceTask<T> task, long deadline) {
+		List<T> results = new ArrayList<>(1);
+		try {
+			results.add(task.run(deadline));
+		} catch (Exception e) {
+			throw propagate(e);
+		}
+		return results;
+	}
+
+	/**
+	 * Milliseconds left until {@code deadline}, at least 1 so it can be passed as maxTimeMS (where 0 means
+	 * no limit).
+	 */
+	public static long remainingMillis(long deadline) {
+		return Math.max(1, deadline - System.currentTimeMillis());
+	}
+
+	private static RuntimeException propagate(Throwable failure) {
+		// a slice that ran into its maxTimeMS, whether translated by MongoTemplate or not
+		if (failure instanceof MongoExecutionTimeoutException || failure.getCause() instanceof MongoExecutionTimeoutException) {
+			return new QueryTimeoutException("Report did not finish in time", failure);
+		}
+		if (failure instanceof RuntimeException) {
+			return (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		return new IllegalStateException("Report slice failed", failure);
+	}
+
+	/**
+	 * One slice of a report; {@code deadline} is the report's deadline in epoch milliseconds.
+	 */
+	@FunctionalInterface
+	public interface SliceTask<T> {
+
+		T run(long deadline) throws Exception;
+
+	}
+
+}
@@ -1,62 +1,387 @@
 package io.smartcat.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.mongodb.core.DbCallback;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.stereotype.Service;
 
-import com.mongodb.AggregationOutput;
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
-import com.mongodb.DB;
-import com.mongodb.DBCollection;
+import com.mongodb.Cursor;
 import com.mongodb.DBObject;
-import com.mongodb.MongoException;
+
+import io.smartcat.config.MeasurementPartitions;
+import io.smartcat.service.ReportExecutor.SliceTask;
 
 @Service
 public class ReportService {
 	
+	private static final String HEART_BEAT_MONITOR = "Heart Beat Monitor";
+	
+	// partition holding the rollups and downsamples
+	private static final int PRIMARY = 0;
+	
+	@Autowired
+	private MeasurementPartitions partitions;
+	
 	@Autowired
-	private MongoOperations mongoOps;
+	private RollupService rollupService;
+	
+	@Autowired
+	private MeasurementStore measurementStore;
+	
+	@Autowired
+	private ReportExecutor reportExecutor;
+	
+	@Autowired
+	private SketchService sketchService;
+	
+	@Autowired
+	private RetentionService retentionService;
+	
+	@Value("${measurement.async.max-time-ms:30000}")
+	private long asyncMaxTimeMillis;
+	
+	@Value("${report.scan-batch-size:1000}")
+	private int scanBatchSize;
+	
+	@Value("${report.max-buckets:10000}")
+	private long maxBuckets;
+	
+	@Value("${report.max-groups:100000}")
+	private int maxGroups;
 	
 	public List<AvgHeartBeatRateDTO> calcAvgHeartBeatRate(long startDate, long endDate) {
-		List<AvgHeartBeatRateDTO> result = mongoOps.execute(new DbCallback<List<AvgHeartBeatRateDTO>>() {
-
-			@Override
-			public List<AvgHeartBeatRateDTO> doInDB(DB db) throws MongoException, DataAccessException {
-				DBCollection collection = db.getCollection("measurements");
-
-				//  db.measurements.aggregate( [
-				//	{ $match : { created : {$gte : 10_000, $lte : 15_050 }, sensor : "Heart Beat Monitor"}}, 
-				//	{ $group : {_id : {owner : "$owner", sensor : "$sensor"}, avg_hb : {$avg : "$measuredValue"}}}, 
-				//	{ $project : {_id : 0, owner : "$_id.owner", avg_hb : "$avg_hb"}}])
-				DBObject match = new BasicDBObject("$match", new BasicDBObject("created", new BasicDBObject("$gte", startDate).append("$lt", endDate)).append("sensor", "Heart Beat Monitor"));
-				DBObject group = new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject("owner", "$owner").append("sensor", "$sensor")).append("avg_hb", new BasicDBObject("$avg", "$measuredValue")));
-				DBObject project = new BasicDBObject("$project", new BasicDBObject("_id", 0).append("owner", "$_id.owner").append("avg_hb", "$avg_hb"));
-				List<DBObject> pipeline = new ArrayList<>();
-				pipeline.add(match);
-				pipeline.add(group);
-				pipeline.add(project);
-
-				AggregationOutput output = collection.aggregate(pipeline);
-				List<AvgHeartBeatRateDTO> result = new ArrayList<>();
-				for (DBObject dbObject : output.results()) {
-					AvgHeartBeatRateDTO avgHeartBeatRateDTO = new AvgHeartBeatRateDTO();
-					System.out.println(dbObject.toString());
-					String owner = (String) dbObject.get("owner");
-					double avgHb = (double) dbObject.get("avg_hb");
-					avgHeartBeatRateDTO.setAvgHeartBeatRate(avgHb);
-					avgHeartBeatRateDTO.setUsername(owner);
-					result.add(avgHeartBeatRateDTO);
-				}
-				return result;
+		return calcAvgByOwner(HEART_BEAT_MONITOR, startDate, endDate);
+	}
+	
+	/**
+	 * Average measured value per owner of {@code sensor} over [startDate, endDate), using the rollups
+	 * for whole buckets.
+	 */
+	public List<AvgHeartBeatRateDTO> calcAvgByOwner(String sensor, long startDate, long endDate) {
+		return calcAvgByOwner(sensor, startDate, endDate, reportExecutor.getTimeoutMillis());
+	}
+	
+	/**
+	 * Same as {@link #calcAvgByOwner(String, long, long)}, failing with a {@code QueryTimeoutException}
+	 * when it takes longer than {@code timeoutMillis}. The server side aggregations are bounded by the same
+	 * deadline, so they stop as well.
+	 */
+	public List<AvgHeartBeatRateDTO> calcAvgByOwner(String sensor, long startDate, long endDate, long timeoutMillis) {
+		return toAverages(sumAndCountByOwner(sensor, startDate, endDate, timeoutMillis));
+	}
+	
+	/**
+	 * Count, average, min, max, standard deviation and approximate p50/p95/p99 of the measured values of
+	 * each sensor over [startDate, endDate), computed in one pass over the matching measurements instead of
+	 * one aggregation per statistic and sensor. Rows are split per owner when {@code byOwner} is set and
+	 * per time bucket of {@code bucketWidth} (aligned to multiples of the width) when it is positive, and
+	 * come sorted by sensor, owner and bucket. Only groups with measurements get a row. Downsampled data
+	 * carries no quantiles nor spread, so ranges starting below the retention watermark are rejected with
+	 * an {@link IllegalArgumentException} instead of answered from what raw data is left.
+	 * <p>
+	 * The server groups the measurements by row and measured value, so what is streamed is one weighted
+	 * value per distinct value of a row rather than every measurement; count, sum, min and max come out
+	 * exact and the digest takes the weights. Fails with an {@link IllegalArgumentException} once there
+	 * are more than {@code report.max-groups} rows, which bounds the memory a report may hold.
+	 */
+	public List<SensorStatsDTO> calcSensorStats(Collection<String> sensors, long startDate, long endDate, long bucketWidth, boolean byOwner) {
+		if (bucketWidth > 0 && (endDate - startDate) / bucketWidth >= maxBuckets) {
+			throw new IllegalArgumentException("More than " + maxBuckets + " buckets of " + bucketWidth + " in [" + startDate + ", " + endDate + ")");
+		}
+		long watermark = retentionService.getWatermark();
+		if (startDate < watermark) {
+			throw new IllegalArgumentException("Measurements before " + watermark + " are downsampled and have no quantiles; start the range at "
+					+ watermark + " or later");
+		}
+		List<SliceTask<Map<StatsKey, MeasurementStats>>> tasks = new ArrayList<>();
+		for (long[] slice : reportExecutor.slices(startDate, endDate)) {
+			for (int partition : rawPartitions()) {
+				tasks.add(deadline -> {
+					Map<StatsKey, MeasurementStats> sliceGroups = new HashMap<>();
+					forEachValueCount(partitions.get(partition), sensors, slice[0], slice[1], startDate, bucketWidth, byOwner, deadline, row -> {
+						DBObject id = (DBObject) row.get("_id");
+						StatsKey key = new StatsKey((String) id.get("sensor"), (String) id.get("owner"),
+								bucketWidth > 0 ? ((Number) id.get("bucket")).longValue() : startDate);
+						MeasurementStats stats = sliceGroups.get(key);
+						if (stats == null) {
+							checkGroupCount(sliceGroups.size() + 1);
+							stats = new MeasurementStats();
+							sliceGroups.put(key, stats);
+						}
+						stats.add(((Number) id.get("value")).longValue(), ((Number) row.get("n")).longValue());
+					});
+					return sliceGroups;
+				});
+			}
+		}
+		Map<StatsKey, MeasurementStats> groups = new HashMap<>();
+		for (Map<StatsKey, MeasurementStats> sliceGroups : reportExecutor.invokeAll(tasks, reportExecutor.getTimeoutMillis())) {
+			sliceGroups.forEach((key, stats) -> groups.merge(key, stats, (merged, other) -> {
+				merged.merge(other);
+				return merged;
+			}));
+			checkGroupCount(groups.size());
+		}
+		List<SensorStatsDTO> rows = new ArrayList<>(groups.size());
+		groups.forEach((key, stats) -> rows.add(new SensorStatsDTO(key.sensor, key.owner, key.bucketStart, stats)));
+		rows.sort(Comparator.comparing(SensorStatsDTO::getSensor)
+				.thenComparing(SensorStatsDTO::getOwner, Comparator.nullsFirst(Comparator.naturalOrder()))
+				.thenComparingLong(SensorStatsDTO::getBucketStart));
+		return rows;
+	}
+	
+	private void checkGroupCount(int groups) {
+		if (groups > maxGroups) {
+			throw new IllegalArgumentException("More than " + maxGroups + " groups; narrow the range, widen the buckets or drop byOwner");
+		}
+	}
+	
+	/**
+	 * Approximate mode of {@link #calcSensorStats} for high-cardinality data: count, avg, min, max, stdDev
+	 * and p50/p95/p99 per sensor plus the number of distinct owners and the {@code topOwners} owners with
+	 * the most measurements, all merged from the sketches {@link SketchService} keeps at ingest, so the
+	 * cost depends on the number of buckets in the range rather than on the number of measurements or
+	 * owners. The range is widened to whole sketch buckets; {@code sensors} null means every sensor.
+	 */
+	public List<ApproximateSensorStatsDTO> calcApproximateSensorStats(Collection<String> sensors, long startDate, long endDate, int topOwners) {
+		if (!sketchService.isEnabled()) {
+			throw new IllegalArgumentException("Approximate reports need measurement.sketch.enabled");
+		}
+		return sketchService.approximate(sensors, startDate, endDate, topOwners);
+	}
+	
+	// streams {_id : {sensor, owner, bucket, value}, n} per distinct measured value of each row, from one partition
+	private void forEachValueCount(MongoOperations ops, Collection<String> sensors, long sliceStart, long sliceEnd, long startDate, long bucketWidth,
+			boolean withOwner, long deadline, Consumer<DBObject> consumer) {
+		List<DBObject> pipeline = new ArrayList<>(measurementStore.rangeStages(sensors, sliceStart, sliceEnd));
+		BasicDBObject id = new BasicDBObject("sensor", "$sensor");
+		if (withOwner) {
+			id.append("owner", "$owner");
+		}
+		if (bucketWidth > 0) {
+			id.append("bucket", bucketStart(startDate, bucketWidth));
+		}
+		id.append("value", "$measuredValue");
+
+		//  db.measurements.aggregate( [
+		//	{ $match : { created : {$gte : 0, $lt : 200 }, sensor : "Heart Beat Monitor"}},
+		//	{ $group : {_id : {sensor : "$sensor", owner : "$owner", bucket : ..., value : "$measuredValue"}, n : {$sum : 1}}}])
+		pipeline.add(new BasicDBObject("$group", new BasicDBObject("_id", id).append("n", new BasicDBObject("$sum", 1))));
+		ops.execute((DbCallback<Void>) db -> {
+			AggregationOptions options = AggregationOptions.builder()
+					.outputMode(AggregationOptions.OutputMode.CURSOR)
+					.allowDiskUse(true)
+					.batchSize(scanBatchSize)
+					.maxTime(ReportExecutor.remainingMillis(deadline), TimeUnit.MILLISECONDS)
+					.build();
+			try (Cursor cursor = db.getCollection(measurementStore.getCollection()).aggregate(pipeline, options)) {
+				cursor.forEachRemaining(consumer);
 			}
+			return null;
+		});
+	}
+	
+	/**
+	 * created floored to a multiple of {@code bucketWidth}. $mod keeps the sign of the dividend, so it is
+	 * taken of the offset from the bucket holding {@code startDate}, which is never negative in the range.
+	 */
+	private static DBObject bucketStart(long startDate, long bucketWidth) {
+		BasicDBList offset = new BasicDBList();
+		offset.add("$created");
+		offset.add(Math.floorDiv(startDate, bucketWidth) * bucketWidth);
+		BasicDBList mod = new BasicDBList();
+		mod.add(new BasicDBObject("$subtract", offset));
+		mod.add(bucketWidth);
+		BasicDBList bucket = new BasicDBList();
+		bucket.add("$created");
+		bucket.add(new BasicDBObject("$mod", mod));
+		return new BasicDBObject("$subtract", bucket);
+	}
+	
+	/**
+	 * Non-blocking variant of {@link #calcAvgHeartBeatRate}: the aggregations run concurrently on the async
+	 * driver and the future completes on one of its threads.
+	 */
+	public CompletableFuture<List<AvgHeartBeatRateDTO>> calcAvgHeartBeatRateAsync(long startDate, long endDate) {
+		return sumAndCountByOwnerAsync(HEART_BEAT_MONITOR, startDate, endDate).thenApply(ReportService::toAverages);
+	}
+	
+	private static List<AvgHeartBeatRateDTO> toAverages(Map<String, SumAndCount> totals) {
+		List<AvgHeartBeatRateDTO> result = new ArrayList<>();
+		totals.forEach((owner, total) -> {
+			AvgHeartBeatRateDTO avgHeartBeatRateDTO = new AvgHeartBeatRateDTO();
+			avgHeartBeatRateDTO.setAvgHeartBeatRate(total.getAverage());
+			avgHeartBeatRateDTO.setUsername(owner);
+			result.add(avgHeartBeatRateDTO);
 		});
-		
 		return result;
 	}
+	
+	Map<String, SumAndCount> sumAndCountByOwner(String sensor, long startDate, long endDate) {
+		return sumAndCountByOwner(sensor, startDate, endDate, reportExecutor.getTimeoutMillis());
+	}
+	
+	/**
+	 * Totals per owner for [startDate, endDate). Whole rollup buckets inside the range are read from
+	 * the rollups, only the partial buckets at both edges are aggregated from raw measurements, so the
+	 * cost no longer depends on how much history the range covers. Raw ranges are cut into time slices
+	 * that are aggregated concurrently, on every measurement partition; sums and counts add up exactly across
+	 * slices and partitions. The part of the range below the retention watermark is read from the
+	 * downsamples, so there the range must start and end on downsampling intervals.
+	 */
+	Map<String, SumAndCount> sumAndCountByOwner(String sensor, long startDate, long endDate, long timeoutMillis) {
+		List<SliceTask<List<DBObject>>> tasks = new ArrayList<>();
+		for (TotalsQuery query : totalsQueries(sensor, startDate, endDate)) {
+			tasks.add(deadline -> aggregate(query, deadline));
+		}
+		Map<String, SumAndCount> totals = new HashMap<>();
+		reportExecutor.invokeAll(tasks, timeoutMillis).forEach(results -> addTotals(results, totals));
+		return totals;
+	}
+	
+	private List<DBObject> aggregate(TotalsQuery query, long deadline) {
+		return partitions.get(query.partition).execute((DbCallback<List<DBObject>>) db -> {
+			AggregationOptions options = AggregationOptions.builder()
+					.outputMode(AggregationOptions.OutputMode.CURSOR)
+					.maxTime(ReportExecutor.remainingMillis(deadline), TimeUnit.MILLISECONDS)
+					.build();
+			List<DBObject> results = new ArrayList<>();
+			try (Cursor cursor = db.getCollection(query.collection).aggregate(query.pipeline, options)) {
+				cursor.forEachRemaining(results::add);
+			}
+			return results;
+		});
+	}
+	
+	CompletableFuture<Map<String, SumAndCount>> sumAndCountByOwnerAsync(String sensor, long startDate, long endDate) {
+		List<CompletableFuture<List<BasicDBObject>>> parts = new ArrayList<>();
+		for (TotalsQuery query : totalsQueries(sensor, startDate, endDate)) {
+			// the async driver takes Bson stages, which BasicDBObject is and DBObject is not
+			List<BasicDBObject> stages = query.pipeline.stream().map(stage -> new BasicDBObject(stage.toMap())).collect(Collectors.toList());
+			parts.add(MongoFutures.toList(partitions.getAsync(query.partition).getCollection(query.collection, BasicDBObject.class)
+					.aggregate(stages)
+					.maxTime(asyncMaxTimeMillis, TimeUnit.MILLISECONDS)));
+		}
+		return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[parts.size()])).thenApply(done -> {
+			Map<String, SumAndCount> totals = new HashMap<>();
+			parts.forEach(part -> addTotals(part.join(), totals));
+			return totals;
+		});
+	}
+	
+	private List<TotalsQuery> totalsQueries(String sensor, long startDate, long endDate) {
+		List<TotalsQuery> queries = new ArrayList<>();
+		long watermark = retentionService.getWatermark();
+		if (startDate < watermark && startDate < endDate) {
+			long downsampledEnd = Math.min(endDate, watermark);
+			queries.add(new TotalsQuery(PRIMARY, RetentionService.COLLECTION, retentionService.downsampleTotalsPipeline(sensor, startDate, downsampledEnd)));
+			startDate = downsampledEnd;
+		}
+		long firstBucket = rollupService.ceilToBucket(startDate);
+		long endBucket = rollupService.floorToBucket(endDate);
+		if (!rollupService.isServing() || firstBucket >= endBucket) {
+			addRawTotalsQueries(sensor, startDate, endDate, queries);
+		} else {
+			addRawTotalsQueries(sensor, startDate, firstBucket, queries);
+			queries.add(new TotalsQuery(PRIMARY, RollupService.COLLECTION, rollupService.bucketTotalsPipeline(sensor, firstBucket, endBucket)));
+			addRawTotalsQueries(sensor, endBucket, endDate, queries);
+		}
+		return queries;
+	}
+	
+	private void addRawTotalsQueries(String sensor, long startDate, long endDate, List<TotalsQuery> queries) {
+		for (long[] slice : reportExecutor.slices(startDate, endDate)) {
+			for (int partition : rawPartitions()) {
+				queries.add(rawTotalsQuery(partition, sensor, slice[0], slice[1]));
+			}
+		}
+	}
+	
+	private TotalsQuery rawTotalsQuery(int partition, String sensor, long startDate, long endDate) {
+		List<DBObject> pipeline = new ArrayList<>(measurementStore.rangeStages(Collections.singleton(sensor), startDate, endDate));
+
+		//  db.measurements.aggregate( [
+		//	{ $match : { created : {$gte : 10_000, $lt : 15_050 }, sensor : "Heart Beat Monitor"}},
+		//	{ $group : {_id : "$owner", sum : {$sum : "$measuredValue"}, count : {$sum : 1}}}])
+		pipeline.add(new BasicDBObject("$group", new BasicDBObject("_id", "$owner").append("sum", new BasicDBObject("$sum", "$measuredValue")).append("count", new BasicDBObject("$sum", 1))));
+		return new TotalsQuery(partition, measurementStore.getCollection(), pipeline);
+	}
+	
+	private List<Integer> rawPartitions() {
+		List<Integer> raw = new ArrayList<>();
+		for (int partition = 0; partition < measurementStore.getPartitionCount(); partition++) {
+			raw.add(partition);
+		}
+		return raw;
+	}
+	
+	private static void addTotals(Iterable<? extends DBObject> results, Map<String, SumAndCount> totals) {
+		for (DBObject dbObject : results) {
+			String owner = (String) dbObject.get("_id");
+			long sum = ((Number) dbObject.get("sum")).longValue();
+			long count = ((Number) dbObject.get("count")).longValue();
+			totals.computeIfAbsent(owner, o -> new SumAndCount()).add(sum, count);
+		}
+	}
+	
+	private static final class StatsKey {
+
+		private final String sensor;
+		private final String owner;
+		private final long bucketStart;
+
+		private StatsKey(String sensor, String owner, long bucketStart) {
+			this.sensor = sensor;
+			this.owner = owner;
+			this.bucketStart = bucketStart;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof StatsKey)) {
+				return false;
+			}
+			StatsKey other = (StatsKey) o;
+			return bucketStart == other.bucketStart && Objects.equals(sensor, other.sensor) && Objects.equals(owner, other.owner);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sensor, owner, bucketStart);
+		}
+
+	}
+	
+	// an aggregation yielding {_id : owner, sum, count} documents, run on one partition
+	private static final class TotalsQuery {
+
+		private final int partition;
+		private final String collection;
+		private final List<DBObject> pipeline;
+
+		private TotalsQuery(int partition, String collection, List<DBObject> pipeline) {
+			this.partition = partition;
+			this.collection = collection;
+			this.pipeline = pipeline;
+		}
+
+	}
 
 }
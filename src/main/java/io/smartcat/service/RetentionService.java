@@ -0,0 +1,299 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+/**
+ * Keeps the raw measurements bounded in age. Every {@code measurement.retention.run-interval-ms} the raw
+ * measurements (or buckets) older than {@code max-age-ms} are folded into per owner/sensor/interval
+ * min, max, sum and count documents in {@link #COLLECTION}. They are written in batches of intervals
+ * covering about {@code delete-batch-size} raw documents, each batch followed by the removal of exactly
+ * the raw documents the aggregation saw for it, at most {@code delete-batch-size} per delete with a pause
+ * of {@code delete-pause-ms} after each, so the deletes stay small, do not starve ingest and nothing
+ * written meanwhile is removed uncounted. The watermark, the interval aligned age limit below which only
+ * downsamples exist, is stored in Mongo and moved once the range below it is done; a run interrupted
+ * before that is redone by the next one, which sets the same aggregates again. Measurements arriving with
+ * a created value below the watermark are added to their intervals by the next run. Reports read ranges
+ * below the watermark from the downsamples; rollups below it are no longer read and are removed. An
+ * owner's sensor may hold no more measurements per interval than fit one 16 MB aggregation group of
+ * their ids, about 800 000. Negative {@code created} values are not supported.
+ * <p>
+ * Independently of downsampling, {@code measurement.retention.ttl.enabled} puts a TTL index on
+ * {@code lastChanged}, which ingest then stamps, to let the server expire raw measurements by wall clock
+ * time (document storage mode only).
+ */
+@Service
+public class RetentionService {
+
+	public static final String COLLECTION = "measurement_downsamples";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RetentionService.class);
+
+	private static final String STATE_COLLECTION = "retention_state";
+
+	private static final String STATE_ID = "measurements";
+
+	@Autowired
+	private MongoOperations mongoOps;
+
+	@Autowired
+	private MeasurementStore measurementStore;
+
+	@Autowired
+	private RollupService rollupService;
+
+	@Value("${measurement.retention.enabled:false}")
+	private boolean enabled;
+
+	// created is compared against the wall clock, so this assumes epoch milliseconds
+	@Value("${measurement.retention.max-age-ms:2592000000}")
+	private long maxAge;
+
+	@Value("${measurement.retention.interval-ms:3600000}")
+	private long interval;
+
+	@Value("${measurement.retention.delete-batch-size:1000}")
+	private int deleteBatchSize;
+
+	@Value("${measurement.retention.delete-pause-ms:100}")
+	private long deletePauseMillis;
+
+	@Value("${measurement.retention.ttl.enabled:false}")
+	private boolean ttlEnabled;
+
+	@Value("${measurement.retention.ttl.expire-after-seconds:7776000}")
+	private int expireAfterSeconds;
+
+	private volatile long watermark = Long.MIN_VALUE;
+
+	@PostConstruct
+	public void init() {
+		if (interval < 1 || deleteBatchSize < 1) {
+			throw new IllegalStateException("measurement.retention.interval-ms and delete-batch-size must be positive");
+		}
+		if (ttlEnabled) {
+			// the TTL monitor would otherwise delete raw measurements before they are downsampled
+			if (enabled && TimeUnit.SECONDS.toMillis(expireAfterSeconds) <= maxAge) {
+				throw new IllegalStateException("measurement.retention.ttl.expire-after-seconds must exceed max-age-ms");
+			}
+			measurementStore.ensureTtlIndex(expireAfterSeconds);
+		}
+		refreshWatermark();
+	}
+
+	public boolean isTtlEnabled() {
+		return ttlEnabled;
+	}
+
+	/**
+	 * Created values below this have been downsampled; {@link Long#MIN_VALUE} when retention never ran.
+	 */
+	public long getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * Reads the watermark stored in the database, e.g. after the database was switched underneath the
+	 * application; {@link Long#MIN_VALUE} when it has none.
+	 */
+	public void refreshWatermark() {
+		DBObject state = mongoOps.getCollection(STATE_COLLECTION).findOne(new BasicDBObject("_id", STATE_ID));
+		watermark = state == null ? Long.MIN_VALUE : ((Number) state.get("watermark")).longValue();
+	}
+
+	public long floorToInterval(long created) {
+		return Math.floorDiv(created, interval) * interval;
+	}
+
+	/**
+	 * Also picks up watermarks moved by other instances, when retention is disabled here.
+	 */
+	@Scheduled(fixedDelayString = "${measurement.retention.run-interval-ms:3600000}", initialDelayString = "${measurement.retention.run-interval-ms:3600000}")
+	public void scheduledRun() {
+		refreshWatermark();
+		if (enabled) {
+			run(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Downsamples what fell below the age limit at {@code now}, and what arrived below the watermark since
+	 * the last run, removing the raw data it covered. Returns the number of raw documents (buckets in
+	 * bucket storage mode) removed.
+	 */
+	public synchronized long run(long now) {
+		long cutoff = floorToInterval(now - maxAge);
+		long removed = 0;
+		if (watermark != Long.MIN_VALUE) {
+			removed += downsample(Long.MIN_VALUE, watermark, true);
+		}
+		if (cutoff > watermark && !Thread.currentThread().isInterrupted()) {
+			long start = System.currentTimeMillis();
+			removed += downsample(watermark, cutoff, false);
+			if (Thread.currentThread().isInterrupted()) {
+				return removed;
+			}
+			mongoOps.getCollection(STATE_COLLECTION).update(new BasicDBObject("_id", STATE_ID),
+					new BasicDBObject("$set", new BasicDBObject("watermark", cutoff)), true, false);
+			watermark = cutoff;
+			LOGGER.info("Downsampled measurements below {} in {} ms", cutoff, System.currentTimeMillis() - start);
+		}
+		if (watermark != Long.MIN_VALUE) {
+			rollupService.removeBefore(watermark);
+		}
+		if (removed > 0) {
+			LOGGER.info("Removed {} raw documents from {} below {}", removed, measurementStore.getCollection(), watermark);
+		}
+		return removed;
+	}
+
+	/**
+	 * Pipeline run on {@link #COLLECTION} yielding {_id : owner, sum, count} over [{@code from}, {@code to})
+	 * of {@code sensor}. Downsamples cannot be split, so both ends must be multiples of
+	 * {@code measurement.retention.interval-ms}.
+	 *
+	 * @throws IllegalArgumentException when {@code from} or {@code to} is not interval aligned
+	 */
+	public List<DBObject> downsampleTotalsPipeline(String sensor, long from, long to) {
+		if (floorToInterval(from) != from || floorToInterval(to) != to) {
+			throw new IllegalArgumentException("Below the retention watermark " + watermark + " ranges must start and end at multiples of "
+					+ interval + ", not [" + from + ", " + to + ")");
+		}
+		List<DBObject> pipeline = new ArrayList<>();
+		pipeline.add(new BasicDBObject("$match", new BasicDBObject("sensor", sensor)
+				.append("interval", new BasicDBObject("$gte", from).append("$lt", to))));
+		pipeline.add(new BasicDBObject("$group", new BasicDBObject("_id", "$owner")
+				.append("sum", new BasicDBObject("$sum", "$sum"))
+				.append("count", new BasicDBObject("$sum", "$count"))));
+		return pipeline;
+	}
+
+	// Intervals of [from, cutoff) are aggregated together with the ids of the raw documents (and how many of
+	// their measurements) each saw. Complete intervals above the watermark were not downsampled before, so their
+	// aggregates are set, making a redone run idempotent; late arrivals below it are added to what is there.
+	private long downsample(long from, long cutoff, boolean merge) {
+		List<DBObject> pipeline = new ArrayList<>(measurementStore.rangeStages(null, from, cutoff));
+		BasicDBList mod = new BasicDBList();
+		mod.add("$created");
+		mod.add(interval);
+		BasicDBList intervalStart = new BasicDBList();
+		intervalStart.add("$created");
+		intervalStart.add(new BasicDBObject("$mod", mod));
+		pipeline.add(new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject("owner", "$owner")
+				.append("sensor", "$sensor")
+				.append("interval", new BasicDBObject("$subtract", intervalStart))
+				.append("raw", "$_id"))
+				.append("min", new BasicDBObject("$min", "$measuredValue"))
+				.append("max", new BasicDBObject("$max", "$measuredValue"))
+				.append("sum", new BasicDBObject("$sum", "$measuredValue"))
+				.append("count", new BasicDBObject("$sum", 1))));
+		pipeline.add(new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject("owner", "$_id.owner")
+				.append("sensor", "$_id.sensor")
+				.append("interval", "$_id.interval"))
+				.append("min", new BasicDBObject("$min", "$min"))
+				.append("max", new BasicDBObject("$max", "$max"))
+				.append("sum", new BasicDBObject("$sum", "$sum"))
+				.append("count", new BasicDBObject("$sum", "$count"))
+				.append("raw", new BasicDBObject("$push", new BasicDBObject("id", "$_id.raw").append("count", "$count")))));
+		AggregationOptions options = AggregationOptions.builder()
+				.outputMode(AggregationOptions.OutputMode.CURSOR)
+				.allowDiskUse(true)
+				.build();
+		long removed = 0;
+		DBCollection downsamples = mongoOps.getCollection(COLLECTION);
+		for (DBCollection collection : measurementStore.getCollections()) {
+			BulkWriteOperation upserts = downsamples.initializeUnorderedBulkOperation();
+			int batched = 0;
+			Map<Object, Integer> seen = new HashMap<>();
+			try (Cursor cursor = collection.aggregate(pipeline, options)) {
+				while (cursor.hasNext()) {
+					DBObject group = cursor.next();
+					DBObject id = (DBObject) group.get("_id");
+					upserts.find(new BasicDBObject("sensor", id.get("sensor")).append("interval", ((Number) id.get("interval")).longValue())
+							.append("owner", id.get("owner"))).upsert().updateOne(merge ? mergeUpdate(group) : setUpdate(group));
+					for (Object raw : (List<?>) group.get("raw")) {
+						seen.put(((DBObject) raw).get("id"), ((Number) ((DBObject) raw).get("count")).intValue());
+					}
+					// bounded by raw documents rather than groups, a single interval can hold many of them
+					if (seen.size() >= deleteBatchSize || !cursor.hasNext()) {
+						// the downsamples go first, so raw data is never removed before it is counted
+						upserts.execute();
+						upserts = downsamples.initializeUnorderedBulkOperation();
+						List<Map<Object, Integer>> deletes = split(seen);
+						seen.clear();
+						for (int i = 0; i < deletes.size(); i++) {
+							removed += measurementStore.removeSeen(collection, deletes.get(i), cutoff);
+							if ((cursor.hasNext() || i < deletes.size() - 1) && !pause()) {
+								return removed;
+							}
+						}
+					}
+				}
+			}
+		}
+		return removed;
+	}
+
+	// one $in of delete-batch-size ids per delete, far below the 16 MB limit of the query document
+	private List<Map<Object, Integer>> split(Map<Object, Integer> seen) {
+		List<Map<Object, Integer>> deletes = new ArrayList<>();
+		Map<Object, Integer> delete = new HashMap<>();
+		for (Map.Entry<Object, Integer> entry : seen.entrySet()) {
+			delete.put(entry.getKey(), entry.getValue());
+			if (delete.size() == deleteBatchSize) {
+				deletes.add(delete);
+				delete = new HashMap<>();
+			}
+		}
+		if (!delete.isEmpty()) {
+			deletes.add(delete);
+		}
+		return deletes;
+	}
+
+	private static DBObject setUpdate(DBObject group) {
+		return new BasicDBObject("$set", new BasicDBObject("min", ((Number) group.get("min")).longValue())
+				.append("max", ((Number) group.get("max")).longValue())
+				.append("sum", ((Number) group.get("sum")).longValue())
+				.append("count", ((Number) group.get("count")).longValue()));
+	}
+
+	private static DBObject mergeUpdate(DBObject group) {
+		return new BasicDBObject("$min", new BasicDBObject("min", ((Number) group.get("min")).longValue()))
+				.append("$max", new BasicDBObject("max", ((Number) group.get("max")).longValue()))
+				.append("$inc", new BasicDBObject("sum", ((Number) group.get("sum")).longValue())
+						.append("count", ((Number) group.get("count")).longValue()));
+	}
+
+	private boolean pause() {
+		try {
+			Thread.sleep(deletePauseMillis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+}
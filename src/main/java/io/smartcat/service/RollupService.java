@@ -0,0 +1,305 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.AggregationOutput;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.domain.MeasurementRollup;
+
+/**
+ * Maintains per owner/sensor/bucket sums and counts of measured values as measurements are ingested, so
+ * averages over whole buckets are read from {@code measurement_rollups} instead of aggregating raw rows.
+ * Only writes published as {@link MeasurementsIngestedEvent} are rolled up, so the rollups are rebuilt from
+ * the raw data when the application starts, which folds in whatever an earlier run or a write around
+ * {@link MeasurementService} left out; reports read raw data until that rebuild has finished.
+ */
+@Service
+public class RollupService {
+
+	public static final String COLLECTION = "measurement_rollups";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RollupService.class);
+
+	private static final int DUPLICATE_KEY = 11000;
+
+	private static final int REBUILD_BATCH_SIZE = 1000;
+
+	@Autowired
+	private MongoOperations mongoOps;
+
+	@Autowired
+	private MeasurementStore measurementStore;
+
+	@Value("${measurement.rollup.enabled:true}")
+	private boolean enabled;
+
+	@Value("${measurement.rollup.bucket-width:3600000}")
+	private long bucketWidth;
+
+	@Value("${measurement.rollup.rebuild-on-startup:true}")
+	private boolean rebuildOnStartup;
+
+	// writes hold the read lock from their raw insert until their increments are applied, a rebuild the write lock
+	private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+	// set once the rollups are known to cover all raw data
+	private volatile boolean complete;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Whether whole buckets may be read from the rollups instead of the raw data.
+	 */
+	public boolean isServing() {
+		return enabled && complete;
+	}
+
+	/**
+	 * With {@code measurement.rollup.rebuild-on-startup=false} the stored rollups are trusted as they are.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuildOnStartup() {
+		if (!enabled) {
+			return;
+		}
+		if (rebuildOnStartup) {
+			rebuild();
+		} else {
+			complete = true;
+		}
+	}
+
+	/**
+	 * Runs a write of raw measurements including the publication of its {@link MeasurementsIngestedEvent}.
+	 * Writes run concurrently with each other, but not with {@link #rebuild()}: an increment landing on the
+	 * collection a rebuild is about to replace would be lost, and one for a measurement the rebuild has
+	 * already aggregated would be counted twice. Ingest therefore pauses while a rebuild runs.
+	 */
+	public void ingest(Runnable write) {
+		if (!enabled) {
+			write.run();
+			return;
+		}
+		rebuildLock.readLock().lock();
+		try {
+			write.run();
+		} finally {
+			rebuildLock.readLock().unlock();
+		}
+	}
+
+	public long floorToBucket(long created) {
+		return Math.floorDiv(created, bucketWidth) * bucketWidth;
+	}
+
+	public long ceilToBucket(long created) {
+		long floor = floorToBucket(created);
+		return floor == created ? floor : floor + bucketWidth;
+	}
+
+	/**
+	 * Removes the rollups of buckets that end at or before {@code created}, e.g. the retention watermark
+	 * below which reports read downsamples instead.
+	 */
+	public void removeBefore(long created) {
+		mongoOps.getCollection(COLLECTION).remove(new BasicDBObject("bucket", new BasicDBObject("$lte", created - bucketWidth)));
+	}
+
+	@EventListener
+	public void onMeasurementsIngested(MeasurementsIngestedEvent event) {
+		if (!enabled) {
+			return;
+		}
+		Map<BucketKey, SumAndCount> increments = new HashMap<>();
+		for (Measurement measurement : event.getMeasurements()) {
+			BucketKey key = new BucketKey(measurement.getOwner(), measurement.getSensor(), floorToBucket(measurement.getCreated()));
+			increments.computeIfAbsent(key, k -> new SumAndCount()).add(measurement.getMeasuredValue(), 1);
+		}
+		List<Pair<Query, Update>> upserts = new ArrayList<>(increments.size());
+		increments.forEach((key, increment) -> upserts.add(Pair.of(
+				Query.query(Criteria.where("sensor").is(key.sensor).and("bucket").is(key.bucket).and("owner").is(key.owner)),
+				new Update().inc("sum", increment.getSum()).inc("count", increment.getCount()))));
+		upsert(upserts, true);
+	}
+
+	/**
+	 * Two writers creating the same bucket concurrently race on the unique index; the loser's
+	 * increment is retried once, when the bucket exists and the upsert turns into an update.
+	 */
+	private void upsert(List<Pair<Query, Update>> upserts, boolean retryDuplicates) {
+		if (upserts.isEmpty()) {
+			return;
+		}
+		try {
+			mongoOps.bulkOps(BulkMode.UNORDERED, MeasurementRollup.class).upsert(upserts).execute();
+		} catch (BulkOperationException e) {
+			List<Pair<Query, Update>> retries = new ArrayList<>();
+			for (BulkWriteError error : e.getErrors()) {
+				if (!retryDuplicates || error.getCode() != DUPLICATE_KEY) {
+					throw e;
+				}
+				retries.add(upserts.get(error.getIndex()));
+			}
+			upsert(retries, false);
+		}
+	}
+
+	/**
+	 * Adds the totals of buckets in [{@code fromBucket}, {@code toBucket}) to {@code totals}, keyed by owner.
+	 */
+	public void addBucketTotals(String sensor, long fromBucket, long toBucket, Map<String, SumAndCount> totals) {
+		AggregationOutput output = mongoOps.getCollection(COLLECTION).aggregate(bucketTotalsPipeline(sensor, fromBucket, toBucket));
+		for (DBObject dbObject : output.results()) {
+			totals.computeIfAbsent((String) dbObject.get("_id"), owner -> new SumAndCount())
+					.add(((Number) dbObject.get("sum")).longValue(), ((Number) dbObject.get("count")).longValue());
+		}
+	}
+
+	/**
+	 * Pipeline behind {@link #addBucketTotals}, run on {@link #COLLECTION}; yields {_id : owner, sum, count}.
+	 */
+	public List<DBObject> bucketTotalsPipeline(String sensor, long fromBucket, long toBucket) {
+		DBObject match = new BasicDBObject("$match", new BasicDBObject("sensor", sensor)
+				.append("bucket", new BasicDBObject("$gte", fromBucket).append("$lt", toBucket)));
+		DBObject group = new BasicDBObject("$group", new BasicDBObject("_id", "$owner")
+				.append("sum", new BasicDBObject("$sum", "$sum"))
+				.append("count", new BasicDBObject("$sum", "$count")));
+		List<DBObject> pipeline = new ArrayList<>();
+		pipeline.add(match);
+		pipeline.add(group);
+		return pipeline;
+	}
+
+	/**
+	 * Recomputes all rollups from the raw measurements (or buckets), e.g. after data was loaded without publishing
+	 * {@link MeasurementsIngestedEvent}. Negative {@code created} values are not supported here. With several
+	 * measurement partitions each one is aggregated and the results are copied to the primary; owners do not
+	 * span partitions, so no bucket gets results from two of them.
+	 */
+	public void rebuild() {
+		rebuildLock.writeLock().lock();
+		try {
+			long start = System.nanoTime();
+			aggregateRollups();
+			complete = true;
+			LOGGER.info("Rebuilt rollups in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		} finally {
+			rebuildLock.writeLock().unlock();
+		}
+	}
+
+	private void aggregateRollups() {
+		BasicDBList bucket = new BasicDBList();
+		bucket.add("$created");
+		BasicDBList mod = new BasicDBList();
+		mod.add("$created");
+		mod.add(bucketWidth);
+		bucket.add(new BasicDBObject("$mod", mod));
+
+		DBObject group = new BasicDBObject("$group", new BasicDBObject("_id", new BasicDBObject("owner", "$owner")
+				.append("sensor", "$sensor")
+				.append("bucket", new BasicDBObject("$subtract", bucket)))
+				.append("sum", new BasicDBObject("$sum", "$measuredValue"))
+				.append("count", new BasicDBObject("$sum", 1)));
+		DBObject project = new BasicDBObject("$project", new BasicDBObject("_id", 0)
+				.append("owner", "$_id.owner")
+				.append("sensor", "$_id.sensor")
+				.append("bucket", "$_id.bucket")
+				.append("sum", "$sum")
+				.append("count", "$count"));
+		List<DBObject> pipeline = new ArrayList<>(measurementStore.rangeStages(null, Long.MIN_VALUE, Long.MAX_VALUE));
+		pipeline.add(group);
+		pipeline.add(project);
+		List<DBCollection> rawCollections = measurementStore.getCollections();
+		if (rawCollections.size() == 1) {
+			pipeline.add(new BasicDBObject("$out", COLLECTION));
+			rawCollections.get(0).aggregate(pipeline);
+			return;
+		}
+		// $out only writes to the instance the aggregation runs on, so the partitions' results are collected in a
+		// temporary collection that replaces the rollups in one rename, as $out does; reports never see it half built
+		DBCollection rebuilt = mongoOps.getCollection(COLLECTION + "_rebuild");
+		rebuilt.drop();
+		AggregationOptions options = AggregationOptions.builder()
+				.outputMode(AggregationOptions.OutputMode.CURSOR)
+				.allowDiskUse(true)
+				.build();
+		for (DBCollection rawCollection : rawCollections) {
+			List<DBObject> rollups = new ArrayList<>();
+			try (Cursor cursor = rawCollection.aggregate(pipeline, options)) {
+				while (cursor.hasNext()) {
+					rollups.add(cursor.next());
+					if (rollups.size() == REBUILD_BATCH_SIZE || !cursor.hasNext()) {
+						rebuilt.insert(rollups);
+						rollups.clear();
+					}
+				}
+			}
+		}
+		// the rename drops the indexes of the replaced collection, see MeasurementRollup
+		rebuilt.createIndex(new BasicDBObject("sensor", 1).append("bucket", 1).append("owner", 1),
+				new BasicDBObject("name", "sensor_bucket_owner").append("unique", true));
+		rebuilt.rename(COLLECTION, true);
+	}
+
+	private static final class BucketKey {
+
+		private final String owner;
+		private final String sensor;
+		private final long bucket;
+
+		private BucketKey(String owner, String sensor, long bucket) {
+			this.owner = owner;
+			this.sensor = sensor;
+			this.bucket = bucket;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof BucketKey)) {
+				return false;
+			}
+			BucketKey other = (BucketKey) o;
+			return bucket == other.bucket && Objects.equals(owner, other.owner) && Objects.equals(sensor, other.sensor);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(owner, sensor, bucket);
+		}
+
+	}
+
+}
@@ -0,0 +1,114 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.clearspring.analytics.stream.cardinality.CardinalityMergeException;
+import com.clearspring.analytics.stream.cardinality.HyperLogLog;
+import com.clearspring.analytics.stream.frequency.CountMinSketch;
+import com.clearspring.analytics.stream.frequency.FrequencyMergeException;
+
+/**
+ * Fixed-size summary of the measurements of one sensor: {@link MeasurementStats} for the values, a
+ * HyperLogLog over owners for the number of distinct owners and a count-min sketch over owners for the
+ * heaviest ones. Count-min can only estimate the count of an owner it is asked about, so the sketch also
+ * keeps the {@code candidates} owners with the highest estimates seen so far; top owners are picked among
+ * those. Sketches built with the same parameters over disjoint data can be merged. Not thread safe.
+ */
+public class SensorSketch {
+
+	// all sketches hash owners the same way, otherwise their count-min tables could not be merged
+	private static final int SEED = 7;
+
+	private final int candidates;
+
+	private final MeasurementStats stats = new MeasurementStats();
+	private final HyperLogLog owners;
+	private CountMinSketch ownerCounts;
+	private final Map<String, Long> heaviest = new HashMap<>();
+
+	/**
+	 * @param log2m HyperLogLog registers as a power of two; the relative error is about 1.04 / sqrt(2^log2m)
+	 * @param epsilon count-min over-estimate as a fraction of the total count
+	 * @param confidence probability of staying within {@code epsilon}
+	 * @param candidates owners tracked as top owner candidates
+	 */
+	public SensorSketch(int log2m, double epsilon, double confidence, int candidates) {
+		this.candidates = candidates;
+		this.owners = new HyperLogLog(log2m);
+		this.ownerCounts = new CountMinSketch(epsilon, confidence, SEED);
+	}
+
+	/**
+	 * Adds {@code count} measurements of {@code owner}; {@code values} are their measured values.
+	 */
+	public void add(String owner, long[] values, int count) {
+		for (int i = 0; i < count; i++) {
+			stats.add(values[i]);
+		}
+		owners.offer(owner);
+		ownerCounts.add(owner, count);
+		offerCandidate(owner, ownerCounts.estimateCount(owner));
+	}
+
+	/**
+	 * Folds {@code other} into this sketch.
+	 */
+	public void merge(SensorSketch other) {
+		stats.merge(other.stats);
+		try {
+			owners.addAll(other.owners);
+			ownerCounts = CountMinSketch.merge(ownerCounts, other.ownerCounts);
+		} catch (CardinalityMergeException | FrequencyMergeException e) {
+			throw new IllegalArgumentException("Sketches were built with different parameters", e);
+		}
+		// estimates of the candidates of both sides change with the merged counts, so all are re-evaluated
+		List<String> offered = new ArrayList<>(heaviest.keySet());
+		offered.addAll(other.heaviest.keySet());
+		heaviest.clear();
+		for (String owner : offered) {
+			offerCandidate(owner, ownerCounts.estimateCount(owner));
+		}
+	}
+
+	public MeasurementStats getStats() {
+		return stats;
+	}
+
+	public long getDistinctOwners() {
+		return owners.cardinality();
+	}
+
+	/**
+	 * Up to {@code limit} owners with the highest estimated measurement counts, highest first. Estimates
+	 * never undercount; they over-estimate by at most {@code epsilon} times the total count with
+	 * probability {@code confidence}.
+	 */
+	public List<OwnerCountDTO> topOwners(int limit) {
+		List<OwnerCountDTO> top = new ArrayList<>(heaviest.size());
+		heaviest.forEach((owner, count) -> top.add(new OwnerCountDTO(owner, count)));
+		top.sort(Comparator.comparingLong(OwnerCountDTO::getEstimatedCount).reversed().thenComparing(OwnerCountDTO::getOwner));
+		return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+	}
+
+	private void offerCandidate(String owner, long estimate) {
+		if (heaviest.containsKey(owner) || heaviest.size() < candidates) {
+			heaviest.put(owner, estimate);
+			return;
+		}
+		Map.Entry<String, Long> lightest = null;
+		for (Map.Entry<String, Long> candidate : heaviest.entrySet()) {
+			if (lightest == null || candidate.getValue() < lightest.getValue()) {
+				lightest = candidate;
+			}
+		}
+		if (estimate > lightest.getValue()) {
+			heaviest.remove(lightest.getKey());
+			heaviest.put(owner, estimate);
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package io.smartcat.service;
+
+public class SensorStatsDTO {
+	
+	private String sensor;
+	private String owner;
+	private long bucketStart;
+	private long count;
+	private double avg;
+	private long min;
+	private long max;
+	private double stdDev;
+	private double p50;
+	private double p95;
+	private double p99;
+	
+	public SensorStatsDTO() {
+	}
+	
+	public SensorStatsDTO(String sensor, String owner, long bucketStart, MeasurementStats stats) {
+		this.sensor = sensor;
+		this.owner = owner;
+		this.bucketStart = bucketStart;
+		this.count = stats.getCount();
+		this.avg = stats.getMean();
+		this.min = stats.getMin();
+		this.max = stats.getMax();
+		this.stdDev = stats.getStdDev();
+		this.p50 = stats.quantile(0.5);
+		this.p95 = stats.quantile(0.95);
+		this.p99 = stats.quantile(0.99);
+	}
+	
+	public String getSensor() {
+		return sensor;
+	}
+	public void setSensor(String sensor) {
+		this.sensor = sensor;
+	}
+	/**
+	 * Owner the row is for, or null when the report is not grouped by owner.
+	 */
+	public String getOwner() {
+		return owner;
+	}
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	/**
+	 * Start of the time bucket, or the start of the report range when it is not bucketed.
+	 */
+	public long getBucketStart() {
+		return bucketStart;
+	}
+	public void setBucketStart(long bucketStart) {
+		this.bucketStart = bucketStart;
+	}
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long count) {
+		this.count = count;
+	}
+	public double getAvg() {
+		return avg;
+	}
+	public void setAvg(double avg) {
+		this.avg = avg;
+	}
+	public long getMin() {
+		return min;
+	}
+	public void setMin(long min) {
+		this.min = min;
+	}
+	public long getMax() {
+		return max;
+	}
+	public void setMax(long max) {
+		this.max = max;
+	}
+	public double getStdDev() {
+		return stdDev;
+	}
+	public void setStdDev(double stdDev) {
+		this.stdDev = stdDev;
+	}
+	public double getP50() {
+		return p50;
+	}
+	public void setP50(double p50) {
+		this.p50 = p50;
+	}
+	public double getP95() {
+		return p95;
+	}
+	public void setP95(double p95) {
+		this.p95 = p95;
+	}
+	public double getP99() {
+		return p99;
+	}
+	public void setP99(double p99) {
+		this.p99 = p99;
+	}
+
+}
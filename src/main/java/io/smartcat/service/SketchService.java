@@ -0,0 +1,232 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import io.smartcat.domain.Measurement;
+
+/**
+ * Keeps a {@link SensorSketch} per sensor and time bucket of {@code measurement.sketch.bucket-width},
+ * updated from {@link MeasurementsIngestedEvent}, and answers approximate reports by merging the buckets
+ * of a range. Memory is bounded by {@code max-sensors} times {@code retention-buckets}, whatever the
+ * number of owners or measurements: buckets are retained by wall clock ({@code created} is epoch
+ * milliseconds), measurements created more than {@code max-future-ms} ahead of it are not sketched, and
+ * sensors beyond {@code max-sensors} are not tracked. Sketches live in memory only: they cover
+ * measurements written through {@link MeasurementService#saveAll} since the application started, which
+ * every row reports along with the part of its range the retained buckets cover.
+ */
+@Service
+public class SketchService {
+
+	@Value("${measurement.sketch.enabled:true}")
+	private boolean enabled;
+
+	@Value("${measurement.sketch.bucket-width:3600000}")
+	private long bucketWidth;
+
+	// buckets older than the current bucket minus retention-buckets are dropped
+	@Value("${measurement.sketch.retention-buckets:168}")
+	private int retentionBuckets;
+
+	@Value("${measurement.sketch.max-future-ms:300000}")
+	private long maxFutureMillis;
+
+	@Value("${measurement.sketch.max-sensors:1000}")
+	private int maxSensors;
+
+	@Value("${measurement.sketch.hll-log2m:12}")
+	private int log2m;
+
+	// with 0.01 and 0.99 the count-min table is 7 x 200 counters, about 11 KB per sensor and bucket
+	@Value("${measurement.sketch.cms-epsilon:0.01}")
+	private double epsilon;
+
+	@Value("${measurement.sketch.cms-confidence:0.99}")
+	private double confidence;
+
+	@Value("${measurement.sketch.top-candidates:100}")
+	private int candidates;
+
+	private final ConcurrentMap<String, ConcurrentNavigableMap<Long, SensorSketch>> sketches = new ConcurrentHashMap<>();
+
+	// measurements ingested before this wall clock time are not in the sketches
+	private volatile long ingestedSince;
+
+	@PostConstruct
+	public void validate() {
+		if (bucketWidth < 1) {
+			throw new IllegalStateException("measurement.sketch.bucket-width must be positive: " + bucketWidth);
+		}
+		if (candidates < 1) {
+			throw new IllegalStateException("measurement.sketch.top-candidates must be positive: " + candidates);
+		}
+		if (retentionBuckets < 1 || maxSensors < 1) {
+			throw new IllegalStateException("measurement.sketch.retention-buckets and max-sensors must be positive");
+		}
+		if (maxFutureMillis < 0) {
+			throw new IllegalStateException("measurement.sketch.max-future-ms must not be negative: " + maxFutureMillis);
+		}
+		ingestedSince = System.currentTimeMillis();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Drops every sketch and counts ingest from now on, e.g. after the database was switched underneath the
+	 * application.
+	 */
+	public void clear() {
+		sketches.clear();
+		ingestedSince = System.currentTimeMillis();
+	}
+
+	public long floorToBucket(long created) {
+		return Math.floorDiv(created, bucketWidth) * bucketWidth;
+	}
+
+	@EventListener
+	public void onMeasurementsIngested(MeasurementsIngestedEvent event) {
+		if (enabled) {
+			add(event.getMeasurements(), System.currentTimeMillis());
+		}
+	}
+
+	void add(List<Measurement> measurements, long now) {
+		long retainedFrom = retainedFrom(now);
+		long latest = now + maxFutureMillis;
+		Map<BucketKey, Map<String, ValueBuffer>> batch = new HashMap<>();
+		for (Measurement measurement : measurements) {
+			// far-future timestamps would keep their bucket alive, past ones would be dropped right away
+			if (measurement.getCreated() < retainedFrom || measurement.getCreated() > latest) {
+				continue;
+			}
+			batch.computeIfAbsent(new BucketKey(measurement.getSensor(), floorToBucket(measurement.getCreated())), key -> new HashMap<>())
+					.computeIfAbsent(measurement.getOwner(), owner -> new ValueBuffer())
+					.add(measurement.getMeasuredValue());
+		}
+		batch.forEach((key, byOwner) -> {
+			ConcurrentNavigableMap<Long, SensorSketch> buckets = sketches.get(key.sensor);
+			if (buckets == null) {
+				// checked before the insert, so concurrent batches may overshoot by a few sensors
+				if (sketches.size() >= maxSensors) {
+					return;
+				}
+				buckets = sketches.computeIfAbsent(key.sensor, sensor -> new ConcurrentSkipListMap<>());
+			}
+			SensorSketch sketch = buckets.computeIfAbsent(key.bucket, bucket -> new SensorSketch(log2m, epsilon, confidence, candidates));
+			synchronized (sketch) {
+				byOwner.forEach((owner, values) -> sketch.add(owner, values.values, values.size));
+			}
+		});
+		expire(retainedFrom);
+	}
+
+	// drops expired buckets of every sensor, and sensors left without buckets, so idle sensors age out as well
+	private void expire(long retainedFrom) {
+		sketches.values().removeIf(buckets -> {
+			buckets.headMap(retainedFrom).clear();
+			return buckets.isEmpty();
+		});
+	}
+
+	private long retainedFrom(long now) {
+		return floorToBucket(now) - retentionBuckets * bucketWidth;
+	}
+
+	/**
+	 * Approximate statistics, distinct owners and up to {@code topOwners} heaviest owners per sensor over
+	 * [from, to) rounded out to whole buckets, for {@code sensors} or every sketched sensor when null.
+	 * Sensors without sketched measurements in the range get no row. Rows come sorted by sensor.
+	 */
+	public List<ApproximateSensorStatsDTO> approximate(Collection<String> sensors, long from, long to, int topOwners) {
+		return approximate(sensors, from, to, topOwners, System.currentTimeMillis());
+	}
+
+	List<ApproximateSensorStatsDTO> approximate(Collection<String> sensors, long from, long to, int topOwners, long now) {
+		long bucketFrom = floorToBucket(from);
+		long bucketTo = floorToBucket(to) == to ? to : floorToBucket(to) + bucketWidth;
+		// buckets expire on ingest, so without recent writes the map may still hold older ones
+		long coveredFrom = Math.min(bucketTo, Math.max(bucketFrom, retainedFrom(now)));
+		Collection<String> selected = sensors == null ? sketches.keySet() : sensors;
+		List<ApproximateSensorStatsDTO> rows = new ArrayList<>();
+		for (String sensor : selected) {
+			ConcurrentNavigableMap<Long, SensorSketch> buckets = sketches.get(sensor);
+			if (buckets == null) {
+				continue;
+			}
+			SensorSketch merged = new SensorSketch(log2m, epsilon, confidence, candidates);
+			for (SensorSketch sketch : buckets.subMap(coveredFrom, bucketTo).values()) {
+				synchronized (sketch) {
+					merged.merge(sketch);
+				}
+			}
+			if (merged.getStats().getCount() > 0) {
+				ApproximateSensorStatsDTO row = new ApproximateSensorStatsDTO(sensor, bucketFrom, bucketTo, merged, topOwners);
+				row.setCoveredFrom(coveredFrom);
+				row.setIngestedSince(ingestedSince);
+				rows.add(row);
+			}
+		}
+		rows.sort(Comparator.comparing(ApproximateSensorStatsDTO::getSensor));
+		return rows;
+	}
+
+	private static final class ValueBuffer {
+
+		private long[] values = new long[8];
+		private int size;
+
+		private void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+	}
+
+	private static final class BucketKey {
+
+		private final String sensor;
+		private final long bucket;
+
+		private BucketKey(String sensor, long bucket) {
+			this.sensor = sensor;
+			this.bucket = bucket;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof BucketKey)) {
+				return false;
+			}
+			BucketKey other = (BucketKey) o;
+			return bucket == other.bucket && Objects.equals(sensor, other.sensor);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sensor, bucket);
+		}
+
+	}
+
+}
@@ -0,0 +1,28 @@
+package io.smartcat.service;
+
+/**
+ * Mergeable partial result of an average: exact sums and counts from different sources (rollup buckets,
+ * raw edge scans) can be added before the division.
+ */
+public class SumAndCount {
+
+	private long sum;
+	private long count;
+
+	public SumAndCount add(long sum, long count) {
+		this.sum += sum;
+		this.count += count;
+		return this;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+	public long getCount() {
+		return count;
+	}
+	public double getAverage() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+}
@@ -1,30 +1,38 @@
 package io.smartcat;
 
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import io.smartcat.domain.Measurement;
-import io.smartcat.ranger.AggregatedObjectGenerator;
+import io.smartcat.fixture.Dataset;
+import io.smartcat.fixture.DatasetFixtures;
+import io.smartcat.fixture.FixtureConfiguration;
 import io.smartcat.ranger.ObjectGenerator;
 import io.smartcat.repository.MeasurementRepository;
 import io.smartcat.service.AvgHeartBeatRateDTO;
 import io.smartcat.service.MeasurementService;
 import io.smartcat.service.ReportService;
 
+// every test runs in a database of its own, see DatasetFixtures
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@Import(FixtureConfiguration.class)
 public class RangerDemoApplicationTests {
 	
-	@Autowired
-	private MongoOperations mongoOps;
+	private static final String HBM = "Heart Beat Monitor";
 	
 	@Autowired
 	private MeasurementService measurementService;
@@ -35,9 +43,22 @@ public class RangerDemoApplicationTests {
 	@Autowired
 	private ReportService reportService;
 	
+	@Autowired
+	private DatasetFixtures fixtures;
+	
+	@Before
+	public void useFreshDatabase() {
+		fixtures.useFreshDatabase();
+	}
+	
+	@After
+	public void dropDatabase() {
+		fixtures.dropDatabase();
+	}
+	
 	@Test
-	public void should_return_newest_50_measurements_for_selected_user_and_sensor() {
-		createTestMeasurements();
+	public void should_return_newest_50_measurements_for_selected_user_and_sensor() throws Exception {
+		fixtures.restore(NEWEST_MEASUREMENTS);
 		List<Measurement> result = measurementService.getNewestMeasurementsForUserAndSensor("charlie", "thermometer", 50);
 		
 		// validate that 50 results are returned
@@ -49,6 +70,10 @@ public class RangerDemoApplicationTests {
 		// validate that sensor is "thermometer"
 		result.forEach(measurement -> Assert.assertEquals("thermometer", measurement.getSensor()));
 		
+		// validate that whole documents are returned, whether from the latest index or from Mongo
+		result.forEach(measurement -> Assert.assertNotNull(measurement.getId()));
+		result.forEach(measurement -> Assert.assertEquals(1, measurement.getVersion()));
+		
 		// validate that created is between 1000 and 1100
 		result.forEach(measurement -> 
 			Assert.assertTrue(measurement.getCreated() >= 1000 && measurement.getCreated() < 1100));
@@ -61,55 +86,36 @@ public class RangerDemoApplicationTests {
 		}
 	}
 	
-	private void createTestMeasurements() {
-		System.out.println("Starting data generation...");
-		long start = System.currentTimeMillis();
-		
-		ObjectGenerator<Measurement> newestMeasurementsForCharlieAndThermometer = new ObjectGenerator.Builder<Measurement>(Measurement.class)
-				.withValues("owner", "charlie")
-				.withRanges("created", 1000L, 1100L)
-				.withValues("sensor", "thermometer")
-				.withValues("version", (short) 1)
-				.toBeGenerated(50).build();
-		
-		ObjectGenerator<Measurement> overlappingMeasurementTimestampOtherOwners = new ObjectGenerator.Builder<Measurement>(Measurement.class)
-				.withValues("owner", "alice", "bob", "david", "emma", "flint") // note: no "charlie"
-				.withRanges("created", 1000L, 1100L)
-				.withValues("sensor",  "heart-rate-monitor", "accelerometer", "hygrometer", "thermometer")
-				.toBeGenerated(1000).build();
-		
-		ObjectGenerator<Measurement> newerDataForCharlieAndNonThermometer = new ObjectGenerator.Builder<Measurement>(Measurement.class)
-				.withValues("owner", "charlie")
-				.withRanges("created", 1100L, 1200L)
-				.withValues("sensor", "heart-rate-monitor", "accelerometer", "hygrometer")
-				.toBeGenerated(1000).build();
-		
-		ObjectGenerator<Measurement> oldDataForCharlie = new ObjectGenerator.Builder<Measurement>(Measurement.class)
-				.withValues("owner", "charlie")
-				.withRanges("created", 500L, 1000L)
-				.withValues("sensor", "heart-rate-monitor", "accelerometer", "hygrometer", "thermometer")
-				.toBeGenerated(1000).build();
-		
-        AggregatedObjectGenerator<Measurement> aggregatedObjectGenerator = new AggregatedObjectGenerator.Builder<Measurement>()
-                .withObjectGenerator(newestMeasurementsForCharlieAndThermometer)
-                .withObjectGenerator(overlappingMeasurementTimestampOtherOwners)
-                .withObjectGenerator(oldDataForCharlie)
-                .withObjectGenerator(newerDataForCharlieAndNonThermometer)
-                .build();
-        
-        List<Measurement> measurements = aggregatedObjectGenerator.generateAll();
-		long end = System.currentTimeMillis();
-		System.out.println("Data generated in: " + (end - start)/1000 + " seconds");
-		System.out.println("Saving data in db...");
-		mongoOps.insertAll(measurements);
-		long endSave = System.currentTimeMillis();
-		System.out.println("Data saved in db in: " + (endSave - end)/1000 + " seconds");
-		
-	}
+	private static final Dataset NEWEST_MEASUREMENTS = Dataset.named("newest-measurements", 1)
+			// newest measurements for charlie and thermometer
+			.with(Measurement.class, 50, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("owner", "charlie")
+					.withRanges("created", 1000L, 1100L)
+					.withValues("sensor", "thermometer")
+					.withValues("version", (short) 1)
+					.toBeGenerated(count).build())
+			// overlapping measurement timestamps of other owners
+			.with(Measurement.class, 1000, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("owner", "alice", "bob", "david", "emma", "flint") // note: no "charlie"
+					.withRanges("created", 1000L, 1100L)
+					.withValues("sensor",  "heart-rate-monitor", "accelerometer", "hygrometer", "thermometer")
+					.toBeGenerated(count).build())
+			// old data for charlie
+			.with(Measurement.class, 1000, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("owner", "charlie")
+					.withRanges("created", 500L, 1000L)
+					.withValues("sensor", "heart-rate-monitor", "accelerometer", "hygrometer", "thermometer")
+					.toBeGenerated(count).build())
+			// newer data for charlie and non thermometer
+			.with(Measurement.class, 1000, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("owner", "charlie")
+					.withRanges("created", 1100L, 1200L)
+					.withValues("sensor", "heart-rate-monitor", "accelerometer", "hygrometer")
+					.toBeGenerated(count).build());
 	
 	@Test
-	public void avg_heart_beat_should_return_correct_results() {
-		createAverageHeartBeatData();
+	public void avg_heart_beat_should_return_correct_results() throws Exception {
+		fixtures.restore(AVERAGE_HEART_BEAT);
 		List<AvgHeartBeatRateDTO> result = reportService.calcAvgHeartBeatRate(100, 110);
 		Assert.assertEquals(2, result.size());
 		for (AvgHeartBeatRateDTO dto : result) {
@@ -122,86 +128,76 @@ public class RangerDemoApplicationTests {
 		}
 	}
 
+	@Test
+	public void avg_heart_beat_async_should_match_blocking_results() throws Exception {
+		fixtures.restore(AVERAGE_HEART_BEAT);
+		Map<String, Double> expected = new HashMap<>();
+		reportService.calcAvgHeartBeatRate(100, 110).forEach(dto -> expected.put(dto.getUsername(), dto.getAvgHeartBeatRate()));
+		Map<String, Double> actual = new HashMap<>();
+		reportService.calcAvgHeartBeatRateAsync(100, 110).get(10, TimeUnit.SECONDS)
+				.forEach(dto -> actual.put(dto.getUsername(), dto.getAvgHeartBeatRate()));
+		
+		Assert.assertEquals(expected, actual);
+	}
+
 	// 1. make sure average is calculated correctly - the tricky part, small number of measurements for one user only?
 	// 	avg for alex = 61; avg for bob = 71
 	// 2. create other sensors in correct time window
 	// 3. create hbm data in wrong time window (before and after)
 	// 4. 
-	private void createAverageHeartBeatData() {
-//		String hbm = "Heart Beat Monitor";
-//		RandomBuilder<Measurement> measurmentsBefore = new RandomBuilder<>(Measurement.class);
-//		measurmentsBefore
-//			.randomFrom("sensor", hbm, "a sensor", "b sensor", "c sensor") 
-//			.randomFrom("owner", "alex", "bob", "charlie", "david")
-//			.randomFromRange("created", 90L, 100L)
-//			.randomFromRange("measuredValue", 30L, 121L)
-//			.toBeBuilt(500);
-//		
-//		RandomBuilder<Measurement> measurmentsAfter = new RandomBuilder<>(Measurement.class);
-//		measurmentsAfter
-//			.randomFrom("sensor", hbm, "a sensor", "b sensor", "c sensor") 
-//			.randomFrom("owner", "alex", "bob", "charlie", "david")
-//			.randomFromRange("created", 110L, 120L)
-//			.randomFromRange("measuredValue", 30L, 121L)
-//			.toBeBuilt(500);
-//		
-//		RandomBuilder<Measurement> otherSensorsInCorrectTimeRange = new RandomBuilder<>(Measurement.class);
-//		otherSensorsInCorrectTimeRange
-//			.randomFrom("sensor", "a sensor", "b sensor", "c sensor") 
-//			.randomFrom("owner", "alex", "bob", "charlie", "david")
-//			.randomFromRange("created", 100L, 110L)
-//			.randomFromRange("measuredValue", 30L, 121L)
-//			.toBeBuilt(500);
-//		
-//		RandomBuilder<Measurement> dataOfInterestForAlex1 = new RandomBuilder<>(Measurement.class);
-//		dataOfInterestForAlex1
-//			.randomFrom("sensor", hbm) 
-//			.randomFrom("owner", "alex")
-//			.randomFromRange("created", 100L, 110L)
-//			.randomFromRange("measuredValue", 60L, 61L)
-//			.toBeBuilt(1);
-//		
-//		RandomBuilder<Measurement> dataOfInterestForAlex2 = new RandomBuilder<>(Measurement.class);
-//		dataOfInterestForAlex2
-//			.randomFrom("sensor", hbm) 
-//			.randomFrom("owner", "alex")
-//			.randomFromRange("created", 100L, 110L)
-//			.randomFromRange("measuredValue", 62L, 63L)
-//			.toBeBuilt(1);
-//		
-//		RandomBuilder<Measurement> dataOfInterestForBob = new RandomBuilder<>(Measurement.class);
-//		dataOfInterestForBob
-//			.randomFrom("sensor", hbm) 
-//			.randomFrom("owner", "bob")
-//			.randomFromRange("created", 100L, 110L)
-//			.randomFromRange("measuredValue", 70L, 71L)
-//			.toBeBuilt(1);
-//		
-//		RandomBuilder<Measurement> dataOfInterestForBob2 = new RandomBuilder<>(Measurement.class);
-//		dataOfInterestForBob2
-//			.randomFrom("sensor", hbm) 
-//			.randomFrom("owner", "bob")
-//			.randomFromRange("created", 100L, 110L)
-//			.randomFromRange("measuredValue", 72L, 73L)
-//			.toBeBuilt(1);
-//		
-//		BuildRunner<Measurement> runner = new BuildRunner<>();
-//		runner.addBuilder(measurmentsBefore);
-//		runner.addBuilder(measurmentsAfter);
-//		runner.addBuilder(otherSensorsInCorrectTimeRange);
-//		runner.addBuilder(dataOfInterestForAlex1);
-//		
-//		runner.addBuilder(dataOfInterestForAlex2);
-//		runner.addBuilder(dataOfInterestForBob);
-//		runner.addBuilder(dataOfInterestForBob2);
-//		
-//		List<Measurement> measurements = runner.build();
-//		mongoOps.insertAll(measurements);
-	}
+	// measurements are saved through the service so the rollups see the data
+	private static final Dataset AVERAGE_HEART_BEAT = Dataset.named("average-heart-beat", 1)
+			// measurements before
+			.withMeasurements(500, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", HBM, "a sensor", "b sensor", "c sensor")
+					.withValues("owner", "alex", "bob", "charlie", "david")
+					.withRanges("created", 90L, 100L)
+					.withRanges("measuredValue", 30L, 121L)
+					.toBeGenerated(count).build())
+			// measurements after
+			.withMeasurements(500, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", HBM, "a sensor", "b sensor", "c sensor")
+					.withValues("owner", "alex", "bob", "charlie", "david")
+					.withRanges("created", 110L, 120L)
+					.withRanges("measuredValue", 30L, 121L)
+					.toBeGenerated(count).build())
+			// other sensors in correct time range
+			.withMeasurements(500, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", "a sensor", "b sensor", "c sensor")
+					.withValues("owner", "alex", "bob", "charlie", "david")
+					.withRanges("created", 100L, 110L)
+					.withRanges("measuredValue", 30L, 121L)
+					.toBeGenerated(count).build())
+			// alex: 60 in a full rollup bucket, 62 in the partial bucket at the end of the range
+			.withMeasurements(1, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", HBM)
+					.withValues("owner", "alex")
+					.withRanges("created", 100L, 104L)
+					.withRanges("measuredValue", 60L, 61L)
+					.toBeGenerated(count).build())
+			.withMeasurements(1, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", HBM)
+					.withValues("owner", "alex")
+					.withRanges("created", 108L, 110L)
+					.withRanges("measuredValue", 62L, 63L)
+					.toBeGenerated(count).build())
+			// bob: 70 and 72
+			.withMeasurements(1, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", HBM)
+					.withValues("owner", "bob")
+					.withRanges("created", 100L, 110L)
+					.withRanges("measuredValue", 70L, 71L)
+					.toBeGenerated(count).build())
+			.withMeasurements(1, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", HBM)
+					.withValues("owner", "bob")
+					.withRanges("created", 100L, 110L)
+					.withRanges("measuredValue", 72L, 73L)
+					.toBeGenerated(count).build());
 	
 	@Test
-	public void findByOwnerAndSensor_shouldFindMeasurements_ForPassedOwnerAndSensorOnly() {
-		createTestDataFor_findByOwnerAndSensor();
+	public void findByOwnerAndSensor_shouldFindMeasurements_ForPassedOwnerAndSensorOnly() throws Exception {
+		fixtures.restore(OWNER_AND_SENSOR);
 		List<Measurement> result = measurementRepository.findByOwnerAndSensor("alex", "HEART_BEAT_MONITOR");
 		
 		Assert.assertEquals(10, result.size());
@@ -217,40 +213,24 @@ public class RangerDemoApplicationTests {
 	// 2. measurements for owner = 'alex' and sensors:  [ACCELEROMETER, COMPAS, THIRD_PARTY_SENSOR] // noise
 	// 3. measurements for owner = [bob, charlie, david] and sensors [HEART_BEAT_MONITOR, ACCELEROMETER, COMPAS, THIRD_PARTY_SENSOR] // noise
 	// 
-	private void createTestDataFor_findByOwnerAndSensor() {
-//		RandomBuilder<Measurement> heartBeatMonitorDataForAlex = new RandomBuilder<>(Measurement.class);
-//		heartBeatMonitorDataForAlex
-//			.randomFrom("sensor", "HEART_BEAT_MONITOR") 
-//			.randomFrom("owner", "alex")
-//			.randomFromRange("created", 100L, 110L)
-//			.randomFromRange("measuredValue", 60L, 61L)
-//			.toBeBuilt(10);
-//		
-//		RandomBuilder<Measurement> otherSensorDataForAlex = new RandomBuilder<>(Measurement.class);
-//		otherSensorDataForAlex
-//			.randomFrom("sensor", "ACCELEROMETER", "COMPAS", "THIRD_PARTY_SENSOR") 
-//			.randomFrom("owner", "alex")
-//			.randomFromRange("created", 110L, 120L)
-//			.randomFromRange("measuredValue", 3L, 100L)
-//			.toBeBuilt(100);
-//		
-//		RandomBuilder<Measurement> sensorDataForOtherUsers = new RandomBuilder<>(Measurement.class);
-//		sensorDataForOtherUsers
-//			.randomFrom("sensor", "HEART_BEAT_MONITOR", "ACCELEROMETER", "COMPAS", "THIRD_PARTY_SENSOR") 
-//			.randomFrom("owner", "bob", "charlie", "david")
-//			.randomFromRange("created", 150L, 200L)
-//			.randomFromRange("measuredValue", 3L, 100L)
-//			.toBeBuilt(100);
-//		
-//		BuildRunner<Measurement> runner = new BuildRunner<>();
-//		runner.addBuilder(heartBeatMonitorDataForAlex);
-//		runner.addBuilder(otherSensorDataForAlex);
-//		runner.addBuilder(sensorDataForOtherUsers);
-//		
-//		List<Measurement> measurements = runner.build();
-//		System.out.println("number of created measurement: " + measurements.size());
-//		
-//		mongoOps.insertAll(measurements);
-	}
+	private static final Dataset OWNER_AND_SENSOR = Dataset.named("owner-and-sensor", 1)
+			.with(Measurement.class, 10, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", "HEART_BEAT_MONITOR")
+					.withValues("owner", "alex")
+					.withRanges("created", 100L, 110L)
+					.withRanges("measuredValue", 60L, 61L)
+					.toBeGenerated(count).build())
+			.with(Measurement.class, 100, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", "ACCELEROMETER", "COMPAS", "THIRD_PARTY_SENSOR")
+					.withValues("owner", "alex")
+					.withRanges("created", 110L, 120L)
+					.withRanges("measuredValue", 3L, 100L)
+					.toBeGenerated(count).build())
+			.with(Measurement.class, 100, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("sensor", "HEART_BEAT_MONITOR", "ACCELEROMETER", "COMPAS", "THIRD_PARTY_SENSOR")
+					.withValues("owner", "bob", "charlie", "david")
+					.withRanges("created", 150L, 200L)
+					.withRanges("measuredValue", 3L, 100L)
+					.toBeGenerated(count).build());
 
 }
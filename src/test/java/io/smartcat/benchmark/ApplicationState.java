@@ -0,0 +1,50 @@
+package io.smartcat.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import io.smartcat.RangerDemoApplication;
+
+/**
+ * The application context (without web server) wired to a fresh embedded mongod per trial.
+ */
+@State(Scope.Benchmark)
+public class ApplicationState {
+	
+	private EmbeddedMongo mongo;
+	private ConfigurableApplicationContext context;
+	
+	@Setup
+	public void startApplication() throws IOException {
+		startApplication(new String[0]);
+	}
+	
+	/**
+	 * Starts the application with {@code properties} ("key=value") on top of application.properties.
+	 */
+	public void startApplication(String... properties) throws IOException {
+		mongo = EmbeddedMongo.start();
+		context = new SpringApplicationBuilder(RangerDemoApplication.class)
+				.web(false)
+				.properties("spring.data.mongodb.port=" + mongo.getPort())
+				.properties(properties)
+				.run();
+	}
+	
+	@TearDown
+	public void stopApplication() {
+		context.close();
+		mongo.stop();
+	}
+	
+	public <T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+}
@@ -0,0 +1,94 @@
+package io.smartcat.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import com.mongodb.CommandResult;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.AvgHeartBeatRateDTO;
+import io.smartcat.service.MeasurementService;
+import io.smartcat.service.MeasurementStore;
+import io.smartcat.service.ReportService;
+
+/**
+ * Document against bucket storage ({@code measurement.buckets.enabled}) over the same seeded data set. The
+ * setup prints collStats of the raw collection (documents, data size, storage size, index size), which is
+ * the storage side of the comparison; the benchmarks are the read side: a full history scan, a newest page
+ * that misses the in-memory index, and a report over raw data (rollups off).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5)
+@Fork(1)
+public class BucketStorageBenchmark {
+
+	// above measurement.latest-index.capacity, so the newest page is read from Mongo
+	private static final int NEWEST = 100;
+
+	@Param({ "false", "true" })
+	public boolean buckets;
+
+	@Param({ "1000000" })
+	public int measurements;
+
+	private final ApplicationState application = new ApplicationState();
+	private MeasurementService measurementService;
+	private ReportService reportService;
+
+	@Setup
+	public void seed() throws IOException {
+		application.startApplication("measurement.buckets.enabled=" + buckets,
+				"measurement.rollup.enabled=false",
+				"measurement.cache.enabled=false");
+		SeededApplicationState.seed(application, measurements);
+		measurementService = application.getBean(MeasurementService.class);
+		reportService = application.getBean(ReportService.class);
+
+		String collection = application.getBean(MeasurementStore.class).getCollection();
+		CommandResult stats = application.getBean(MongoOperations.class).getCollection(collection).getStats();
+		System.out.println(String.format("%s: %s documents, size %s, storageSize %s, totalIndexSize %s bytes",
+				collection, stats.get("count"), stats.get("size"), stats.get("storageSize"), stats.get("totalIndexSize")));
+	}
+
+	@TearDown
+	public void stop() {
+		application.stopApplication();
+	}
+
+	@Benchmark
+	public long historyScan() {
+		AtomicLong sum = new AtomicLong();
+		measurementService.streamMeasurementsByUserAndSensor(SeededApplicationState.OWNER, SeededApplicationState.SENSOR,
+				measurement -> sum.addAndGet(measurement.getMeasuredValue()));
+		return sum.get();
+	}
+
+	@Benchmark
+	public List<Measurement> newestPage() {
+		return measurementService.getMeasurementHistory(SeededApplicationState.OWNER, SeededApplicationState.SENSOR, null, NEWEST).getMeasurements();
+	}
+
+	@Benchmark
+	public List<AvgHeartBeatRateDTO> avgByOwner() {
+		return reportService.calcAvgByOwner(SeededApplicationState.SENSOR, 0, SeededApplicationState.MAX_CREATED);
+	}
+
+}
@@ -0,0 +1,56 @@
+package io.smartcat.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.smartcat.domain.User;
+import io.smartcat.ranger.ObjectGenerator;
+import io.smartcat.rest.UserRestController;
+
+/**
+ * Latency of {@code POST api/users/{username}} handling: the lean insert against the former handler,
+ * which built a Ranger user generator on every request before saving.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@org.openjdk.jmh.annotations.Measurement(iterations = 10)
+@Fork(1)
+public class CreateUserBenchmark {
+	
+	private UserRestController userRestController;
+	
+	@Setup
+	public void setUp(ApplicationState state) {
+		userRestController = state.getBean(UserRestController.class);
+	}
+	
+	@Benchmark
+	public Object createUser() {
+		return userRestController.createUser("benchmark-user");
+	}
+	
+	@Benchmark
+	public Object createUserWithPerRequestGeneration(Blackhole blackhole) {
+		LocalDateTime year1970 = LocalDateTime.of(1970, 1, 1, 0, 0);
+		LocalDateTime year1980 = LocalDateTime.of(1980, 1, 1, 0, 0);
+		blackhole.consume(new ObjectGenerator.Builder<User>(User.class)
+				.withValues("username", "batman", "superman", "robin", "jedi", "yoda")
+				.withRanges("birthdate", year1970, year1980)
+				.toBeGenerated(10).build());
+		return userRestController.createUser("benchmark-user");
+	}
+
+}
@@ -0,0 +1,46 @@
+package io.smartcat.benchmark;
+
+import java.io.IOException;
+
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodProcess;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+
+/**
+ * Throw-away mongod on a free port, same version as the one the maven-mongodb-plugin starts for tests.
+ */
+public class EmbeddedMongo {
+	
+	private final int port;
+	private final MongodExecutable executable;
+	private final MongodProcess process;
+	
+	private EmbeddedMongo(int port, MongodExecutable executable, MongodProcess process) {
+		this.port = port;
+		this.executable = executable;
+		this.process = process;
+	}
+	
+	public static EmbeddedMongo start() throws IOException {
+		int port = Network.getFreeServerPort();
+		MongodExecutable executable = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+				.version(Version.Main.V3_2)
+				.net(new Net(port, Network.localhostIsIPv6()))
+				.build());
+		return new EmbeddedMongo(port, executable, executable.start());
+	}
+	
+	public int getPort() {
+		return port;
+	}
+	
+	public void stop() {
+		process.stop();
+		executable.stop();
+	}
+
+}
@@ -0,0 +1,57 @@
+package io.smartcat.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.AvgHeartBeatRateDTO;
+import io.smartcat.service.MeasurementService;
+import io.smartcat.service.ReportService;
+
+/**
+ * Read paths of {@link MeasurementService} and {@link ReportService} over seeded data sets of
+ * 10k/100k/1M measurements. Sample time mode reports the latency percentiles next to throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5)
+@Fork(1)
+public class MeasurementQueryBenchmark {
+	
+	private MeasurementService measurementService;
+	private ReportService reportService;
+	
+	@Setup
+	public void setUp(SeededApplicationState state) {
+		measurementService = state.getBean(MeasurementService.class);
+		reportService = state.getBean(ReportService.class);
+	}
+	
+	@Benchmark
+	public List<Measurement> getNewestMeasurementsForUserAndSensor() {
+		return measurementService.getNewestMeasurementsForUserAndSensor(SeededApplicationState.OWNER, SeededApplicationState.SENSOR, 50);
+	}
+	
+	@Benchmark
+	public List<Measurement> getMeasurementsByUserAndSensor() {
+		return measurementService.getMeasurementsByUserAndSensor(SeededApplicationState.OWNER, SeededApplicationState.SENSOR);
+	}
+	
+	@Benchmark
+	public List<AvgHeartBeatRateDTO> calcAvgHeartBeatRate() {
+		return reportService.calcAvgHeartBeatRate(SeededApplicationState.MAX_CREATED / 4, SeededApplicationState.MAX_CREATED * 3 / 4);
+	}
+
+}
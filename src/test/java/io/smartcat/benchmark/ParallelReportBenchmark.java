@@ -0,0 +1,72 @@
+package io.smartcat.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.smartcat.service.AvgHeartBeatRateDTO;
+import io.smartcat.service.ReportService;
+import io.smartcat.service.SensorStatsDTO;
+
+/**
+ * Wall-clock time of reports over the whole seeded range with rollups disabled, so every measurement is
+ * aggregated. {@code slices = 1} is the single pipeline the reports used to run; higher values cut the
+ * range into that many slices run concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5)
+@Fork(1)
+public class ParallelReportBenchmark {
+	
+	@Param({ "1000000" })
+	public int measurements;
+	
+	@Param({ "1", "2", "4", "8" })
+	public int slices;
+	
+	private final ApplicationState application = new ApplicationState();
+	private ReportService reportService;
+	
+	@Setup
+	public void setUp() throws IOException {
+		application.startApplication(
+				"measurement.rollup.enabled=false",
+				"report.parallel.threads=" + slices,
+				"report.parallel.max-slices=" + slices,
+				"report.parallel.min-slice-width=1");
+		SeededApplicationState.seed(application, measurements);
+		reportService = application.getBean(ReportService.class);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		application.stopApplication();
+	}
+	
+	@Benchmark
+	public List<AvgHeartBeatRateDTO> calcAvgHeartBeatRate() {
+		return reportService.calcAvgHeartBeatRate(0, SeededApplicationState.MAX_CREATED);
+	}
+	
+	@Benchmark
+	public List<SensorStatsDTO> calcSensorStats() {
+		return reportService.calcSensorStats(Arrays.asList(SeededApplicationState.SENSOR, "thermometer"), 0, SeededApplicationState.MAX_CREATED, 0, true);
+	}
+
+}
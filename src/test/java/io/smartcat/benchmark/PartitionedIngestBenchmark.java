@@ -0,0 +1,98 @@
+package io.smartcat.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import io.smartcat.RangerDemoApplication;
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.MeasurementService;
+
+/**
+ * {@link MeasurementService#saveAll} of 1000 measurements of random owners from 8 threads against 1, 2 and
+ * 4 embedded mongods partitioned by owner. Derived state (rollups, sketches, caches) is off so the score is
+ * the write path only; with the mongods on separate cores throughput should grow close to linearly with the
+ * number of partitions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+public class PartitionedIngestBenchmark {
+
+	private static final int BATCH_SIZE = 1000;
+	private static final int OWNERS = 10_000;
+
+	@Param({ "1", "2", "4" })
+	private int partitions;
+
+	private final List<EmbeddedMongo> mongos = new ArrayList<>();
+	private ConfigurableApplicationContext context;
+	private MeasurementService measurementService;
+
+	@Setup
+	public void startApplication() throws IOException {
+		StringJoiner hosts = new StringJoiner(",");
+		for (int i = 0; i < partitions; i++) {
+			EmbeddedMongo mongo = EmbeddedMongo.start();
+			mongos.add(mongo);
+			if (i > 0) {
+				hosts.add("localhost:" + mongo.getPort());
+			}
+		}
+		context = new SpringApplicationBuilder(RangerDemoApplication.class)
+				.web(false)
+				.properties("spring.data.mongodb.port=" + mongos.get(0).getPort(),
+						"mongo.partitions.hosts=" + hosts,
+						"measurement.rollup.enabled=false",
+						"measurement.sketch.enabled=false",
+						"measurement.latest-index.enabled=false",
+						"measurement.cache.enabled=false")
+				.run();
+		measurementService = context.getBean(MeasurementService.class);
+	}
+
+	@TearDown
+	public void stopApplication() {
+		context.close();
+		mongos.forEach(EmbeddedMongo::stop);
+	}
+
+	@Benchmark
+	public List<Measurement> saveAll() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		List<Measurement> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			Measurement measurement = new Measurement();
+			measurement.setOwner("owner-" + random.nextInt(OWNERS));
+			measurement.setSensor("thermometer");
+			measurement.setCreated(random.nextLong(1_000_000L));
+			measurement.setMeasuredValue(random.nextLong(200L));
+			batch.add(measurement);
+		}
+		measurementService.saveAll(batch);
+		return batch;
+	}
+
+}
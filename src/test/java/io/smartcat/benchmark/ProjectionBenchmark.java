@@ -0,0 +1,68 @@
+package io.smartcat.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.repository.MeasurementRepository;
+import io.smartcat.service.MeasurementPoints;
+import io.smartcat.service.MeasurementService;
+
+/**
+ * Full entity reads against the projected {@link MeasurementPoints} reads of the same rows. The
+ * benchmark profile runs the gc profiler, so allocation per operation is reported next to the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5)
+@Fork(1)
+public class ProjectionBenchmark {
+	
+	// above measurement.latest-index.capacity, so both variants read from Mongo instead of the in-memory index
+	private static final int NEWEST = 100;
+	
+	private MeasurementRepository measurementRepository;
+	private MeasurementService measurementService;
+	
+	@Setup
+	public void setUp(SeededApplicationState state) {
+		measurementRepository = state.getBean(MeasurementRepository.class);
+		measurementService = state.getBean(MeasurementService.class);
+	}
+	
+	@Benchmark
+	public List<Measurement> newestEntities() {
+		return measurementRepository.findByOwnerAndSensor(SeededApplicationState.OWNER, SeededApplicationState.SENSOR,
+				new PageRequest(0, NEWEST, new Sort(Sort.Direction.DESC, "created")));
+	}
+	
+	@Benchmark
+	public MeasurementPoints newestPoints() {
+		return measurementService.getNewestPointsForUserAndSensor(SeededApplicationState.OWNER, SeededApplicationState.SENSOR, NEWEST);
+	}
+	
+	@Benchmark
+	public List<Measurement> historyEntities() {
+		return measurementService.getMeasurementsByUserAndSensor(SeededApplicationState.OWNER, SeededApplicationState.SENSOR);
+	}
+	
+	@Benchmark
+	public MeasurementPoints historyPoints() {
+		return measurementService.getPointsByUserAndSensor(SeededApplicationState.OWNER, SeededApplicationState.SENSOR);
+	}
+
+}
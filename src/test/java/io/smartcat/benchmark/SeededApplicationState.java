@@ -0,0 +1,73 @@
+package io.smartcat.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.ranger.ObjectGenerator;
+import io.smartcat.seed.BulkLoader;
+import io.smartcat.seed.LoadReport;
+import io.smartcat.service.MeasurementService;
+
+/**
+ * {@link ApplicationState} seeded with {@code measurements} Ranger-generated rows: 1% belong to the
+ * benchmarked owner, spread over the heart beat monitor and one other sensor, the rest is noise from
+ * other owners. Rows are written through {@link MeasurementService#saveAll} so rollups and in-memory
+ * indexes are populated the same way as in production.
+ */
+@State(Scope.Benchmark)
+public class SeededApplicationState {
+	
+	public static final String OWNER = "benchmark-owner";
+	public static final String SENSOR = "Heart Beat Monitor";
+	public static final long MAX_CREATED = 1_000_000L;
+	
+	@Param({ "10000", "100000", "1000000" })
+	public int measurements;
+	
+	private final ApplicationState application = new ApplicationState();
+	
+	@Setup
+	public void seed() throws IOException {
+		application.startApplication();
+		seed(application, measurements);
+	}
+	
+	/**
+	 * Seeds a started application with the data set described on this class.
+	 */
+	public static void seed(ApplicationState application, int measurements) {
+		BulkLoader bulkLoader = application.getBean(BulkLoader.class);
+		MeasurementService measurementService = application.getBean(MeasurementService.class);
+		
+		int ownerRows = measurements / 100;
+		bulkLoader.load(count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("owner", OWNER)
+				.withValues("sensor", SENSOR, "thermometer")
+				.withRanges("created", 0L, MAX_CREATED)
+				.withRanges("measuredValue", 40L, 180L)
+				.toBeGenerated(count).build(), ownerRows, 10_000, measurementService::saveAll);
+		LoadReport report = bulkLoader.load(count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("owner", "alice", "bob", "charlie", "david", "emma")
+				.withValues("sensor", SENSOR, "thermometer", "hygrometer", "accelerometer")
+				.withRanges("created", 0L, MAX_CREATED)
+				.withRanges("measuredValue", 0L, 200L)
+				.toBeGenerated(count).build(), measurements - ownerRows, 10_000, measurementService::saveAll);
+		System.out.println("Seeded benchmark data: " + report);
+	}
+	
+	@TearDown
+	public void stop() {
+		application.stopApplication();
+	}
+	
+	public <T> T getBean(Class<T> type) {
+		return application.getBean(type);
+	}
+
+}
@@ -0,0 +1,100 @@
+package io.smartcat.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.MeasurementService;
+import io.smartcat.service.MeasurementWriteBuffer;
+
+/**
+ * Throughput of small ingest messages (one to {@code messageSize} measurements each, like single device
+ * reports) from 16 threads: each message written with its own {@link MeasurementService#saveAll} against
+ * each submitted to the {@link MeasurementWriteBuffer} and awaited, so concurrent messages share bulk writes.
+ * Derived state is off so the score is the write path only; the score is in messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5)
+@Fork(1)
+@Threads(16)
+public class SmallMessageIngestBenchmark {
+
+	private static final int OWNERS = 1_000;
+	private static final long MAX_WAIT_MILLIS = 10_000;
+
+	@Param({ "1", "5" })
+	public int messageSize;
+
+	private final ApplicationState application = new ApplicationState();
+	private MeasurementService measurementService;
+	private MeasurementWriteBuffer writeBuffer;
+
+	@Setup
+	public void startApplication() throws IOException {
+		application.startApplication("measurement.rollup.enabled=false",
+				"measurement.sketch.enabled=false",
+				"measurement.latest-index.enabled=false",
+				"measurement.cache.enabled=false");
+		measurementService = application.getBean(MeasurementService.class);
+		writeBuffer = application.getBean(MeasurementWriteBuffer.class);
+	}
+
+	@TearDown
+	public void stopApplication() {
+		application.stopApplication();
+	}
+
+	@Benchmark
+	public List<Measurement> direct() {
+		List<Measurement> message = message();
+		measurementService.saveAll(message);
+		return message;
+	}
+
+	@Benchmark
+	public List<Measurement> buffered() throws InterruptedException {
+		List<Measurement> message = message();
+		CompletableFuture<Void> written = writeBuffer.submit(message, MAX_WAIT_MILLIS);
+		if (written == null) {
+			throw new IllegalStateException("Write buffer stayed full for " + MAX_WAIT_MILLIS + " ms");
+		}
+		written.join();
+		return message;
+	}
+
+	private List<Measurement> message() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String owner = "owner-" + random.nextInt(OWNERS);
+		List<Measurement> message = new ArrayList<>(messageSize);
+		for (int i = 0; i < messageSize; i++) {
+			Measurement measurement = new Measurement();
+			measurement.setOwner(owner);
+			measurement.setSensor("thermometer");
+			measurement.setCreated(System.currentTimeMillis());
+			measurement.setMeasuredValue(random.nextLong(200L));
+			message.add(measurement);
+		}
+		return message;
+	}
+
+}
@@ -0,0 +1,68 @@
+package io.smartcat.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.ranger.ObjectGenerator;
+import io.smartcat.service.UserService;
+
+/**
+ * Write paths: a 1000 row {@code insertAll} and a single {@link UserService#create}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5)
+@Fork(1)
+public class WriteBenchmark {
+	
+	private static final int BATCH_SIZE = 1000;
+	
+	private MongoOperations mongoOps;
+	private UserService userService;
+	private List<Measurement> batch;
+	
+	@Setup
+	public void setUp(ApplicationState state) {
+		mongoOps = state.getBean(MongoOperations.class);
+		userService = state.getBean(UserService.class);
+	}
+	
+	@Setup(Level.Iteration)
+	public void generateBatch() {
+		batch = new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("owner", "alice", "bob", "charlie")
+				.withValues("sensor", "thermometer", "hygrometer")
+				.withRanges("created", 0L, 1_000_000L)
+				.withRanges("measuredValue", 0L, 200L)
+				.toBeGenerated(BATCH_SIZE).build().generateAll();
+	}
+	
+	@Benchmark
+	public List<Measurement> insertAll() {
+		// insertAll assigns ids, reset them so the same objects can be inserted again
+		batch.forEach(measurement -> measurement.setId(null));
+		mongoOps.insertAll(batch);
+		return batch;
+	}
+	
+	@Benchmark
+	public void userServiceCreate() {
+		userService.create("benchmark-user");
+	}
+
+}
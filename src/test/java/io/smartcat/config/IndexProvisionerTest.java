@@ -0,0 +1,99 @@
+package io.smartcat.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.fixture.DatasetFixtures;
+import io.smartcat.fixture.FixtureConfiguration;
+import io.smartcat.ranger.ObjectGenerator;
+import io.smartcat.seed.BulkLoader;
+
+// every test runs in a database of its own, see DatasetFixtures
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Import(FixtureConfiguration.class)
+public class IndexProvisionerTest {
+	
+	@Autowired
+	private MongoOperations mongoOps;
+	
+	@Autowired
+	private BulkLoader bulkLoader;
+	
+	@Autowired
+	private IndexProvisioner indexProvisioner;
+	
+	@Autowired
+	private DatasetFixtures fixtures;
+	
+	@Before
+	public void useFreshDatabase() {
+		fixtures.useFreshDatabase();
+	}
+	
+	@After
+	public void dropDatabase() {
+		fixtures.dropDatabase();
+	}
+	
+	@Test
+	public void newestMeasurementsForUserAndSensor_shouldBeServedByIndex_withoutInMemorySort() {
+		bulkLoader.load(Measurement.class, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("owner", "alice", "bob", "charlie")
+				.withRanges("created", 1000L, 2000L)
+				.withValues("sensor", "thermometer", "hygrometer")
+				.toBeGenerated(count).build(), 5_000);
+		
+		// same shape as MeasurementService.getNewestMeasurementsForUserAndSensor
+		DBObject explain = mongoOps.getCollection("measurements")
+				.find(new BasicDBObject("owner", "alice").append("sensor", "thermometer"))
+				.sort(new BasicDBObject("created", -1))
+				.limit(50)
+				.explain();
+		
+		List<String> stages = new ArrayList<>();
+		collectStages((DBObject) ((DBObject) explain.get("queryPlanner")).get("winningPlan"), stages);
+		
+		Assert.assertTrue("winning plan " + stages + " should use an index", stages.contains("IXSCAN"));
+		Assert.assertFalse("winning plan " + stages + " should not sort in memory", stages.contains("SORT"));
+	}
+	
+	@Test
+	public void provisionIndexes_shouldDropRetiredMeasurementIndexes() {
+		mongoOps.getCollection("measurements").createIndex(new BasicDBObject("owner", 1).append("created", -1), "owner_created");
+		
+		indexProvisioner.provisionIndexes();
+		
+		List<String> names = new ArrayList<>();
+		for (IndexInfo index : mongoOps.indexOps(Measurement.class).getIndexInfo()) {
+			names.add(index.getName());
+		}
+		Assert.assertFalse(names.contains("owner_created"));
+		Assert.assertTrue(names.contains("owner_created_id"));
+	}
+	
+	private void collectStages(DBObject plan, List<String> stages) {
+		if (plan == null) {
+			return;
+		}
+		stages.add((String) plan.get("stage"));
+		collectStages((DBObject) plan.get("inputStage"), stages);
+	}
+
+}
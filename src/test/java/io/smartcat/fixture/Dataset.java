@@ -0,0 +1,110 @@
+package io.smartcat.fixture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.seed.GeneratorFactory;
+
+/**
+ * Named Ranger spec of a data set: the parts to generate, in order. Ranger 0.0.5 generators cannot be
+ * seeded, so it is the snapshot that makes every test see the same rows, and the snapshot is identified by
+ * the name and {@code version} only. <b>Bump the version whenever a part's generator changes</b>, or the
+ * snapshot of the previous spec keeps being restored. Changes to the parts' types, counts or write path
+ * are caught without a bump: the restore fails on them (see {@link #getManifest()}).
+ */
+public class Dataset {
+	
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+	
+	private final String name;
+	private final int version;
+	private final List<Part<?>> parts = new ArrayList<>();
+	
+	private Dataset(String name, int version) {
+		if (!NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("Dataset names are used as database names, use letters, digits, _ and - only: " + name);
+		}
+		this.name = name;
+		this.version = version;
+	}
+	
+	public static Dataset named(String name, int version) {
+		return new Dataset(name, version);
+	}
+	
+	/**
+	 * Adds {@code count} rows of {@code type}, bulk inserted as they are.
+	 */
+	public <T> Dataset with(Class<T> type, int count, GeneratorFactory<T> factory) {
+		parts.add(new Part<>(type, count, factory, false));
+		return this;
+	}
+	
+	/**
+	 * Adds {@code count} measurements, written through {@code MeasurementService.saveAll} so their rollups
+	 * are part of the snapshot.
+	 */
+	public Dataset withMeasurements(int count, GeneratorFactory<Measurement> factory) {
+		parts.add(new Part<>(Measurement.class, count, factory, true));
+		return this;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	public int getVersion() {
+		return version;
+	}
+	public List<Part<?>> getParts() {
+		return Collections.unmodifiableList(parts);
+	}
+	public String getId() {
+		return name + "-v" + version;
+	}
+	
+	/**
+	 * What of the spec can be compared without running the generators, one line per part; stored with the
+	 * snapshot and checked on every restore.
+	 */
+	public String getManifest() {
+		StringBuilder manifest = new StringBuilder();
+		for (Part<?> part : parts) {
+			manifest.append(part.getType().getName()).append(' ').append(part.getCount())
+					.append(part.isThroughService() ? " service" : " bulk").append('\n');
+		}
+		return manifest.toString();
+	}
+	
+	public static final class Part<T> {
+		
+		private final Class<T> type;
+		private final int count;
+		private final GeneratorFactory<T> factory;
+		private final boolean throughService;
+		
+		private Part(Class<T> type, int count, GeneratorFactory<T> factory, boolean throughService) {
+			this.type = type;
+			this.count = count;
+			this.factory = factory;
+			this.throughService = throughService;
+		}
+		
+		public Class<T> getType() {
+			return type;
+		}
+		public int getCount() {
+			return count;
+		}
+		public GeneratorFactory<T> getFactory() {
+			return factory;
+		}
+		public boolean isThroughService() {
+			return throughService;
+		}
+		
+	}
+
+}
@@ -0,0 +1,327 @@
+package io.smartcat.fixture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
+
+import io.smartcat.config.IndexProvisioner;
+import io.smartcat.domain.Measurement;
+import io.smartcat.seed.BulkLoader;
+import io.smartcat.seed.GeneratorFactory;
+import io.smartcat.service.LatestMeasurementsIndex;
+import io.smartcat.service.MeasurementService;
+import io.smartcat.service.NewestMeasurementsCache;
+import io.smartcat.service.RetentionService;
+import io.smartcat.service.RollupService;
+import io.smartcat.service.SketchService;
+
+/**
+ * Gives each test a database of its own and fills it from {@link Dataset} snapshots.
+ * <p>
+ * A dataset is generated only when {@code fixture.snapshot-dir} has no snapshot of it yet: into a scratch
+ * database, which is then dumped in mongodump layout (per collection a {@code .bson} file of concatenated
+ * documents and a {@code .metadata.json} with its indexes, so {@code mongorestore} can read it too). The
+ * first restore of a dataset in a JVM bulk loads the snapshot into a template database without decoding
+ * the documents; every restore then copies the template server side with {@code copydb}.
+ * <p>
+ * The in-memory state of the services is reset on every switch, it would otherwise keep serving the data of
+ * the previous database: the latest measurements index, the newest measurements cache and the sketches are
+ * cleared, the retention watermark is read from the new database and the rollups are rebuilt from it.
+ * <pre>
+ * &#64;Before: fixtures.useFreshDatabase(); fixtures.restore(DATASET);
+ * &#64;After:  fixtures.dropDatabase();
+ * </pre>
+ */
+public class DatasetFixtures {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(DatasetFixtures.class);
+	
+	private static final String DUMP_SUFFIX = ".bson";
+	private static final String METADATA_SUFFIX = ".metadata.json";
+	private static final String MANIFEST = "dataset.manifest";
+	private static final int INSERT_BATCH_SIZE = 1000;
+	
+	@Autowired
+	private SwitchableMongoDbFactory mongoDbFactory;
+	
+	@Autowired
+	private MongoClient mongoClient;
+	
+	@Autowired
+	private IndexProvisioner indexProvisioner;
+	
+	@Autowired
+	private BulkLoader bulkLoader;
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Autowired
+	private LatestMeasurementsIndex latestMeasurementsIndex;
+	
+	@Autowired
+	private NewestMeasurementsCache newestMeasurementsCache;
+	
+	@Autowired
+	private SketchService sketchService;
+	
+	@Autowired
+	private RetentionService retentionService;
+	
+	@Autowired
+	private RollupService rollupService;
+	
+	@Value("${fixture.snapshot-dir:target/dataset-snapshots}")
+	private String snapshotDir;
+	
+	@Value("${seed.chunk-size:10000}")
+	private int chunkSize;
+	
+	// template database -> snapshot it was loaded from, in this JVM
+	private final Map<String, Path> templates = new HashMap<>();
+	
+	/**
+	 * Switches the application to a new, empty database with the application's indexes.
+	 */
+	public synchronized String useFreshDatabase() {
+		String database = "test-" + UUID.randomUUID();
+		mongoDbFactory.use(database);
+		indexProvisioner.provisionIndexes();
+		clearInMemoryState();
+		return database;
+	}
+	
+	/**
+	 * Drops the current test database and switches back to the one the context started with.
+	 */
+	public synchronized void dropDatabase() {
+		String database = mongoDbFactory.getDatabase();
+		mongoDbFactory.useDefault();
+		clearInMemoryState();
+		if (!database.equals(mongoDbFactory.getDefaultDatabase())) {
+			mongoClient.getDatabase(database).drop();
+		}
+	}
+	
+	/**
+	 * Replaces the contents of the current test database with {@code dataset}.
+	 */
+	public synchronized void restore(Dataset dataset) throws IOException {
+		String target = mongoDbFactory.getDatabase();
+		if (target.equals(mongoDbFactory.getDefaultDatabase())) {
+			throw new IllegalStateException("Restoring into the default database " + target + ", call useFreshDatabase first");
+		}
+		long start = System.currentTimeMillis();
+		String template = "fixture-" + dataset.getId();
+		Path snapshot = templates.get(template);
+		if (snapshot == null) {
+			snapshot = snapshot(dataset);
+			MongoDatabase templateDatabase = mongoClient.getDatabase(template);
+			templateDatabase.drop();
+			load(snapshot, templateDatabase);
+			templates.put(template, snapshot);
+		}
+		MongoDatabase targetDatabase = mongoClient.getDatabase(target);
+		targetDatabase.drop();
+		try {
+			mongoClient.getDatabase("admin").runCommand(new Document("copydb", 1).append("fromdb", template).append("todb", target));
+		} catch (MongoCommandException e) {
+			// copydb is gone from servers newer than 4.0
+			LOGGER.debug("copydb failed, loading {} from the snapshot", dataset.getId(), e);
+			load(snapshot, targetDatabase);
+		}
+		// generating the snapshot went through the service, in the scratch database
+		clearInMemoryState();
+		LOGGER.info("Restored dataset {} into {} in {} ms", dataset.getId(), target, System.currentTimeMillis() - start);
+	}
+	
+	private void clearInMemoryState() {
+		latestMeasurementsIndex.clear();
+		newestMeasurementsCache.clear();
+		sketchService.clear();
+		retentionService.refreshWatermark();
+		// datasets bulk loaded around the service come without rollups
+		if (rollupService.isEnabled()) {
+			rollupService.rebuild();
+		}
+	}
+	
+	private Path snapshot(Dataset dataset) throws IOException {
+		Path snapshots = Files.createDirectories(Paths.get(snapshotDir));
+		Path directory = snapshots.resolve(dataset.getId());
+		if (Files.isDirectory(directory)) {
+			checkManifest(dataset, directory);
+			return directory;
+		}
+		long start = System.currentTimeMillis();
+		String previous = mongoDbFactory.getDatabase();
+		String scratch = "fixture-build-" + UUID.randomUUID();
+		mongoDbFactory.use(scratch);
+		try {
+			indexProvisioner.provisionIndexes();
+			for (Dataset.Part<?> part : dataset.getParts()) {
+				generate(part);
+			}
+			Path temporary = Files.createDirectory(snapshots.resolve(dataset.getId() + ".tmp-" + UUID.randomUUID()));
+			dump(mongoClient.getDatabase(scratch), temporary);
+			Files.write(temporary.resolve(MANIFEST), dataset.getManifest().getBytes(StandardCharsets.UTF_8));
+			try {
+				Files.move(temporary, directory, StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileSystemException e) {
+				// another JVM finished the same snapshot first
+				if (!Files.isDirectory(directory)) {
+					throw e;
+				}
+				delete(temporary);
+				checkManifest(dataset, directory);
+			}
+		} finally {
+			mongoDbFactory.use(previous);
+			mongoClient.getDatabase(scratch).drop();
+		}
+		LOGGER.info("Generated snapshot of dataset {} in {} ms", dataset.getId(), System.currentTimeMillis() - start);
+		return directory;
+	}
+	
+	// a snapshot of another spec under the same id would otherwise be restored without a word
+	private static void checkManifest(Dataset dataset, Path directory) throws IOException {
+		Path manifest = directory.resolve(MANIFEST);
+		String stored = Files.exists(manifest) ? new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8) : null;
+		if (!dataset.getManifest().equals(stored)) {
+			throw new IllegalStateException("Snapshot " + directory + " was generated from another spec of dataset "
+					+ dataset.getName() + ", bump its version or delete the snapshot");
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> void generate(Dataset.Part<T> part) {
+		if (part.isThroughService()) {
+			bulkLoader.load((GeneratorFactory<Measurement>) part.getFactory(), part.getCount(), chunkSize, measurementService::saveAll);
+		} else {
+			bulkLoader.load(part.getType(), part.getFactory(), part.getCount());
+		}
+	}
+	
+	private static void dump(MongoDatabase database, Path directory) throws IOException {
+		for (String collection : database.listCollectionNames()) {
+			if (collection.startsWith("system.")) {
+				continue;
+			}
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(directory.resolve(collection + DUMP_SUFFIX)), 1 << 16)) {
+				for (RawBsonDocument document : database.getCollection(collection, RawBsonDocument.class).find()) {
+					ByteBuf buffer = document.getByteBuffer();
+					byte[] bytes = new byte[buffer.remaining()];
+					buffer.get(bytes);
+					out.write(bytes);
+				}
+			}
+			List<Document> indexes = database.getCollection(collection).listIndexes().into(new ArrayList<>());
+			Document metadata = new Document("options", new Document()).append("indexes", indexes);
+			Files.write(directory.resolve(collection + METADATA_SUFFIX), metadata.toJson().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	private static void load(Path snapshot, MongoDatabase database) throws IOException {
+		InsertManyOptions unordered = new InsertManyOptions().ordered(false);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(snapshot, "*" + DUMP_SUFFIX)) {
+			for (Path file : files) {
+				String collection = file.getFileName().toString();
+				collection = collection.substring(0, collection.length() - DUMP_SUFFIX.length());
+				MongoCollection<RawBsonDocument> target = database.getCollection(collection, RawBsonDocument.class);
+				List<RawBsonDocument> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+					RawBsonDocument document;
+					while ((document = readDocument(in)) != null) {
+						batch.add(document);
+						if (batch.size() == INSERT_BATCH_SIZE) {
+							target.insertMany(batch, unordered);
+							batch.clear();
+						}
+					}
+				}
+				if (!batch.isEmpty()) {
+					target.insertMany(batch, unordered);
+				}
+				createIndexes(database, collection, snapshot.resolve(collection + METADATA_SUFFIX));
+			}
+		}
+	}
+	
+	// a dump is a plain sequence of BSON documents, each starting with its length as a little-endian int32
+	private static RawBsonDocument readDocument(DataInputStream in) throws IOException {
+		int first = in.read();
+		if (first == -1) {
+			return null;
+		}
+		byte[] length = new byte[4];
+		length[0] = (byte) first;
+		in.readFully(length, 1, 3);
+		int size = (length[0] & 0xff) | (length[1] & 0xff) << 8 | (length[2] & 0xff) << 16 | (length[3] & 0xff) << 24;
+		if (size < 5) {
+			throw new EOFException("Corrupt dump, document of " + size + " bytes");
+		}
+		byte[] bytes = new byte[size];
+		System.arraycopy(length, 0, bytes, 0, 4);
+		in.readFully(bytes, 4, size - 4);
+		return new RawBsonDocument(bytes);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static void createIndexes(MongoDatabase database, String collection, Path metadataFile) throws IOException {
+		if (!Files.exists(metadataFile)) {
+			return;
+		}
+		Document metadata = Document.parse(new String(Files.readAllBytes(metadataFile), StandardCharsets.UTF_8));
+		List<Document> indexes = new ArrayList<>();
+		for (Document index : (List<Document>) metadata.get("indexes")) {
+			if (!"_id_".equals(index.getString("name"))) {
+				// the namespace is the one of the dumped database
+				index.remove("ns");
+				indexes.add(index);
+			}
+		}
+		if (!indexes.isEmpty()) {
+			database.runCommand(new Document("createIndexes", collection).append("indexes", indexes));
+		}
+	}
+	
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+
+}
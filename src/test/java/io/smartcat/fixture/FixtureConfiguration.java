@@ -0,0 +1,37 @@
+package io.smartcat.fixture;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import com.mongodb.MongoClient;
+import com.mongodb.async.client.MongoDatabase;
+
+/**
+ * Import into a {@code @SpringBootTest} to get {@link DatasetFixtures}; the application's templates are
+ * then built on a {@link SwitchableMongoDbFactory} and its async queries run on a
+ * {@link SwitchableAsyncMongoDatabase} following the same switch.
+ */
+@TestConfiguration
+public class FixtureConfiguration {
+	
+	@Bean
+	@Primary
+	public SwitchableMongoDbFactory switchableMongoDbFactory(MongoClient mongoClient, @Value("${spring.data.mongodb.database}") String database) {
+		return new SwitchableMongoDbFactory(mongoClient, database);
+	}
+	
+	@Bean
+	@Primary
+	public MongoDatabase switchableAsyncMongoDatabase(com.mongodb.async.client.MongoClient asyncMongoClient,
+			SwitchableMongoDbFactory switchableMongoDbFactory) {
+		return new SwitchableAsyncMongoDatabase(asyncMongoClient, switchableMongoDbFactory);
+	}
+	
+	@Bean
+	public DatasetFixtures datasetFixtures() {
+		return new DatasetFixtures();
+	}
+
+}
@@ -0,0 +1,143 @@
+package io.smartcat.fixture;
+
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.ListCollectionsIterable;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.async.client.MongoIterable;
+import com.mongodb.client.model.CreateCollectionOptions;
+
+/**
+ * Async {@link MongoDatabase} that resolves the database of a {@link SwitchableMongoDbFactory} on every
+ * call, so the async query paths follow the same switch as the templates. Collections and the
+ * {@code with*} copies are bound to the database that was current when they were taken.
+ */
+public class SwitchableAsyncMongoDatabase implements MongoDatabase {
+	
+	private final MongoClient mongoClient;
+	private final SwitchableMongoDbFactory mongoDbFactory;
+	
+	public SwitchableAsyncMongoDatabase(MongoClient mongoClient, SwitchableMongoDbFactory mongoDbFactory) {
+		this.mongoClient = mongoClient;
+		this.mongoDbFactory = mongoDbFactory;
+	}
+	
+	private MongoDatabase current() {
+		return mongoClient.getDatabase(mongoDbFactory.getDatabase());
+	}
+	
+	@Override
+	public String getName() {
+		return current().getName();
+	}
+	
+	@Override
+	public CodecRegistry getCodecRegistry() {
+		return current().getCodecRegistry();
+	}
+	
+	@Override
+	public ReadPreference getReadPreference() {
+		return current().getReadPreference();
+	}
+	
+	@Override
+	public WriteConcern getWriteConcern() {
+		return current().getWriteConcern();
+	}
+	
+	@Override
+	public ReadConcern getReadConcern() {
+		return current().getReadConcern();
+	}
+	
+	@Override
+	public MongoDatabase withCodecRegistry(CodecRegistry codecRegistry) {
+		return current().withCodecRegistry(codecRegistry);
+	}
+	
+	@Override
+	public MongoDatabase withReadPreference(ReadPreference readPreference) {
+		return current().withReadPreference(readPreference);
+	}
+	
+	@Override
+	public MongoDatabase withWriteConcern(WriteConcern writeConcern) {
+		return current().withWriteConcern(writeConcern);
+	}
+	
+	@Override
+	public MongoDatabase withReadConcern(ReadConcern readConcern) {
+		return current().withReadConcern(readConcern);
+	}
+	
+	@Override
+	public MongoCollection<Document> getCollection(String collectionName) {
+		return current().getCollection(collectionName);
+	}
+	
+	@Override
+	public <TDocument> MongoCollection<TDocument> getCollection(String collectionName, Class<TDocument> documentClass) {
+		return current().getCollection(collectionName, documentClass);
+	}
+	
+	@Override
+	public void runCommand(Bson command, SingleResultCallback<Document> callback) {
+		current().runCommand(command, callback);
+	}
+	
+	@Override
+	public void runCommand(Bson command, ReadPreference readPreference, SingleResultCallback<Document> callback) {
+		current().runCommand(command, readPreference, callback);
+	}
+	
+	@Override
+	public <TResult> void runCommand(Bson command, Class<TResult> resultClass, SingleResultCallback<TResult> callback) {
+		current().runCommand(command, resultClass, callback);
+	}
+	
+	@Override
+	public <TResult> void runCommand(Bson command, ReadPreference readPreference, Class<TResult> resultClass,
+			SingleResultCallback<TResult> callback) {
+		current().runCommand(command, readPreference, resultClass, callback);
+	}
+	
+	@Override
+	public void drop(SingleResultCallback<Void> callback) {
+		current().drop(callback);
+	}
+	
+	@Override
+	public MongoIterable<String> listCollectionNames() {
+		return current().listCollectionNames();
+	}
+	
+	@Override
+	public ListCollectionsIterable<Document> listCollections() {
+		return current().listCollections();
+	}
+	
+	@Override
+	public <TResult> ListCollectionsIterable<TResult> listCollections(Class<TResult> resultClass) {
+		return current().listCollections(resultClass);
+	}
+	
+	@Override
+	public void createCollection(String collectionName, SingleResultCallback<Void> callback) {
+		current().createCollection(collectionName, callback);
+	}
+	
+	@Override
+	public void createCollection(String collectionName, CreateCollectionOptions options, SingleResultCallback<Void> callback) {
+		current().createCollection(collectionName, options, callback);
+	}
+
+}
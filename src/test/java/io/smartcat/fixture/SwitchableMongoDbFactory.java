@@ -0,0 +1,47 @@
+package io.smartcat.fixture;
+
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+
+/**
+ * {@link SimpleMongoDbFactory} whose database can be switched while the context runs, so every test can
+ * work in a database of its own without a context per database. The switch is global, not per thread:
+ * report slices and write buffer flushes run on pool threads and have to see the test's database too.
+ * The async driver's reads see it through {@link SwitchableAsyncMongoDatabase}; both are registered by
+ * {@link FixtureConfiguration}.
+ */
+public class SwitchableMongoDbFactory extends SimpleMongoDbFactory {
+	
+	private final String defaultDatabase;
+	private volatile String database;
+	
+	public SwitchableMongoDbFactory(MongoClient mongoClient, String defaultDatabase) {
+		super(mongoClient, defaultDatabase);
+		this.defaultDatabase = defaultDatabase;
+		this.database = defaultDatabase;
+	}
+	
+	@Override
+	public DB getDb() {
+		return getDb(database);
+	}
+	
+	public String getDatabase() {
+		return database;
+	}
+	
+	public String getDefaultDatabase() {
+		return defaultDatabase;
+	}
+	
+	public void use(String database) {
+		this.database = database;
+	}
+	
+	public void useDefault() {
+		this.database = defaultDatabase;
+	}
+
+}
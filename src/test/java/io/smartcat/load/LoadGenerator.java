@@ -0,0 +1,175 @@
+package io.smartcat.load;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import io.smartcat.metrics.LatencyMetrics;
+
+/**
+ * Replays {@link LoadRequest}s against a running application, cycling through the list, and records the
+ * latency of every request per endpoint.
+ * <ul>
+ * <li>Closed loop: {@code concurrency} clients each send their next request as soon as the previous one
+ * completes. Throughput adapts to the service, so this finds the maximum rate at a given concurrency, but
+ * a slow service also slows the arrivals and hides part of its latency.</li>
+ * <li>Open loop: requests arrive at a fixed rate whatever the service does. Latency is measured from the
+ * time a request was scheduled to be sent, not from when a free client picked it up, so time spent
+ * waiting behind slow requests is counted (no coordinated omission). Past the saturation point latency
+ * grows with the run instead of levelling off.</li>
+ * </ul>
+ * Connections are pooled and kept alive, {@code maxConnections} of them to the application, so neither loop
+ * waits for a connection or opens one per request; a run needing more clients than that is rejected.
+ */
+public class LoadGenerator implements Closeable {
+	
+	private final String baseUrl;
+	private final int maxConnections;
+	private final CloseableHttpClient httpClient;
+	private final RestTemplate restTemplate;
+	
+	public LoadGenerator(String baseUrl, int maxConnections) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("maxConnections must be positive");
+		}
+		this.baseUrl = baseUrl;
+		this.maxConnections = maxConnections;
+		PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+		connections.setMaxTotal(maxConnections);
+		connections.setDefaultMaxPerRoute(maxConnections);
+		this.httpClient = HttpClients.custom().setConnectionManager(connections).build();
+		this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+		// failures are counted per endpoint instead of thrown
+		this.restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+			@Override
+			public boolean hasError(ClientHttpResponse response) {
+				return false;
+			}
+		});
+	}
+	
+	/**
+	 * Sends every request once with {@code concurrency} clients, e.g. to create users or warm up.
+	 */
+	public LoadResult runAll(String description, List<LoadRequest> requests, int concurrency) throws InterruptedException {
+		return closedLoop(description, requests, concurrency, requests.size(), Long.MAX_VALUE);
+	}
+	
+	public LoadResult closedLoop(List<LoadRequest> requests, int concurrency, long durationMillis) throws InterruptedException {
+		return closedLoop("closed loop, " + concurrency + " clients", requests, concurrency, Long.MAX_VALUE, durationMillis);
+	}
+	
+	private LoadResult closedLoop(String description, List<LoadRequest> requests, int concurrency, long maxRequests, long durationMillis)
+			throws InterruptedException {
+		Run run = new Run();
+		AtomicLong next = new AtomicLong();
+		long deadline = durationMillis == Long.MAX_VALUE ? Long.MAX_VALUE : run.start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		ExecutorService clients = newPool(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			clients.execute(() -> {
+				long index;
+				while (System.nanoTime() < deadline && (index = next.getAndIncrement()) < maxRequests) {
+					run.execute(requests.get((int) (index % requests.size())), System.nanoTime());
+				}
+			});
+		}
+		return run.finish(description, clients);
+	}
+	
+	/**
+	 * Sends {@code ratePerSecond} requests per second for {@code durationMillis}, with at most
+	 * {@code maxConcurrency} in flight; requests that find all clients busy wait in a queue, and that wait is
+	 * part of their latency.
+	 */
+	public LoadResult openLoop(List<LoadRequest> requests, double ratePerSecond, int maxConcurrency, long durationMillis)
+			throws InterruptedException {
+		// one request per nanosecond at most, as the schedule is kept in whole nanoseconds
+		if (!(ratePerSecond > 0 && ratePerSecond <= TimeUnit.SECONDS.toNanos(1))) {
+			throw new IllegalArgumentException("ratePerSecond must be in (0, 1e9]: " + ratePerSecond);
+		}
+		Run run = new Run();
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+		long durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		ExecutorService clients = newPool(maxConcurrency);
+		for (long i = 0; i * intervalNanos < durationNanos; i++) {
+			long intendedStart = run.start + i * intervalNanos;
+			long delay;
+			while ((delay = intendedStart - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(delay);
+			}
+			LoadRequest request = requests.get((int) (i % requests.size()));
+			clients.execute(() -> run.execute(request, intendedStart));
+		}
+		return run.finish(String.format("open loop, %.0f req/s", ratePerSecond), clients);
+	}
+	
+	private ExecutorService newPool(int threads) {
+		if (threads > maxConnections) {
+			throw new IllegalArgumentException(threads + " clients need more than the " + maxConnections + " pooled connections");
+		}
+		AtomicInteger index = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "load-client-" + index.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	@Override
+	public void close() throws IOException {
+		httpClient.close();
+	}
+	
+	private final class Run {
+		
+		private final long start = System.nanoTime();
+		private final LatencyMetrics latencies = new LatencyMetrics();
+		private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+		
+		private void execute(LoadRequest request, long intendedStart) {
+			boolean failed;
+			try {
+				ResponseEntity<String> response = restTemplate.exchange(baseUrl + request.getPath(), request.getMethod(), request.getEntity(), String.class);
+				failed = !response.getStatusCode().is2xxSuccessful();
+			} catch (RestClientException e) {
+				failed = true;
+			}
+			latencies.recordNanos(request.getEndpoint(), System.nanoTime() - intendedStart);
+			if (failed) {
+				errors.computeIfAbsent(request.getEndpoint(), endpoint -> new LongAdder()).increment();
+			}
+		}
+		
+		private LoadResult finish(String description, ExecutorService clients) throws InterruptedException {
+			clients.shutdown();
+			clients.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+			Map<String, Long> errorCounts = new TreeMap<>();
+			errors.forEach((endpoint, count) -> errorCounts.put(endpoint, count.sum()));
+			return new LoadResult(description, elapsedSeconds, latencies.snapshot(""), errorCounts);
+		}
+		
+	}
+
+}
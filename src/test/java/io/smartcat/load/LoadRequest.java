@@ -0,0 +1,54 @@
+package io.smartcat.load;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+
+/**
+ * One pre-built HTTP request of a {@link Workload}; {@code endpoint} names the histogram it is recorded in.
+ */
+public class LoadRequest {
+	
+	private static final HttpEntity<String> NO_BODY = new HttpEntity<>(null);
+	
+	private final String endpoint;
+	private final HttpMethod method;
+	private final String path;
+	private final HttpEntity<String> entity;
+	
+	private LoadRequest(String endpoint, HttpMethod method, String path, HttpEntity<String> entity) {
+		this.endpoint = endpoint;
+		this.method = method;
+		this.path = path;
+		this.entity = entity;
+	}
+	
+	public static LoadRequest get(String endpoint, String path) {
+		return new LoadRequest(endpoint, HttpMethod.GET, path, NO_BODY);
+	}
+	
+	public static LoadRequest post(String endpoint, String path) {
+		return new LoadRequest(endpoint, HttpMethod.POST, path, NO_BODY);
+	}
+	
+	public static LoadRequest postJson(String endpoint, String path, String json) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return new LoadRequest(endpoint, HttpMethod.POST, path, new HttpEntity<>(json, headers));
+	}
+	
+	public String getEndpoint() {
+		return endpoint;
+	}
+	public HttpMethod getMethod() {
+		return method;
+	}
+	public String getPath() {
+		return path;
+	}
+	public HttpEntity<String> getEntity() {
+		return entity;
+	}
+
+}
@@ -0,0 +1,59 @@
+package io.smartcat.load;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+import io.smartcat.metrics.LatencySnapshot;
+
+/**
+ * Outcome of one {@link LoadGenerator} run: per endpoint the completed requests, the failed ones (non 2xx
+ * or I/O errors), throughput over the run and the latency distribution.
+ */
+public class LoadResult {
+	
+	private final String description;
+	private final double elapsedSeconds;
+	private final SortedMap<String, LatencySnapshot> latencies;
+	private final Map<String, Long> errors;
+	
+	public LoadResult(String description, double elapsedSeconds, SortedMap<String, LatencySnapshot> latencies, Map<String, Long> errors) {
+		this.description = description;
+		this.elapsedSeconds = elapsedSeconds;
+		this.latencies = latencies;
+		this.errors = errors;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	public double getElapsedSeconds() {
+		return elapsedSeconds;
+	}
+	/**
+	 * Latency per endpoint, in microseconds.
+	 */
+	public SortedMap<String, LatencySnapshot> getLatencies() {
+		return latencies;
+	}
+	public long getErrors(String endpoint) {
+		return errors.getOrDefault(endpoint, 0L);
+	}
+	public double getThroughput(String endpoint) {
+		return latencies.get(endpoint).getCount() / elapsedSeconds;
+	}
+	public double getTotalThroughput() {
+		return latencies.values().stream().mapToLong(LatencySnapshot::getCount).sum() / elapsedSeconds;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder table = new StringBuilder(String.format("%s: %.0f req/s over %.1f s%n", description, getTotalThroughput(), elapsedSeconds));
+		table.append(String.format("%-16s %10s %8s %10s %10s %10s %10s %10s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms",
+				"p99.9 ms", "max ms"));
+		latencies.forEach((endpoint, latency) -> table.append(String.format("%-16s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", endpoint,
+				latency.getCount(), getErrors(endpoint), getThroughput(endpoint), latency.getP50() / 1000, latency.getP99() / 1000,
+				latency.getP999() / 1000, latency.getMax() / 1000)));
+		return table.toString();
+	}
+
+}
@@ -0,0 +1,93 @@
+package io.smartcat.load;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import io.smartcat.RangerDemoApplication;
+import io.smartcat.benchmark.EmbeddedMongo;
+import io.smartcat.metrics.LatencySnapshot;
+
+/**
+ * Load test entry point. Without {@code --load.url} it starts the application on a random port against a
+ * fresh embedded mongod. It creates the workload's users, warms up with a closed loop, then runs one step
+ * per value of {@code --load.steps}: arrival rates in requests per second in open loop mode, client counts
+ * in closed loop mode. The saturation point is the step where throughput stops following the offered rate
+ * (open loop) or the number of clients (closed loop) while the latency percentiles climb.
+ * <p>
+ * {@code mvn -Pload -DskipTests integration-test -Dload.mode=closed -Dload.steps=1,2,4,8,16}; see the load profile
+ * in pom.xml for the other options.
+ */
+public class LoadTest {
+	
+	public static void main(String[] args) throws Exception {
+		SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+		String url = option(options, "load.url", "");
+		boolean openLoop = !"closed".equals(option(options, "load.mode", "open"));
+		List<Double> steps = new ArrayList<>();
+		for (String step : option(options, "load.steps", "50,100,200,400,800").split(",")) {
+			steps.add(Double.valueOf(step.trim()));
+		}
+		long durationMillis = Long.parseLong(option(options, "load.duration-ms", "30000"));
+		long warmupMillis = Long.parseLong(option(options, "load.warmup-ms", "10000"));
+		int maxConcurrency = Integer.parseInt(option(options, "load.max-concurrency", "256"));
+		Workload workload = new Workload(Integer.parseInt(option(options, "load.owners", "100")),
+				Integer.parseInt(option(options, "load.ingest-batch", "100")));
+		List<LoadRequest> requests = workload.requests(mix(option(options, "load.mix", "ingest:2,newest:4,history:2,stats:1,heart-beat-rate:1")),
+				Integer.parseInt(option(options, "load.requests", "10000")));
+		
+		EmbeddedMongo mongo = null;
+		ConfigurableApplicationContext context = null;
+		if (url.isEmpty()) {
+			mongo = EmbeddedMongo.start();
+			context = new SpringApplicationBuilder(RangerDemoApplication.class)
+					.properties("spring.data.mongodb.port=" + mongo.getPort(), "server.port=0")
+					.run();
+			url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+		}
+		// one pooled connection per client of the largest step
+		int maxConnections = openLoop ? maxConcurrency : steps.stream().mapToInt(Double::intValue).max().orElse(1);
+		try (LoadGenerator generator = new LoadGenerator(url, Math.max(maxConnections, 4))) {
+			System.out.println(generator.runAll("users", workload.users(), 4));
+			System.out.println(generator.closedLoop(requests, 4, warmupMillis));
+			List<LoadResult> results = new ArrayList<>();
+			for (double step : steps) {
+				LoadResult result = openLoop ? generator.openLoop(requests, step, maxConcurrency, durationMillis)
+						: generator.closedLoop(requests, (int) step, durationMillis);
+				System.out.println(result);
+				results.add(result);
+			}
+			System.out.println(String.format("%-28s %10s %12s", "step", "req/s", "worst p99 ms"));
+			for (LoadResult result : results) {
+				double worstP99 = result.getLatencies().values().stream().mapToDouble(LatencySnapshot::getP99).max().orElse(0);
+				System.out.println(String.format("%-28s %10.0f %12.2f", result.getDescription(), result.getTotalThroughput(), worstP99 / 1000));
+			}
+		} finally {
+			if (context != null) {
+				context.close();
+				mongo.stop();
+			}
+		}
+	}
+	
+	private static String option(SimpleCommandLinePropertySource options, String name, String defaultValue) {
+		String value = options.getProperty(name);
+		return value == null || value.isEmpty() ? defaultValue : value;
+	}
+	
+	// "ingest:2,newest:4" -> {ingest=2, newest=4}
+	private static Map<String, Integer> mix(String mix) {
+		Map<String, Integer> weights = new LinkedHashMap<>();
+		for (String entry : mix.split(",")) {
+			String[] endpointAndWeight = entry.trim().split(":");
+			weights.put(endpointAndWeight[0], endpointAndWeight.length == 1 ? 1 : Integer.parseInt(endpointAndWeight[1]));
+		}
+		return weights;
+	}
+
+}
@@ -0,0 +1,52 @@
+package io.smartcat.load;
+
+/**
+ * Request parameters Ranger fills in field by field; {@link Workload} turns each into a {@link LoadRequest}.
+ */
+public class RequestTemplate {
+	
+	private String endpoint;
+	private String owner;
+	private String sensor;
+	private long limit;
+	private long from;
+	private long width;
+	
+	public String getEndpoint() {
+		return endpoint;
+	}
+	public void setEndpoint(String endpoint) {
+		this.endpoint = endpoint;
+	}
+	public String getOwner() {
+		return owner;
+	}
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+	public String getSensor() {
+		return sensor;
+	}
+	public void setSensor(String sensor) {
+		this.sensor = sensor;
+	}
+	public long getLimit() {
+		return limit;
+	}
+	public void setLimit(long limit) {
+		this.limit = limit;
+	}
+	public long getFrom() {
+		return from;
+	}
+	public void setFrom(long from) {
+		this.from = from;
+	}
+	public long getWidth() {
+		return width;
+	}
+	public void setWidth(long width) {
+		this.width = width;
+	}
+
+}
@@ -0,0 +1,141 @@
+package io.smartcat.load;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.domain.User;
+import io.smartcat.ranger.ObjectGenerator;
+
+/**
+ * Ranger-generated requests against the REST API. Users and request parameters are drawn from
+ * {@link ObjectGenerator} value sets and ranges over a fixed population of owners, so reads hit owners that
+ * ingest requests write to. Everything is generated up front, outside of the measured run.
+ */
+public class Workload {
+	
+	public static final String USER = "user";
+	public static final String INGEST = "ingest";
+	public static final String NEWEST = "newest";
+	public static final String HISTORY = "history";
+	public static final String STATS = "stats";
+	public static final String HEART_BEAT_RATE = "heart-beat-rate";
+	
+	public static final List<String> ENDPOINTS = Arrays.asList(USER, INGEST, NEWEST, HISTORY, STATS, HEART_BEAT_RATE);
+	
+	public static final long MAX_CREATED = 1_000_000L;
+	
+	private static final String[] SENSORS = { "Heart Beat Monitor", "thermometer", "hygrometer" };
+	
+	private final String[] owners;
+	private final int ingestBatchSize;
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	
+	public Workload(int owners, int ingestBatchSize) {
+		this.owners = new String[owners];
+		for (int i = 0; i < owners; i++) {
+			this.owners[i] = "load-owner-" + i;
+		}
+		this.ingestBatchSize = ingestBatchSize;
+	}
+	
+	/**
+	 * Creates every owner of the population, to be sent before the load starts.
+	 */
+	public List<LoadRequest> users() {
+		List<User> users = new ObjectGenerator.Builder<User>(User.class)
+				.withValues("username", (Object[]) owners)
+				.withRanges("birthdate", LocalDateTime.of(1950, 1, 1, 0, 0), LocalDateTime.of(2000, 1, 1, 0, 0))
+				.toBeGenerated(owners.length).build().generateAll();
+		List<LoadRequest> requests = new ArrayList<>(users.size());
+		for (User user : users) {
+			requests.add(LoadRequest.post(USER, "/api/users/" + user.getUsername()));
+		}
+		return requests;
+	}
+	
+	/**
+	 * {@code size} requests, endpoints picked with probability proportional to {@code weights}.
+	 */
+	public List<LoadRequest> requests(Map<String, Integer> weights, int size) {
+		List<Object> endpoints = new ArrayList<>();
+		weights.forEach((endpoint, weight) -> {
+			if (!ENDPOINTS.contains(endpoint)) {
+				throw new IllegalArgumentException("Unknown endpoint " + endpoint + ", expected one of " + ENDPOINTS);
+			}
+			for (int i = 0; i < weight; i++) {
+				endpoints.add(endpoint);
+			}
+		});
+		if (endpoints.isEmpty()) {
+			throw new IllegalArgumentException("No endpoint has a positive weight: " + weights);
+		}
+		List<RequestTemplate> templates = new ObjectGenerator.Builder<RequestTemplate>(RequestTemplate.class)
+				.withValues("endpoint", endpoints.toArray())
+				.withValues("owner", (Object[]) owners)
+				.withValues("sensor", (Object[]) SENSORS)
+				.withRanges("limit", 10L, 100L)
+				.withRanges("from", 0L, MAX_CREATED)
+				.withRanges("width", MAX_CREATED / 100, MAX_CREATED / 10)
+				.toBeGenerated(size).build().generateAll();
+		
+		int batches = (int) templates.stream().filter(template -> INGEST.equals(template.getEndpoint())).count();
+		Iterator<String> payloads = ingestPayloads(batches).iterator();
+		List<LoadRequest> requests = new ArrayList<>(templates.size());
+		for (RequestTemplate template : templates) {
+			requests.add(toRequest(template, payloads));
+		}
+		return requests;
+	}
+	
+	private LoadRequest toRequest(RequestTemplate template, Iterator<String> payloads) {
+		String owner = template.getOwner();
+		String sensor = template.getSensor();
+		long to = template.getFrom() + template.getWidth();
+		switch (template.getEndpoint()) {
+		case USER:
+			return LoadRequest.post(USER, "/api/users/" + owner);
+		case INGEST:
+			return LoadRequest.postJson(INGEST, "/api/measurements", payloads.next());
+		case NEWEST:
+			return LoadRequest.get(NEWEST, "/api/measurements/" + owner + "/newest?sensor=" + sensor + "&limit=" + template.getLimit());
+		case HISTORY:
+			return LoadRequest.get(HISTORY, "/api/measurements/" + owner + "/history?sensor=" + sensor + "&limit=" + template.getLimit());
+		case STATS:
+			return LoadRequest.get(STATS, "/api/reports/stats?sensor=" + sensor + "&from=" + template.getFrom() + "&to=" + to);
+		case HEART_BEAT_RATE:
+			return LoadRequest.get(HEART_BEAT_RATE, "/api/reports/heart-beat-rate?from=" + template.getFrom() + "&to=" + to);
+		default:
+			throw new IllegalStateException("Unknown endpoint " + template.getEndpoint());
+		}
+	}
+	
+	private List<String> ingestPayloads(int batches) {
+		List<String> payloads = new ArrayList<>(batches);
+		if (batches == 0) {
+			return payloads;
+		}
+		List<Measurement> measurements = new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("owner", (Object[]) owners)
+				.withValues("sensor", (Object[]) SENSORS)
+				.withRanges("created", 0L, MAX_CREATED)
+				.withRanges("measuredValue", 40L, 180L)
+				.toBeGenerated(batches * ingestBatchSize).build().generateAll();
+		try {
+			for (int i = 0; i < measurements.size(); i += ingestBatchSize) {
+				payloads.add(objectMapper.writeValueAsString(measurements.subList(i, Math.min(i + ingestBatchSize, measurements.size()))));
+			}
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Could not serialize measurements", e);
+		}
+		return payloads;
+	}
+
+}
@@ -0,0 +1,186 @@
+package io.smartcat.rest;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.jayway.jsonpath.JsonPath;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.fixture.DatasetFixtures;
+import io.smartcat.fixture.FixtureConfiguration;
+import io.smartcat.service.MeasurementService;
+
+// every test runs in a database of its own, see DatasetFixtures
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(FixtureConfiguration.class)
+public class MeasurementRestControllerTest {
+	
+	private static final String OWNER = "alice";
+	
+	@Autowired
+	private MockMvc mockMvc;
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Autowired
+	private DatasetFixtures fixtures;
+	
+	@Before
+	public void useFreshDatabase() {
+		fixtures.useFreshDatabase();
+	}
+	
+	@After
+	public void dropDatabase() {
+		fixtures.dropDatabase();
+	}
+	
+	@Test
+	public void ingest_shouldAcceptJsonArray() throws Exception {
+		String body = "[{\"owner\":\"" + OWNER + "\",\"sensor\":\"thermometer\",\"created\":1,\"measuredValue\":36},"
+				+ "{\"owner\":\"" + OWNER + "\",\"sensor\":\"thermometer\",\"created\":2,\"measuredValue\":37}]";
+		
+		mockMvc.perform(post("/api/measurements").contentType(MediaType.APPLICATION_JSON).content(body))
+			.andExpect(status().isAccepted())
+			.andExpect(jsonPath("$.accepted").value(2));
+		
+		awaitMeasurements(OWNER, 2);
+	}
+	
+	@Test
+	public void ingest_shouldAcceptNdjsonStream() throws Exception {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 2_500; i++) {
+			body.append("{\"owner\":\"").append(OWNER).append("\",\"sensor\":\"thermometer\",\"created\":").append(i).append(",\"measuredValue\":36}\n");
+		}
+		
+		mockMvc.perform(post("/api/measurements").contentType(MediaType.valueOf(MeasurementRestController.APPLICATION_NDJSON_VALUE)).content(body.toString()))
+			.andExpect(status().isAccepted())
+			.andExpect(jsonPath("$.accepted").value(2_500));
+		
+		awaitMeasurements(OWNER, 2_500);
+	}
+	
+	@Test
+	public void ingest_shouldRejectMeasurementWithoutOwner() throws Exception {
+		mockMvc.perform(post("/api/measurements").contentType(MediaType.APPLICATION_JSON).content("[{\"sensor\":\"thermometer\"}]"))
+			.andExpect(status().isBadRequest());
+	}
+	
+	@Test
+	public void ingest_shouldReportAcceptedChunks_whenLaterMeasurementIsMalformed() throws Exception {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 1_500; i++) {
+			body.append("{\"owner\":\"").append(OWNER).append("\",\"sensor\":\"thermometer\",\"created\":").append(i).append(",\"measuredValue\":36}\n");
+		}
+		body.append("{\"owner\":\"").append(OWNER).append("\",\"created\":\"yesterday\"}\n");
+		
+		// the first request chunk was buffered before the malformed measurement was read
+		mockMvc.perform(post("/api/measurements").contentType(MediaType.valueOf(MeasurementRestController.APPLICATION_NDJSON_VALUE)).content(body.toString()))
+			.andExpect(status().isBadRequest())
+			.andExpect(jsonPath("$.accepted").value(1_000));
+		
+		awaitMeasurements(OWNER, 1_000);
+	}
+	
+	@Test
+	public void save_shouldAnswerCreatedOnceTheBufferedMeasurementIsWritten() throws Exception {
+		
+		MvcResult started = mockMvc.perform(post("/api/measurements/{owner}/thermometer", OWNER).param("wait", "true")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"created\":1,\"measuredValue\":36}"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		mockMvc.perform(asyncDispatch(started))
+			.andExpect(status().isCreated());
+		
+		List<Measurement> saved = measurementService.getMeasurementsByUserAndSensor(OWNER, "thermometer");
+		Assert.assertEquals(1, saved.size());
+		Assert.assertEquals(36, saved.get(0).getMeasuredValue());
+	}
+	
+	@Test
+	public void export_shouldStreamCsvInCreationOrder() throws Exception {
+		measurementService.saveAll(Arrays.asList(measurement(OWNER, 2, 37), measurement(OWNER, 1, 36)));
+		
+		MvcResult started = mockMvc.perform(get("/api/measurements/{owner}/thermometer/export", OWNER).param("format", "csv"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		String[] lines = mockMvc.perform(asyncDispatch(started))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsString().split("\n");
+		
+		Assert.assertEquals(3, lines.length);
+		Assert.assertEquals("id,owner,sensor,created,measuredValue", lines[0]);
+		Assert.assertTrue(lines[1].endsWith("," + OWNER + ",thermometer,1,36"));
+		Assert.assertTrue(lines[2].endsWith("," + OWNER + ",thermometer,2,37"));
+	}
+	
+	@Test
+	public void bySensor_shouldPageNewestFirst() throws Exception {
+		measurementService.saveAll(Arrays.asList(measurement(OWNER, 1, 36), measurement(OWNER, 2, 37), measurement(OWNER, 3, 38)));
+		
+		MvcResult started = mockMvc.perform(get("/api/measurements/{owner}", OWNER).param("sensor", "thermometer").param("limit", "2"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		String cursor = JsonPath.read(mockMvc.perform(asyncDispatch(started))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.measurements[0].created").value(3))
+			.andExpect(jsonPath("$.measurements[1].created").value(2))
+			.andReturn().getResponse().getContentAsString(), "$.nextCursor");
+		
+		started = mockMvc.perform(get("/api/measurements/{owner}", OWNER).param("sensor", "thermometer").param("limit", "2").param("cursor", cursor))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		mockMvc.perform(asyncDispatch(started))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.measurements.length()").value(1))
+			.andExpect(jsonPath("$.measurements[0].created").value(1))
+			.andExpect(jsonPath("$.nextCursor").doesNotExist());
+	}
+	
+	private Measurement measurement(String owner, long created, long value) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor("thermometer");
+		measurement.setCreated(created);
+		measurement.setMeasuredValue(value);
+		return measurement;
+	}
+	
+	private void awaitMeasurements(String owner, int expected) throws InterruptedException {
+		List<Measurement> result = null;
+		for (int attempt = 0; attempt < 50; attempt++) {
+			result = measurementService.getMeasurementsByUserAndSensor(owner, "thermometer");
+			if (result.size() >= expected) {
+				break;
+			}
+			Thread.sleep(100);
+		}
+		Assert.assertEquals(expected, result.size());
+	}
+
+}
@@ -0,0 +1,84 @@
+package io.smartcat.rest;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.UUID;
+
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.mongodb.BasicDBObject;
+
+import io.smartcat.metrics.SlowQuery;
+import io.smartcat.metrics.SlowQueryLog;
+import io.smartcat.service.MeasurementService;
+
+// a zero threshold makes every explainable query a slow one
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "metrics.slow-query.threshold-ms=0")
+@AutoConfigureMockMvc
+public class MetricsRestControllerTest {
+	
+	@Autowired
+	private MockMvc mockMvc;
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Autowired
+	private SlowQueryLog slowQueryLog;
+	
+	@Test
+	public void methods_shouldReportLatencyOfServiceAndRestCalls() throws Exception {
+		measurementService.getMeasurementsByUserAndSensor("metrics-" + UUID.randomUUID(), "thermometer");
+		mockMvc.perform(get("/api/metrics/mongo")).andExpect(status().isOk());
+		
+		mockMvc.perform(get("/api/metrics/methods"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$['method.service.MeasurementService.getMeasurementsByUserAndSensor'].count", Matchers.greaterThanOrEqualTo(1)))
+			.andExpect(jsonPath("$['method.rest.MetricsRestController.mongo'].count", Matchers.greaterThanOrEqualTo(1)))
+			.andExpect(jsonPath("$['method.rest.MetricsRestController.mongo'].p99").isNumber());
+	}
+	
+	@Test
+	public void slowQueries_shouldKeepShapeAndExplainPlan() throws Exception {
+		String sensor = "metrics-" + UUID.randomUUID();
+		// the first slow find on the collection may only start the capture, the second is captured
+		measurementService.getMeasurementsByUserAndSensor("metrics-" + UUID.randomUUID(), sensor);
+		measurementService.getMeasurementsByUserAndSensor("metrics-" + UUID.randomUUID(), sensor);
+		
+		SlowQuery query = awaitExplainedFind(sensor);
+		Assert.assertEquals("measurements", query.getShape().get("find"));
+		Assert.assertEquals(new BasicDBObject("owner", "?").append("sensor", "?"), query.getShape().get("filter"));
+		Assert.assertNotNull(query.getPlan().get("queryPlanner"));
+		
+		mockMvc.perform(get("/api/metrics/slow-queries"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$[0].shape").exists());
+	}
+	
+	// the shape hides the sensor, the parsed query of the plan still has it
+	private SlowQuery awaitExplainedFind(String sensor) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (System.currentTimeMillis() < deadline) {
+			for (SlowQuery query : slowQueryLog.entries()) {
+				if ("find".equals(query.getCommand()) && query.getPlan() != null
+						&& query.getPlan().toJson().contains(sensor)) {
+					return query;
+				}
+			}
+			Thread.sleep(50);
+		}
+		throw new AssertionError("No explained find of " + sensor + " in " + slowQueryLog.entries().size() + " slow queries");
+	}
+
+}
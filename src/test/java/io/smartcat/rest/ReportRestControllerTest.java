@@ -0,0 +1,89 @@
+package io.smartcat.rest;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.fixture.DatasetFixtures;
+import io.smartcat.fixture.FixtureConfiguration;
+import io.smartcat.service.MeasurementService;
+
+// every test runs in a database of its own, see DatasetFixtures
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(FixtureConfiguration.class)
+public class ReportRestControllerTest {
+	
+	private static final long HOUR = 3_600_000;
+	
+	@Autowired
+	private MockMvc mockMvc;
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Autowired
+	private DatasetFixtures fixtures;
+	
+	@Before
+	public void useFreshDatabase() {
+		fixtures.useFreshDatabase();
+	}
+	
+	@After
+	public void dropDatabase() {
+		fixtures.dropDatabase();
+	}
+	
+	@Test
+	public void approximate_shouldMergeSketchesOfIngestedMeasurements() throws Exception {
+		// sketches are retained by wall clock, so the measurements are recent
+		long now = System.currentTimeMillis();
+		String sensor = "pulse";
+		measurementService.saveAll(Arrays.asList(measurement("alice", sensor, now, 60), measurement("bob", sensor, now, 80),
+				measurement("alice", sensor, now, 70)));
+		
+		mockMvc.perform(get("/api/reports/approximate").param("sensor", sensor)
+				.param("from", String.valueOf(now - HOUR)).param("to", String.valueOf(now + HOUR)).param("top", "1"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.length()").value(1))
+			.andExpect(jsonPath("$[0].count").value(3))
+			.andExpect(jsonPath("$[0].min").value(60))
+			.andExpect(jsonPath("$[0].max").value(80))
+			.andExpect(jsonPath("$[0].distinctOwners").value(2))
+			.andExpect(jsonPath("$[0].topOwners[0].owner").value("alice"))
+			.andExpect(jsonPath("$[0].ingestedSince").isNumber());
+	}
+	
+	@Test
+	public void stats_shouldAnswerBadRequest_whenThereAreTooManyBuckets() throws Exception {
+		mockMvc.perform(get("/api/reports/stats").param("sensor", "pulse")
+				.param("from", "0").param("to", String.valueOf(Long.MAX_VALUE / 2)).param("bucket", "1"))
+			.andExpect(status().isBadRequest());
+	}
+	
+	private static Measurement measurement(String owner, String sensor, long created, long value) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor(sensor);
+		measurement.setCreated(created);
+		measurement.setMeasuredValue(value);
+		return measurement;
+	}
+
+}
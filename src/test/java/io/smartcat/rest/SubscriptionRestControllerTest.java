@@ -0,0 +1,60 @@
+package io.smartcat.rest;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.MeasurementService;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "measurement.subscriptions.flush-interval-ms=10", "measurement.subscriptions.heartbeat-ms=50" })
+@AutoConfigureMockMvc
+public class SubscriptionRestControllerTest {
+	
+	@Autowired
+	private MockMvc mockMvc;
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Test
+	public void subscribe_shouldStreamIngestedMeasurementsAndHeartbeats() throws Exception {
+		String owner = "subscriber-" + UUID.randomUUID();
+		MvcResult result = mockMvc.perform(get("/api/subscriptions/{owner}/thermometer", owner)
+				.accept(SubscriptionRestController.TEXT_EVENT_STREAM_VALUE))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor("thermometer");
+		measurement.setCreated(1);
+		measurement.setMeasuredValue(36);
+		measurementService.saveAll(Collections.singletonList(measurement));
+		
+		// the emitter writes events to the response as they are sent
+		String stream = result.getResponse().getContentAsString();
+		for (int attempt = 0; attempt < 100 && !(stream.contains("event:measurements") && stream.contains(":heartbeat")); attempt++) {
+			Thread.sleep(50);
+			stream = result.getResponse().getContentAsString();
+		}
+		
+		Assert.assertTrue(stream, stream.contains("event:measurements\ndata:"));
+		Assert.assertTrue(stream, stream.contains("\"measuredValue\":36"));
+		Assert.assertTrue(stream, stream.contains(":heartbeat\n"));
+	}
+	
+}
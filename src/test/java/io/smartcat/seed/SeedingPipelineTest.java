@@ -0,0 +1,73 @@
+package io.smartcat.seed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.ranger.ObjectGenerator;
+
+public class SeedingPipelineTest {
+
+	private static final PartitionedGeneratorFactory<Measurement> MEASUREMENTS = (partition, count) ->
+			new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("owner", "partition-" + partition)
+				.withValues("sensor", "thermometer")
+				.withRanges("created", 0L, 1000L)
+				.toBeGenerated(count).build();
+
+	@Test
+	public void run_shouldWriteEveryRowOnce() {
+		SeedingPipeline pipeline = pipeline(2, 2, 2, 10);
+		List<Measurement> written = Collections.synchronizedList(new ArrayList<>());
+
+		LoadReport report = pipeline.run(MEASUREMENTS, 105, written::addAll);
+
+		Assert.assertEquals(105, written.size());
+		Assert.assertEquals(105, report.getRows());
+		// 53 and 52 rows per partition
+		Assert.assertEquals(12, report.getChunks());
+		Assert.assertEquals(53, written.stream().filter(m -> "partition-0".equals(m.getOwner())).count());
+	}
+
+	@Test(timeout = 10_000)
+	public void run_shouldFail_whenWritersFailWhileQueueIsFull() {
+		// the only writer fails after the generator has filled the queue and finished
+		SeedingPipeline pipeline = pipeline(1, 1, 1, 10);
+		IllegalStateException broken = new IllegalStateException("broken writer");
+
+		try {
+			pipeline.run(MEASUREMENTS, 20, chunk -> {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw broken;
+			});
+			Assert.fail("expected the writer failure");
+		} catch (IllegalStateException e) {
+			Assert.assertSame(broken, e.getCause());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void validate_shouldRejectZeroGeneratorThreads() {
+		pipeline(0, 1, 1, 10);
+	}
+
+	private static SeedingPipeline pipeline(int generatorThreads, int writerThreads, int queueDepth, int chunkSize) {
+		SeedingPipeline pipeline = new SeedingPipeline();
+		ReflectionTestUtils.setField(pipeline, "generatorThreads", generatorThreads);
+		ReflectionTestUtils.setField(pipeline, "writerThreads", writerThreads);
+		ReflectionTestUtils.setField(pipeline, "queueDepth", queueDepth);
+		ReflectionTestUtils.setField(pipeline, "chunkSize", chunkSize);
+		pipeline.validate();
+		return pipeline;
+	}
+
+}
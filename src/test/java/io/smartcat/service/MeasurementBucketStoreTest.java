@@ -0,0 +1,162 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.fixture.DatasetFixtures;
+import io.smartcat.fixture.FixtureConfiguration;
+
+// every test runs in a database of its own, see DatasetFixtures
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "measurement.buckets.enabled=true", "measurement.buckets.window-ms=100", "measurement.buckets.max-count=50" })
+@Import(FixtureConfiguration.class)
+public class MeasurementBucketStoreTest {
+	
+	private static final String SENSOR = "bucket-sensor";
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Autowired
+	private ReportService reportService;
+	
+	@Autowired
+	private MongoOperations mongoOps;
+	
+	@Autowired
+	private MeasurementBucketStore bucketStore;
+	
+	@Autowired
+	private DatasetFixtures fixtures;
+	
+	@Before
+	public void useFreshDatabase() {
+		fixtures.useFreshDatabase();
+	}
+	
+	@After
+	public void dropDatabase() {
+		fixtures.dropDatabase();
+	}
+	
+	@Test
+	public void bucketedMeasurements_shouldReadBackLikeDocuments() {
+		String owner = "bucket-" + UUID.randomUUID();
+		// created 0..299 in random order, measured value equals created
+		List<Measurement> measurements = new ArrayList<>();
+		for (int created = 0; created < 300; created++) {
+			measurements.add(measurement(owner, created));
+		}
+		Collections.shuffle(measurements, new Random(7));
+		measurementService.saveAll(measurements.subList(0, 120));
+		measurementService.saveAll(measurements.subList(120, 300));
+		
+		// 3 windows of 100: the first call opens a bucket of about 40 per window, the second fills it past
+		// max-count with its first 50 and starts one more with the rest; no bucket over 2 * max-count
+		List<DBObject> buckets = mongoOps.getCollection(MeasurementBucketStore.COLLECTION).find(new BasicDBObject("owner", owner)).toArray();
+		Assert.assertEquals(6, buckets.size());
+		buckets.forEach(bucket -> Assert.assertTrue(((Number) bucket.get("count")).intValue() < 100));
+		
+		List<Measurement> all = measurementService.getMeasurementsByUserAndSensor(owner, SENSOR);
+		Assert.assertEquals(300, all.size());
+		for (int i = 0; i < all.size(); i++) {
+			Assert.assertEquals(i, all.get(i).getCreated());
+			Assert.assertEquals(i, all.get(i).getMeasuredValue());
+		}
+		
+		List<Measurement> newest = measurementService.getNewestMeasurementsForUser(owner, 5);
+		Assert.assertEquals(5, newest.size());
+		Assert.assertEquals(299, newest.get(0).getCreated());
+		Assert.assertEquals(295, newest.get(4).getCreated());
+		
+		int pages = 0;
+		long expectedCreated = 299;
+		String cursor = null;
+		do {
+			MeasurementPage page = measurementService.getMeasurementHistory(owner, SENSOR, cursor, 70);
+			for (Measurement measurement : page.getMeasurements()) {
+				Assert.assertEquals(expectedCreated--, measurement.getCreated());
+			}
+			cursor = page.getNextCursor();
+			pages++;
+		} while (cursor != null);
+		Assert.assertEquals(-1, expectedCreated);
+		Assert.assertEquals(5, pages);
+		
+		SumAndCount total = reportService.sumAndCountByOwner(SENSOR, 50, 250).get(owner);
+		Assert.assertEquals(200, total.getCount());
+		Assert.assertEquals((50 + 249) * 200 / 2, total.getSum());
+	}
+	
+	@Test
+	public void migrateDocuments_shouldMoveMeasurementDocumentsIntoBuckets() {
+		String owner = "bucket-" + UUID.randomUUID();
+		List<Measurement> documents = new ArrayList<>();
+		for (int created = 0; created < 250; created++) {
+			documents.add(measurement(owner, created));
+		}
+		// written as documents, the way the application stored them before bucket mode was enabled
+		mongoOps.insert(documents, Measurement.class);
+		Assert.assertTrue(measurementService.getMeasurementsByUserAndSensor(owner, SENSOR).isEmpty());
+		
+		Assert.assertEquals(250, bucketStore.migrateDocuments());
+		
+		Assert.assertEquals(0, mongoOps.getCollection(DocumentMeasurementStore.COLLECTION).count());
+		List<Measurement> migrated = measurementService.getMeasurementsByUserAndSensor(owner, SENSOR);
+		Assert.assertEquals(250, migrated.size());
+		Assert.assertEquals(249, migrated.get(249).getCreated());
+	}
+	
+	@Test
+	public void ids_shouldNotChange_whenRetentionTrimsABucket() {
+		String owner = "bucket-" + UUID.randomUUID();
+		List<Measurement> measurements = new ArrayList<>();
+		for (int created = 0; created < 10; created++) {
+			measurements.add(measurement(owner, created));
+		}
+		measurementService.saveAll(measurements);
+		List<String> ids = new ArrayList<>();
+		measurementService.getMeasurementsByUserAndSensor(owner, SENSOR).forEach(measurement -> ids.add(measurement.getId()));
+		DBCollection collection = mongoOps.getCollection(MeasurementBucketStore.COLLECTION);
+		Object bucketId = collection.findOne(new BasicDBObject("owner", owner)).get("_id");
+		
+		// the aggregation saw the first 4 entries, the 6 after them arrived later
+		bucketStore.removeSeen(collection, Collections.singletonMap(bucketId, 4), Long.MAX_VALUE);
+		
+		List<Measurement> kept = measurementService.getMeasurementsByUserAndSensor(owner, SENSOR);
+		Assert.assertEquals(6, kept.size());
+		for (int i = 0; i < kept.size(); i++) {
+			Assert.assertEquals(i + 4, kept.get(i).getCreated());
+			Assert.assertEquals(ids.get(i + 4), kept.get(i).getId());
+		}
+	}
+	
+	private static Measurement measurement(String owner, long created) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor(SENSOR);
+		measurement.setCreated(created);
+		measurement.setMeasuredValue(created);
+		return measurement;
+	}
+
+}
@@ -0,0 +1,150 @@
+package io.smartcat.service;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.smartcat.domain.Measurement;
+
+public class MeasurementRingTest {
+	
+	@Test
+	public void ring_shouldKeepNewestEntries_newestFirst() {
+		MeasurementRing ring = new MeasurementRing("charlie", "thermometer", 3);
+		for (long created = 1; created <= 5; created++) {
+			ring.add(measurement(created, created * 10));
+		}
+		
+		assertNewest(ring, 5, 4, 3);
+	}
+	
+	@Test
+	public void lateArrivals_shouldBeInsertedInOrder_orIgnoredWhenTooOld() {
+		MeasurementRing ring = new MeasurementRing("charlie", "thermometer", 3);
+		ring.add(measurement(10, 100));
+		ring.add(measurement(30, 300));
+		ring.add(measurement(20, 200));
+		assertNewest(ring, 30, 20, 10);
+		
+		ring.add(measurement(25, 250));
+		assertNewest(ring, 30, 25, 20);
+		
+		ring.add(measurement(5, 50));
+		assertNewest(ring, 30, 25, 20);
+		
+		ring.add(measurement(40, 400));
+		ring.add(measurement(21, 210));
+		assertNewest(ring, 40, 30, 25);
+	}
+	
+	@Test
+	public void copyNewest_shouldReturnAtMostLimitEntries() {
+		MeasurementRing ring = new MeasurementRing("charlie", "thermometer", 5);
+		ring.add(measurement(1, 10));
+		ring.add(measurement(2, 20));
+		
+		long[] created = new long[5];
+		long[] values = new long[5];
+		Assert.assertEquals(1, ring.copyNewest(1, created, values));
+		Assert.assertEquals(2, created[0]);
+		Assert.assertEquals(2, ring.copyNewest(5, created, values));
+	}
+	
+	@Test
+	public void newest_shouldReturnCopiesOfTheWholeDocuments() {
+		MeasurementRing ring = new MeasurementRing("charlie", "thermometer", 3);
+		Measurement measurement = measurement(1, 10);
+		measurement.setId("58a0c8e2e4b0b0a1c2d3e4f5");
+		measurement.setVersion((short) 2);
+		measurement.setLastChanged(new Date(5));
+		measurement.setActive(true);
+		ring.add(measurement);
+		
+		Measurement newest = ring.newest(1).get(0);
+		Assert.assertNotSame(measurement, newest);
+		Assert.assertEquals("58a0c8e2e4b0b0a1c2d3e4f5", newest.getId());
+		Assert.assertEquals(2, newest.getVersion());
+		Assert.assertEquals(new Date(5), newest.getLastChanged());
+		Assert.assertTrue(newest.isActive());
+	}
+	
+	@Test
+	public void newest_shouldCarryTheRingsOwnerAndSensor() {
+		MeasurementRing ring = new MeasurementRing("charlie", "thermometer", 3);
+		ring.add(measurement(1, 10));
+		
+		Measurement newest = ring.newest(1).get(0);
+		Assert.assertEquals("charlie", newest.getOwner());
+		Assert.assertEquals("thermometer", newest.getSensor());
+		Assert.assertNull(newest.getLastChanged());
+	}
+	
+	@Test
+	public void fill_shouldMergeMeasurementsAddedDuringTheRead() {
+		MeasurementRing ring = new MeasurementRing("charlie", "thermometer", 3);
+		ring.add(measurement("a", 10, 100));
+		long version = ring.version();
+		// added while the read runs, once also part of the read and once not
+		ring.add(measurement("d", 40, 400));
+		ring.add(measurement("e", 50, 500));
+		
+		ring.fill(Arrays.asList(measurement("d", 40, 400), measurement("c", 30, 300), measurement("b", 20, 200)), version, 100);
+		
+		assertNewest(ring, 50, 40, 30);
+		Assert.assertEquals(Arrays.asList("e", "d", "c"), ids(ring.newest(3)));
+	}
+	
+	@Test
+	public void fill_shouldDropWhatWasThereBeforeTheRead() {
+		MeasurementRing ring = new MeasurementRing("charlie", "thermometer", 3);
+		ring.add(measurement("x", 60, 600));
+		
+		ring.fill(Arrays.asList(measurement("b", 20, 200), measurement("a", 10, 100)), ring.version(), 100);
+		
+		assertNewest(ring, 20, 10);
+	}
+	
+	@Test
+	public void isFresh_shouldNeedAFill_andExpireOnlyWithAMaxAge() {
+		MeasurementRing ring = new MeasurementRing("charlie", "thermometer", 3);
+		ring.add(measurement(10, 100));
+		Assert.assertFalse(ring.isFresh(100, 0));
+		
+		ring.fill(Arrays.asList(measurement(10, 100)), ring.version(), 100);
+		Assert.assertTrue(ring.isFresh(1_000_000, 0));
+		Assert.assertTrue(ring.isFresh(105, 10));
+		Assert.assertFalse(ring.isFresh(110, 10));
+	}
+	
+	private static List<String> ids(List<Measurement> measurements) {
+		return measurements.stream().map(Measurement::getId).collect(Collectors.toList());
+	}
+	
+	private static Measurement measurement(String id, long created, long measuredValue) {
+		Measurement measurement = measurement(created, measuredValue);
+		measurement.setId(id);
+		return measurement;
+	}
+	
+	private static Measurement measurement(long created, long measuredValue) {
+		Measurement measurement = new Measurement();
+		measurement.setCreated(created);
+		measurement.setMeasuredValue(measuredValue);
+		return measurement;
+	}
+	
+	private void assertNewest(MeasurementRing ring, long... expectedCreated) {
+		long[] created = new long[expectedCreated.length];
+		long[] values = new long[expectedCreated.length];
+		Assert.assertEquals(expectedCreated.length, ring.copyNewest(expectedCreated.length, created, values));
+		Assert.assertArrayEquals(expectedCreated, created);
+		for (int i = 0; i < expectedCreated.length; i++) {
+			Assert.assertEquals(expectedCreated[i] * 10, values[i]);
+		}
+	}
+
+}
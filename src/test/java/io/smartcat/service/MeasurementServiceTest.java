@@ -1,33 +1,77 @@
 package io.smartcat.service;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import io.smartcat.domain.Measurement;
-import io.smartcat.ranger.AggregatedObjectGenerator;
+import io.smartcat.fixture.Dataset;
+import io.smartcat.fixture.DatasetFixtures;
+import io.smartcat.fixture.FixtureConfiguration;
 import io.smartcat.ranger.ObjectGenerator;
+import io.smartcat.seed.BulkLoader;
 
+// every test runs in a database of its own, see DatasetFixtures
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@Import(FixtureConfiguration.class)
 public class MeasurementServiceTest {
 	
+	// 50 EM-sensor rows of flint among 400k rows of other owners and 100k other rows of flint
+	private static final Dataset FLINT_EM_SENSOR = Dataset.named("flint-em-sensor", 1)
+			.with(Measurement.class, 400_000, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("owner", "alice", "bob", "charlie", "david", "emma")
+					.withRanges("created", 1000L, 2000L)
+					.withRanges("measuredValue", 0L, 100L)
+					.withValues("sensor", "hear-rate-monitor", "accelerometer", "hygrometer", "thermometer")
+					.toBeGenerated(count).build())
+			.with(Measurement.class, 50, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("owner", "flint")
+					.withRanges("created", 1500L, 1600L)
+					.withRanges("measuredValue", 0L, 100L)
+					.withValues("sensor", "EM-sensor")
+					.toBeGenerated(count).build())
+			.with(Measurement.class, 99_950, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+					.withValues("owner", "flint")
+					.withRanges("created", 1000L, 1500L)
+					.withRanges("measuredValue", 0L, 100L)
+					.withValues("sensor", "hear-rate-monitor", "accelerometer", "hygrometer", "thermometer")
+					.toBeGenerated(count).build());
+	
 	@Autowired
 	private MeasurementService measurementService;
 	
 	@Autowired
-	private MongoOperations mongoOps;
+	private BulkLoader bulkLoader;
+	
+	@Autowired
+	private DatasetFixtures fixtures;
+	
+	@Before
+	public void useFreshDatabase() {
+		fixtures.useFreshDatabase();
+	}
+	
+	@After
+	public void dropDatabase() {
+		fixtures.dropDatabase();
+	}
 	
 	// test for demo purposes only
 	@Test
-	public void findByOwnerAndSensor_shouldReturnCorrectData_forPassedOwnerAndSensor() {
-		createTestData();
+	public void findByOwnerAndSensor_shouldReturnCorrectData_forPassedOwnerAndSensor() throws Exception {
+		fixtures.restore(FLINT_EM_SENSOR);
 		List<Measurement> result = measurementService.getMeasurementsByUserAndSensor("flint", "EM-sensor");
 		
 		Assert.assertEquals(50, result.size());
@@ -36,44 +80,38 @@ public class MeasurementServiceTest {
 		result.forEach(measurement -> Assert.assertEquals("EM-sensor", measurement.getSensor()));
 	}
 	
-	private void createTestData() {		
-		System.out.println("Starting data generation...");
-		long start = System.currentTimeMillis();
-		
-		ObjectGenerator<Measurement> otherUsersData = new ObjectGenerator.Builder<Measurement>(Measurement.class)
-				.withValues("owner", "alice", "bob", "charlie", "david", "emma")
-				.withRanges("created", 1000L, 2000L)
-				.withRanges("measuredValue", 0L, 100L)
-				.withValues("sensor", "hear-rate-monitor", "accelerometer", "hygrometer", "thermometer")
-				.toBeGenerated(400_000).build();
-		
-		ObjectGenerator<Measurement> flintUserData = new ObjectGenerator.Builder<Measurement>(Measurement.class)
-				.withValues("owner", "flint")
-				.withRanges("created", 1500L, 1600L)
-				.withRanges("measuredValue", 0L, 100L)
-				.withValues("sensor", "EM-sensor")
-				.toBeGenerated(50).build();
-		
-		ObjectGenerator<Measurement> flintUserOtherData = new ObjectGenerator.Builder<Measurement>(Measurement.class)
-				.withValues("owner", "flint")
-				.withRanges("created", 1000L, 1500L)
-				.withRanges("measuredValue", 0L, 100L)
-				.withValues("sensor", "hear-rate-monitor", "accelerometer", "hygrometer", "thermometer")
-				.toBeGenerated(99_950).build();
+	@Test
+	public void measurementHistory_shouldWalkAllPagesOnce_whenCreatedValuesRepeat() {
+		String owner = "history-" + UUID.randomUUID();
+		// only 10 distinct created values for 95 rows, so page boundaries fall inside ties
+		bulkLoader.load(Measurement.class, count -> new ObjectGenerator.Builder<Measurement>(Measurement.class)
+				.withValues("owner", owner)
+				.withRanges("created", 0L, 10L)
+				.withValues("sensor", "thermometer")
+				.toBeGenerated(count).build(), 95);
 		
-        AggregatedObjectGenerator<Measurement> aggregatedObjectGenerator = new AggregatedObjectGenerator.Builder<Measurement>()
-                .withObjectGenerator(otherUsersData)
-                .withObjectGenerator(flintUserOtherData)
-                .withObjectGenerator(flintUserData).build();
-        
-        List<Measurement> measurements = aggregatedObjectGenerator.generateAll();
-		long end = System.currentTimeMillis();
-		System.out.println("Data generated in: " + (end - start)/1000 + " seconds");
-		System.out.println("Saving data in db...");
-		mongoOps.insertAll(measurements);
-		long endSave = System.currentTimeMillis();
-		System.out.println("Data saved in db in: " + (endSave - end)/1000 + " seconds");
+		Set<String> ids = new HashSet<>();
+		long previousCreated = Long.MAX_VALUE;
+		String cursor = null;
+		int pages = 0;
+		do {
+			MeasurementPage page = measurementService.getMeasurementHistory(owner, "thermometer", cursor, 20);
+			for (Measurement measurement : page.getMeasurements()) {
+				Assert.assertTrue(measurement.getCreated() <= previousCreated);
+				Assert.assertTrue(ids.add(measurement.getId()));
+				previousCreated = measurement.getCreated();
+			}
+			cursor = page.getNextCursor();
+			pages++;
+		} while (cursor != null);
 		
+		Assert.assertEquals(95, ids.size());
+		Assert.assertEquals(5, pages);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void getMeasurementHistory_shouldRejectNonPositiveLimit() {
+		measurementService.getMeasurementHistory("alex", "thermometer", null, 0);
 	}
 
 }
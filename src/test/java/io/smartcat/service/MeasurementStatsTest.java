@@ -0,0 +1,80 @@
+package io.smartcat.service;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeasurementStatsTest {
+	
+	@Test
+	public void add_shouldComputeExactMomentsAndApproximateQuantiles() {
+		MeasurementStats stats = new MeasurementStats();
+		for (long value = 1; value <= 1000; value++) {
+			stats.add(value);
+		}
+		
+		Assert.assertEquals(1000, stats.getCount());
+		Assert.assertEquals(500.5, stats.getMean(), 1e-9);
+		Assert.assertEquals(1, stats.getMin());
+		Assert.assertEquals(1000, stats.getMax());
+		// population standard deviation of 1..n is sqrt((n^2 - 1) / 12)
+		Assert.assertEquals(Math.sqrt((1000.0 * 1000 - 1) / 12), stats.getStdDev(), 1e-9);
+		Assert.assertEquals(500, stats.quantile(0.5), 5);
+		Assert.assertEquals(990, stats.quantile(0.99), 5);
+	}
+	
+	@Test
+	public void merge_shouldMatchAddingEverythingToOneInstance() {
+		Random random = new Random(3);
+		MeasurementStats all = new MeasurementStats();
+		MeasurementStats left = new MeasurementStats();
+		MeasurementStats right = new MeasurementStats();
+		for (int i = 0; i < 10_000; i++) {
+			long value = random.nextInt(200) - 50;
+			all.add(value);
+			(i % 3 == 0 ? left : right).add(value);
+		}
+		left.merge(right);
+		
+		Assert.assertEquals(all.getCount(), left.getCount());
+		Assert.assertEquals(all.getMean(), left.getMean(), 1e-9);
+		Assert.assertEquals(all.getStdDev(), left.getStdDev(), 1e-9);
+		Assert.assertEquals(all.getMin(), left.getMin());
+		Assert.assertEquals(all.getMax(), left.getMax());
+		Assert.assertEquals(all.quantile(0.95), left.quantile(0.95), 2);
+	}
+	
+	@Test
+	public void addWeighted_shouldMatchAddingEachOccurrence() {
+		Random random = new Random(5);
+		MeasurementStats each = new MeasurementStats();
+		MeasurementStats weighted = new MeasurementStats();
+		for (long value = -20; value < 80; value++) {
+			int weight = 1 + random.nextInt(50);
+			for (int i = 0; i < weight; i++) {
+				each.add(value);
+			}
+			weighted.add(value, weight);
+		}
+		
+		Assert.assertEquals(each.getCount(), weighted.getCount());
+		Assert.assertEquals(each.getMean(), weighted.getMean(), 1e-9);
+		Assert.assertEquals(each.getStdDev(), weighted.getStdDev(), 1e-9);
+		Assert.assertEquals(each.getMin(), weighted.getMin());
+		Assert.assertEquals(each.getMax(), weighted.getMax());
+		Assert.assertEquals(each.quantile(0.5), weighted.quantile(0.5), 2);
+	}
+	
+	@Test
+	public void merge_shouldIgnoreEmptyStats() {
+		MeasurementStats stats = new MeasurementStats();
+		stats.add(7);
+		stats.merge(new MeasurementStats());
+		
+		Assert.assertEquals(1, stats.getCount());
+		Assert.assertEquals(7, stats.getMin());
+		Assert.assertEquals(0, stats.getStdDev(), 0);
+	}
+
+}
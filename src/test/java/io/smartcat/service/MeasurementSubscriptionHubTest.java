@@ -0,0 +1,147 @@
+package io.smartcat.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.service.MeasurementSubscriptionHub.Subscription;
+
+public class MeasurementSubscriptionHubTest {
+	
+	private MeasurementSubscriptionHub hub;
+	
+	@Before
+	public void setUp() {
+		hub = new MeasurementSubscriptionHub();
+		ReflectionTestUtils.setField(hub, "maxSubscribers", 2);
+		ReflectionTestUtils.setField(hub, "maxPending", 3);
+		// flushes are triggered by the tests
+		ReflectionTestUtils.setField(hub, "flushIntervalMillis", 3_600_000L);
+		ReflectionTestUtils.setField(hub, "heartbeatMillis", 3_600_000L);
+		ReflectionTestUtils.setField(hub, "senderThreads", 1);
+		hub.start();
+	}
+	
+	@After
+	public void tearDown() {
+		hub.stop();
+	}
+	
+	@Test
+	public void flush_shouldCoalesceIngestedBatchesAndConflateForSlowSubscriber() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		hub.subscribe("alice", "thermometer", sink);
+		
+		ingest(measurement("alice", "thermometer", 1), measurement("bob", "thermometer", 2));
+		ingest(measurement("alice", "thermometer", 3), measurement("alice", "pulse", 4));
+		awaitFlush(sink, 1);
+		
+		Assert.assertEquals(Arrays.asList(1L, 3L), created(sink.batches.get(0)));
+		Assert.assertEquals(0, sink.batches.get(0).getDropped());
+		
+		for (long created = 10; created < 15; created++) {
+			ingest(measurement("alice", "thermometer", created));
+		}
+		awaitFlush(sink, 2);
+		
+		Assert.assertEquals(Arrays.asList(12L, 13L, 14L), created(sink.batches.get(1)));
+		Assert.assertEquals(2, sink.batches.get(1).getDropped());
+	}
+	
+	@Test
+	public void subscribe_shouldRejectBeyondLimit_untilCancelled() {
+		Subscription first = hub.subscribe("alice", "thermometer", new RecordingSink());
+		hub.subscribe("bob", "thermometer", new RecordingSink());
+		try {
+			hub.subscribe("carol", "thermometer", new RecordingSink());
+			Assert.fail("third subscription should be rejected");
+		} catch (RejectedExecutionException expected) {
+		}
+		
+		first.cancel();
+		first.cancel();
+		
+		Assert.assertEquals(1, hub.getSubscriberCount());
+		hub.subscribe("carol", "thermometer", new RecordingSink());
+	}
+	
+	@Test
+	public void flush_shouldSendHeartbeatToIdleSubscriber_andCloseItWhenHeartbeatFails() throws Exception {
+		ReflectionTestUtils.setField(hub, "heartbeatMillis", 1L);
+		RecordingSink sink = new RecordingSink();
+		hub.subscribe("alice", "thermometer", sink);
+		sink.failHeartbeats = true;
+		
+		for (int attempt = 0; attempt < 50 && !sink.closed; attempt++) {
+			Thread.sleep(10);
+			hub.flush();
+		}
+		
+		Assert.assertEquals(1, sink.heartbeats);
+		Assert.assertTrue(sink.closed);
+		Assert.assertEquals(0, hub.getSubscriberCount());
+	}
+	
+	private void ingest(Measurement... measurements) {
+		hub.onMeasurementsIngested(new MeasurementsIngestedEvent(this, Arrays.asList(measurements)));
+	}
+	
+	private void awaitFlush(RecordingSink sink, int batches) throws InterruptedException {
+		// the previous batch may still count as in flight for a moment, so flush until the batch arrives
+		for (int attempt = 0; attempt < 50 && sink.batches.size() < batches; attempt++) {
+			hub.flush();
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(batches, sink.batches.size());
+	}
+	
+	private static List<Long> created(MeasurementBatchDTO batch) {
+		return Arrays.asList(batch.getMeasurements().stream().map(Measurement::getCreated).toArray(Long[]::new));
+	}
+	
+	private static Measurement measurement(String owner, String sensor, long created) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor(sensor);
+		measurement.setCreated(created);
+		return measurement;
+	}
+	
+	private static final class RecordingSink implements MeasurementSink {
+		
+		private final List<MeasurementBatchDTO> batches = new CopyOnWriteArrayList<>();
+		
+		private volatile boolean failHeartbeats;
+		private volatile int heartbeats;
+		private volatile boolean closed;
+		
+		@Override
+		public void send(MeasurementBatchDTO batch) {
+			batches.add(batch);
+		}
+		
+		@Override
+		public void heartbeat() throws IOException {
+			heartbeats++;
+			if (failHeartbeats) {
+				throw new IOException("client went away");
+			}
+		}
+		
+		@Override
+		public void close() {
+			closed = true;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,122 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.smartcat.domain.Measurement;
+
+public class NewestMeasurementsCacheTest {
+	
+	private final AtomicInteger loads = new AtomicInteger();
+	
+	@Test
+	public void secondRead_shouldBeServedFromCache() {
+		NewestMeasurementsCache cache = new NewestMeasurementsCache(true, 10, 60_000);
+		
+		cache.get("alice", "thermometer", 50, this::load);
+		cache.get("alice", "thermometer", 50, this::load);
+		
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, cache.stats().getHits());
+		Assert.assertEquals(1, cache.stats().getMisses());
+	}
+	
+	@Test
+	public void leastRecentlyUsedEntry_shouldBeEvicted_whenFull() {
+		NewestMeasurementsCache cache = new NewestMeasurementsCache(true, 2, 60_000);
+		
+		cache.get("alice", "thermometer", 50, this::load);
+		cache.get("bob", "thermometer", 50, this::load);
+		cache.get("alice", "thermometer", 50, this::load);
+		cache.get("charlie", "thermometer", 50, this::load);
+		cache.get("alice", "thermometer", 50, this::load);
+		cache.get("bob", "thermometer", 50, this::load);
+		
+		Assert.assertEquals(4, loads.get());
+		Assert.assertEquals(2, cache.stats().getEvictions());
+	}
+	
+	@Test
+	public void ingest_shouldInvalidateEntriesOfWrittenOwnerAndSensor_only() {
+		NewestMeasurementsCache cache = new NewestMeasurementsCache(true, 10, 60_000);
+		cache.get("alice", "thermometer", 50, this::load);
+		cache.get("alice", "hygrometer", 50, this::load);
+		cache.get("alice", null, 50, this::load);
+		
+		cache.onMeasurementsIngested(new MeasurementsIngestedEvent(this, Collections.singletonList(measurement("alice", "thermometer"))));
+		
+		cache.get("alice", "thermometer", 50, this::load);
+		cache.get("alice", "hygrometer", 50, this::load);
+		cache.get("alice", null, 50, this::load);
+		Assert.assertEquals(5, loads.get());
+		Assert.assertEquals(1, cache.stats().getHits());
+	}
+	
+	@Test
+	public void load_shouldBeCached_whenOtherOwnersAreWrittenMeanwhile() {
+		NewestMeasurementsCache cache = new NewestMeasurementsCache(true, 10, 60_000);
+		
+		cache.get("alice", "thermometer", 50, () -> {
+			cache.onMeasurementsIngested(new MeasurementsIngestedEvent(this, Collections.singletonList(measurement("bob", "thermometer"))));
+			return load();
+		});
+		cache.get("alice", "thermometer", 50, this::load);
+		
+		Assert.assertEquals(1, loads.get());
+	}
+	
+	@Test
+	public void load_shouldNotBeCached_whenItsKeyIsWrittenMeanwhile() {
+		NewestMeasurementsCache cache = new NewestMeasurementsCache(true, 10, 60_000);
+		
+		cache.get("alice", null, 50, () -> {
+			cache.onMeasurementsIngested(new MeasurementsIngestedEvent(this, Collections.singletonList(measurement("alice", "thermometer"))));
+			return load();
+		});
+		cache.get("alice", null, 50, this::load);
+		
+		Assert.assertEquals(2, loads.get());
+	}
+	
+	@Test
+	public void cachedMeasurements_shouldNotBeSharedWithCallers() {
+		NewestMeasurementsCache cache = new NewestMeasurementsCache(true, 10, 60_000);
+		List<Measurement> loaded = cache.get("alice", "thermometer", 50, () -> new ArrayList<>(Collections.singletonList(measurement("alice", "thermometer"))));
+		
+		loaded.get(0).setMeasuredValue(42);
+		List<Measurement> hit = cache.get("alice", "thermometer", 50, this::load);
+		hit.get(0).setMeasuredValue(43);
+		
+		Assert.assertEquals(0, cache.get("alice", "thermometer", 50, this::load).get(0).getMeasuredValue());
+		Assert.assertEquals(0, loads.get());
+	}
+	
+	@Test
+	public void expiredEntry_shouldBeReloaded() throws InterruptedException {
+		NewestMeasurementsCache cache = new NewestMeasurementsCache(true, 10, 1);
+		cache.get("alice", "thermometer", 50, this::load);
+		Thread.sleep(5);
+		cache.get("alice", "thermometer", 50, this::load);
+		
+		Assert.assertEquals(2, loads.get());
+		Assert.assertEquals(1, cache.stats().getExpirations());
+	}
+	
+	private List<Measurement> load() {
+		loads.incrementAndGet();
+		return new ArrayList<>();
+	}
+	
+	private Measurement measurement(String owner, String sensor) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor(sensor);
+		return measurement;
+	}
+
+}
@@ -0,0 +1,123 @@
+package io.smartcat.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import io.smartcat.benchmark.EmbeddedMongo;
+import io.smartcat.config.MeasurementPartitions;
+import io.smartcat.domain.Measurement;
+
+// the primary is the test mongod, two more partitions are started here; rollups are off so reports read raw measurements
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "mongo.partitions.hosts=${partition.test.hosts}", "measurement.rollup.enabled=false" })
+@DirtiesContext
+public class PartitionedMeasurementServiceTest {
+
+	private static EmbeddedMongo first;
+	private static EmbeddedMongo second;
+
+	@Autowired
+	private MeasurementService measurementService;
+
+	@Autowired
+	private ReportService reportService;
+
+	@Autowired
+	private MeasurementPartitions partitions;
+
+	@BeforeClass
+	public static void startPartitions() throws IOException {
+		first = EmbeddedMongo.start();
+		second = EmbeddedMongo.start();
+		System.setProperty("partition.test.hosts", "localhost:" + first.getPort() + ",localhost:" + second.getPort());
+	}
+
+	@AfterClass
+	public static void stopPartitions() {
+		System.clearProperty("partition.test.hosts");
+		first.stop();
+		second.stop();
+	}
+
+	@Test
+	public void saveAll_shouldStoreEachOwnerOnItsPartitionOnly() {
+		String sensor = "partitioned-" + UUID.randomUUID();
+		List<String> owners = owners(20);
+		List<Measurement> measurements = new ArrayList<>();
+		for (int i = 0; i < owners.size(); i++) {
+			for (int j = 0; j < 5; j++) {
+				measurements.add(measurement(owners.get(i), sensor, 1000 + j, i));
+			}
+		}
+		measurementService.saveAll(measurements);
+
+		Assert.assertEquals(3, partitions.size());
+		for (String owner : owners) {
+			for (int partition = 0; partition < partitions.size(); partition++) {
+				long count = partitions.get(partition).count(Query.query(Criteria.where("owner").is(owner)), Measurement.class);
+				Assert.assertEquals(owner + " on partition " + partition, partition == partitions.partitionOf(owner) ? 5 : 0, count);
+			}
+			Assert.assertEquals(5, measurementService.getMeasurementsByUserAndSensor(owner, sensor).size());
+			Assert.assertEquals(3, measurementService.getNewestMeasurementsForUserAndSensor(owner, sensor, 3).size());
+		}
+	}
+
+	@Test
+	public void reports_shouldMergePartialResultsOfAllPartitions() {
+		String sensor = "partitioned-" + UUID.randomUUID();
+		List<String> owners = owners(30);
+		List<Measurement> measurements = new ArrayList<>();
+		for (int i = 0; i < owners.size(); i++) {
+			measurements.add(measurement(owners.get(i), sensor, 1000, 10 * i));
+			measurements.add(measurement(owners.get(i), sensor, 2000, 10 * i + 4));
+		}
+		measurementService.saveAll(measurements);
+
+		List<AvgHeartBeatRateDTO> averages = reportService.calcAvgByOwner(sensor, 0, 10_000);
+		Assert.assertEquals(owners.size(), averages.size());
+		for (AvgHeartBeatRateDTO average : averages) {
+			int i = owners.indexOf(average.getUsername());
+			Assert.assertEquals(10 * i + 2, average.getAvgHeartBeatRate(), 0.0);
+		}
+
+		List<SensorStatsDTO> stats = reportService.calcSensorStats(Collections.singletonList(sensor), 0, 10_000, 0, false);
+		Assert.assertEquals(1, stats.size());
+		Assert.assertEquals(2 * owners.size(), stats.get(0).getCount());
+		Assert.assertEquals(0, stats.get(0).getMin());
+		Assert.assertEquals(10 * (owners.size() - 1) + 4, stats.get(0).getMax());
+	}
+
+	private static List<String> owners(int count) {
+		String[] owners = new String[count];
+		for (int i = 0; i < count; i++) {
+			owners[i] = "partitioned-" + UUID.randomUUID();
+		}
+		return Arrays.asList(owners);
+	}
+
+	private static Measurement measurement(String owner, String sensor, long created, long value) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor(sensor);
+		measurement.setCreated(created);
+		measurement.setMeasuredValue(value);
+		return measurement;
+	}
+
+}
@@ -0,0 +1,112 @@
+package io.smartcat.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.mongodb.MongoExecutionTimeoutException;
+
+import io.smartcat.service.ReportExecutor.SliceTask;
+
+public class ReportExecutorTest {
+	
+	private ReportExecutor reportExecutor;
+	
+	@Before
+	public void setUp() {
+		reportExecutor = new ReportExecutor();
+		ReflectionTestUtils.setField(reportExecutor, "threads", 2);
+		ReflectionTestUtils.setField(reportExecutor, "queueCapacity", 4);
+		ReflectionTestUtils.setField(reportExecutor, "maxSlices", 4);
+		ReflectionTestUtils.setField(reportExecutor, "minSliceWidth", 10L);
+		ReflectionTestUtils.setField(reportExecutor, "timeoutMillis", 5_000L);
+		reportExecutor.start();
+	}
+	
+	@After
+	public void tearDown() {
+		reportExecutor.stop();
+	}
+	
+	@Test
+	public void slices_shouldCoverRangeContiguously_withinSliceLimits() {
+		List<long[]> slices = reportExecutor.slices(5, 108);
+		Assert.assertEquals(4, slices.size());
+		Assert.assertEquals(5, slices.get(0)[0]);
+		for (int i = 1; i < slices.size(); i++) {
+			Assert.assertEquals(slices.get(i - 1)[1], slices.get(i)[0]);
+		}
+		Assert.assertEquals(108, slices.get(3)[1]);
+		
+		Assert.assertEquals(1, reportExecutor.slices(0, 15).size());
+		Assert.assertTrue(reportExecutor.slices(7, 7).isEmpty());
+	}
+	
+	@Test
+	public void invokeAll_shouldReturnResultsInTaskOrder() {
+		List<SliceTask<Integer>> tasks = Arrays.asList(deadline -> {
+			Thread.sleep(50);
+			return 1;
+		}, deadline -> 2, deadline -> 3);
+		
+		Assert.assertEquals(Arrays.asList(1, 2, 3), reportExecutor.invokeAll(tasks, 5_000));
+	}
+	
+	@Test
+	public void invokeAll_shouldCancelRemainingSlices_onTimeout() throws InterruptedException {
+		CountDownLatch interrupted = new CountDownLatch(1);
+		List<SliceTask<Integer>> tasks = Arrays.asList(deadline -> 1, deadline -> {
+			try {
+				Thread.sleep(10_000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return 2;
+		});
+		
+		try {
+			reportExecutor.invokeAll(tasks, 100);
+			Assert.fail("expected a timeout");
+		} catch (QueryTimeoutException e) {
+			Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void invokeAll_shouldPropagateSliceFailure() {
+		List<SliceTask<Integer>> tasks = Arrays.asList(deadline -> 1, deadline -> {
+			throw new IllegalArgumentException("broken slice");
+		});
+		reportExecutor.invokeAll(tasks, 5_000);
+	}
+	
+	@Test(expected = QueryTimeoutException.class)
+	public void invokeAll_shouldReportServerSideTimeoutAsQueryTimeout() {
+		List<SliceTask<Integer>> tasks = Arrays.asList(deadline -> 1, deadline -> {
+			throw new UncategorizedMongoDbException("operation exceeded time limit", new MongoExecutionTimeoutException(50, "operation exceeded time limit"));
+		});
+		
+		reportExecutor.invokeAll(tasks, 5_000);
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void start_shouldRejectZeroMinSliceWidth() {
+		ReportExecutor invalid = new ReportExecutor();
+		ReflectionTestUtils.setField(invalid, "threads", 2);
+		ReflectionTestUtils.setField(invalid, "queueCapacity", 4);
+		ReflectionTestUtils.setField(invalid, "maxSlices", 4);
+		ReflectionTestUtils.setField(invalid, "minSliceWidth", 0L);
+		ReflectionTestUtils.setField(invalid, "timeoutMillis", 1_000L);
+		invalid.start();
+	}
+
+}
@@ -0,0 +1,111 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.fixture.DatasetFixtures;
+import io.smartcat.fixture.FixtureConfiguration;
+
+// every test runs in a database of its own, see DatasetFixtures
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Import(FixtureConfiguration.class)
+public class ReportServiceTest {
+	
+	@Autowired
+	private ReportService reportService;
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Autowired
+	private DatasetFixtures fixtures;
+	
+	@Before
+	public void useFreshDatabase() {
+		fixtures.useFreshDatabase();
+	}
+	
+	@After
+	public void dropDatabase() {
+		fixtures.dropDatabase();
+	}
+	
+	@Test
+	public void sensorStats_shouldComputeAllStatisticsPerSensorAndBucket_inOnePass() {
+		String pulse = "pulse";
+		String temperature = "temperature";
+		List<Measurement> measurements = new ArrayList<>();
+		for (long created = 0; created < 200; created++) {
+			measurements.add(measurement("alice", pulse, created, created < 100 ? 60 : 80));
+			measurements.add(measurement(created % 2 == 0 ? "alice" : "bob", temperature, created, created % 10));
+		}
+		measurementService.saveAll(measurements);
+		
+		List<SensorStatsDTO> rows = reportService.calcSensorStats(Arrays.asList(pulse, temperature), 0, 200, 100, false);
+		
+		Assert.assertEquals(4, rows.size());
+		SensorStatsDTO firstPulse = rows.get(0);
+		Assert.assertEquals(pulse, firstPulse.getSensor());
+		Assert.assertEquals(0, firstPulse.getBucketStart());
+		Assert.assertEquals(100, firstPulse.getCount());
+		Assert.assertEquals(60, firstPulse.getAvg(), 1e-9);
+		Assert.assertEquals(0, firstPulse.getStdDev(), 1e-9);
+		for (SensorStatsDTO row : rows) {
+			if (row.getSensor().equals(temperature)) {
+				Assert.assertEquals(100, row.getCount());
+				Assert.assertEquals(0, row.getMin());
+				Assert.assertEquals(9, row.getMax());
+				Assert.assertEquals(4.5, row.getAvg(), 1e-9);
+				Assert.assertEquals(Math.sqrt(8.25), row.getStdDev(), 1e-9);
+			}
+		}
+		
+		List<SensorStatsDTO> byOwner = reportService.calcSensorStats(Arrays.asList(temperature), 0, 200, 0, true);
+		Assert.assertEquals(2, byOwner.size());
+		Assert.assertEquals("alice", byOwner.get(0).getOwner());
+		Assert.assertEquals(100, byOwner.get(0).getCount());
+		Assert.assertEquals(4, byOwner.get(0).getAvg(), 1e-9);
+		Assert.assertEquals("bob", byOwner.get(1).getOwner());
+		Assert.assertEquals(5, byOwner.get(1).getAvg(), 1e-9);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void sensorStats_shouldReject_whenThereAreMoreGroupsThanAllowed() {
+		String pulse = "pulse";
+		List<Measurement> measurements = new ArrayList<>();
+		for (long created = 0; created < 10; created++) {
+			measurements.add(measurement("owner-" + created, pulse, created, 60));
+		}
+		measurementService.saveAll(measurements);
+		ReflectionTestUtils.setField(reportService, "maxGroups", 5);
+		try {
+			reportService.calcSensorStats(Arrays.asList(pulse), 0, 10, 0, true);
+		} finally {
+			ReflectionTestUtils.setField(reportService, "maxGroups", 100_000);
+		}
+	}
+	
+	private static Measurement measurement(String owner, String sensor, long created, long value) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor(sensor);
+		measurement.setCreated(created);
+		measurement.setMeasuredValue(value);
+		return measurement;
+	}
+
+}
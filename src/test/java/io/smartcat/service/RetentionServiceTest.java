@@ -0,0 +1,141 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.DbCallback;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import io.smartcat.domain.Measurement;
+import io.smartcat.domain.MeasurementDownsample;
+import io.smartcat.domain.MeasurementRollup;
+
+// the watermark is stored in the database, so this runs against a database of its own that is dropped afterwards
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "spring.data.mongodb.database=retention-${random.uuid}", "measurement.retention.enabled=true",
+		"measurement.retention.max-age-ms=86400000", "measurement.retention.interval-ms=3600000",
+		"measurement.retention.delete-batch-size=7", "measurement.retention.delete-pause-ms=0" })
+public class RetentionServiceTest {
+	
+	private static final long HOUR = 3_600_000;
+	private static final long DAY = 24 * HOUR;
+	
+	@Autowired
+	private RetentionService retentionService;
+	
+	@Autowired
+	private MeasurementService measurementService;
+	
+	@Autowired
+	private ReportService reportService;
+	
+	@Autowired
+	private MongoOperations mongoOps;
+	
+	@After
+	public void dropDatabase() {
+		mongoOps.execute((DbCallback<Void>) db -> {
+			db.dropDatabase();
+			return null;
+		});
+	}
+	
+	@Test
+	public void run_shouldDownsampleAndRemoveOldMeasurements_withoutChangingReportTotals() {
+		long now = 10 * DAY;
+		String owner = "retention-" + UUID.randomUUID();
+		List<Measurement> measurements = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			measurements.add(measurement(owner, now - 3 * DAY + i * 60_000, i));
+		}
+		for (int i = 0; i < 10; i++) {
+			measurements.add(measurement(owner, now - HOUR + i * 1_000, 200));
+		}
+		measurementService.saveAll(measurements);
+		double before = reportService.calcAvgByOwner("thermometer", 0, now).get(0).getAvgHeartBeatRate();
+		
+		Assert.assertEquals(100, retentionService.run(now));
+		
+		Assert.assertEquals(now - DAY, retentionService.getWatermark());
+		Assert.assertEquals(10, measurementService.getMeasurementsByUserAndSensor(owner, "thermometer").size());
+		List<MeasurementDownsample> downsamples = mongoOps.find(Query.query(Criteria.where("owner").is(owner)).with(new Sort("interval")),
+				MeasurementDownsample.class);
+		Assert.assertEquals(2, downsamples.size());
+		Assert.assertEquals(60, downsamples.get(0).getCount());
+		Assert.assertEquals(0, downsamples.get(0).getMin());
+		Assert.assertEquals(59, downsamples.get(0).getMax());
+		Assert.assertEquals(40, downsamples.get(1).getCount());
+		Assert.assertEquals(99, downsamples.get(1).getMax());
+		Assert.assertEquals(before, reportService.calcAvgByOwner("thermometer", 0, now).get(0).getAvgHeartBeatRate(), 1e-9);
+		// nothing new fell below the age limit
+		Assert.assertEquals(0, retentionService.run(now));
+	}
+	
+	@Test
+	public void run_shouldAddMeasurementsArrivingBelowWatermark_andPruneRollups() {
+		long now = 10 * DAY;
+		String owner = "retention-" + UUID.randomUUID();
+		measurementService.saveAll(Collections.singletonList(measurement(owner, now - 3 * DAY, 10)));
+		Assert.assertEquals(1, retentionService.run(now));
+		
+		measurementService.saveAll(Arrays.asList(measurement(owner, now - 3 * DAY + 1_000, 30), measurement(owner, now - 3 * DAY + 2_000, 5)));
+		Assert.assertEquals(2, retentionService.run(now));
+		
+		MeasurementDownsample downsample = mongoOps.findOne(Query.query(Criteria.where("owner").is(owner)), MeasurementDownsample.class);
+		Assert.assertEquals(3, downsample.getCount());
+		Assert.assertEquals(45, downsample.getSum());
+		Assert.assertEquals(5, downsample.getMin());
+		Assert.assertEquals(30, downsample.getMax());
+		Assert.assertTrue(measurementService.getMeasurementsByUserAndSensor(owner, "thermometer").isEmpty());
+		Assert.assertEquals(0, mongoOps.count(Query.query(Criteria.where("owner").is(owner)), MeasurementRollup.class));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void report_shouldRejectRangesSplittingDownsampledIntervals() {
+		long now = 10 * DAY;
+		measurementService.saveAll(Collections.singletonList(measurement("retention-" + UUID.randomUUID(), now - 3 * DAY, 10)));
+		retentionService.run(now);
+		
+		reportService.calcAvgByOwner("thermometer", 30 * 60_000, now);
+	}
+	
+	@Test
+	public void sensorStats_shouldReject_rangesStartingBelowWatermark() {
+		long now = 10 * DAY;
+		measurementService.saveAll(Arrays.asList(measurement("retention-" + UUID.randomUUID(), now - 3 * DAY, 10),
+				measurement("retention-" + UUID.randomUUID(), now - HOUR, 20)));
+		retentionService.run(now);
+		
+		try {
+			reportService.calcSensorStats(Collections.singletonList("thermometer"), 0, now, 0, false);
+			Assert.fail("expected the range below the watermark to be rejected");
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(String.valueOf(now - DAY)));
+		}
+		List<SensorStatsDTO> rows = reportService.calcSensorStats(Collections.singletonList("thermometer"), now - DAY, now, 0, false);
+		Assert.assertEquals(1, rows.get(0).getCount());
+	}
+	
+	private Measurement measurement(String owner, long created, long value) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor("thermometer");
+		measurement.setCreated(created);
+		measurement.setMeasuredValue(value);
+		return measurement;
+	}
+	
+}
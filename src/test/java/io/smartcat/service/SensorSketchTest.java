@@ -0,0 +1,41 @@
+package io.smartcat.service;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SensorSketchTest {
+	
+	@Test
+	public void merge_shouldEstimateDistinctOwnersAndFindHeaviestAcrossBuckets() {
+		Random random = new Random(5);
+		SensorSketch left = new SensorSketch(12, 0.01, 0.99, 20);
+		SensorSketch right = new SensorSketch(12, 0.01, 0.99, 20);
+		long[] values = { 60, 70, 80 };
+		// 5000 owners with one to three measurements each, spread over both buckets
+		for (int owner = 0; owner < 5000; owner++) {
+			(owner % 2 == 0 ? left : right).add("owner-" + owner, values, 1 + random.nextInt(3));
+		}
+		// three heavy owners, each split between the buckets so neither bucket alone ranks them right
+		for (int heavy = 0; heavy < 3; heavy++) {
+			left.add("heavy-" + heavy, new long[400], 100 + 50 * heavy);
+			right.add("heavy-" + heavy, new long[400], 300 - 50 * heavy + 10 * heavy);
+		}
+		SensorSketch merged = new SensorSketch(12, 0.01, 0.99, 20);
+		merged.merge(left);
+		merged.merge(right);
+		
+		Assert.assertEquals(5003, merged.getDistinctOwners(), 5003 * 0.05);
+		Assert.assertEquals(left.getStats().getCount() + right.getStats().getCount(), merged.getStats().getCount());
+		List<OwnerCountDTO> top = merged.topOwners(3);
+		Assert.assertEquals(3, top.size());
+		Assert.assertEquals("heavy-2", top.get(0).getOwner());
+		Assert.assertEquals("heavy-1", top.get(1).getOwner());
+		Assert.assertEquals("heavy-0", top.get(2).getOwner());
+		// count-min never undercounts
+		Assert.assertTrue(top.get(0).getEstimatedCount() >= 420);
+	}
+	
+}
@@ -0,0 +1,105 @@
+package io.smartcat.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.smartcat.domain.Measurement;
+
+public class SketchServiceTest {
+	
+	private static final long HOUR = 3_600_000;
+	private static final long NOW = 1_000 * HOUR + 123;
+	
+	private SketchService sketchService;
+	
+	@Before
+	public void setUp() {
+		sketchService = new SketchService();
+		ReflectionTestUtils.setField(sketchService, "enabled", true);
+		ReflectionTestUtils.setField(sketchService, "bucketWidth", HOUR);
+		ReflectionTestUtils.setField(sketchService, "retentionBuckets", 2);
+		ReflectionTestUtils.setField(sketchService, "maxFutureMillis", 60_000L);
+		ReflectionTestUtils.setField(sketchService, "maxSensors", 2);
+		ReflectionTestUtils.setField(sketchService, "log2m", 10);
+		ReflectionTestUtils.setField(sketchService, "epsilon", 0.01);
+		ReflectionTestUtils.setField(sketchService, "confidence", 0.99);
+		ReflectionTestUtils.setField(sketchService, "candidates", 10);
+		sketchService.validate();
+	}
+	
+	@Test
+	public void approximate_shouldMergeBucketsOfTheRange() {
+		sketchService.add(Arrays.asList(measurement("alice", "pulse", NOW - HOUR, 60), measurement("bob", "pulse", NOW, 80),
+				measurement("alice", "pulse", NOW, 70)), NOW);
+		
+		List<ApproximateSensorStatsDTO> rows = sketchService.approximate(null, NOW - HOUR, NOW + 1, 1, NOW);
+		
+		Assert.assertEquals(1, rows.size());
+		ApproximateSensorStatsDTO pulse = rows.get(0);
+		Assert.assertEquals(3, pulse.getCount());
+		Assert.assertEquals(70, pulse.getAvg(), 1e-9);
+		Assert.assertEquals(2, pulse.getDistinctOwners());
+		Assert.assertEquals("alice", pulse.getTopOwners().get(0).getOwner());
+		Assert.assertEquals(999 * HOUR, pulse.getFrom());
+		Assert.assertEquals(1001 * HOUR, pulse.getTo());
+	}
+	
+	@Test
+	public void add_shouldExpireBucketsByWallClock_notByNewestMeasurement() {
+		sketchService.add(Collections.singletonList(measurement("alice", "pulse", NOW, 60)), NOW);
+		// three hours later, with only another sensor written: the pulse bucket is past retention
+		long later = NOW + 3 * HOUR;
+		sketchService.add(Collections.singletonList(measurement("alice", "temperature", later, 36)), later);
+		
+		List<ApproximateSensorStatsDTO> rows = sketchService.approximate(null, 0, later + 1, 10, later);
+		
+		Assert.assertEquals(1, rows.size());
+		Assert.assertEquals("temperature", rows.get(0).getSensor());
+		Assert.assertEquals(later - 123 - 2 * HOUR, rows.get(0).getCoveredFrom());
+	}
+	
+	@Test
+	public void add_shouldSkipFarFutureAndExpiredTimestamps() {
+		sketchService.add(Arrays.asList(measurement("alice", "pulse", NOW, 60), measurement("alice", "pulse", NOW + 100 * HOUR, 1),
+				measurement("alice", "pulse", NOW - 10 * HOUR, 1)), NOW);
+		
+		List<ApproximateSensorStatsDTO> rows = sketchService.approximate(Collections.singleton("pulse"), 0, Long.MAX_VALUE / 2, 10, NOW);
+		
+		Assert.assertEquals(1, rows.get(0).getCount());
+		Assert.assertEquals(60, rows.get(0).getMin());
+	}
+	
+	@Test
+	public void add_shouldNotTrackMoreThanMaxSensors() {
+		List<Measurement> measurements = new ArrayList<>();
+		for (int sensor = 0; sensor < 5; sensor++) {
+			measurements.add(measurement("alice", "sensor-" + sensor, NOW, sensor));
+		}
+		sketchService.add(measurements, NOW);
+		
+		Assert.assertEquals(2, sketchService.approximate(null, NOW - HOUR, NOW + HOUR, 10, NOW).size());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void validate_shouldRejectZeroMaxSensors() {
+		ReflectionTestUtils.setField(sketchService, "maxSensors", 0);
+		sketchService.validate();
+	}
+	
+	private static Measurement measurement(String owner, String sensor, long created, long value) {
+		Measurement measurement = new Measurement();
+		measurement.setOwner(owner);
+		measurement.setSensor(sensor);
+		measurement.setCreated(created);
+		measurement.setMeasuredValue(value);
+		return measurement;
+	}
+
+}